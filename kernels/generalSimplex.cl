@@ -146,12 +146,29 @@ __kernel void find_suitable_complete(
 	}
 }
 
+/**
+ * Copies the pivot element into alpha so that the pivot kernels can read it
+ * while the pivot row and column are being overwritten. This keeps the pivot
+ * element on the device and avoids a blocking read by the host.
+ */
+__kernel void pivot_load_alpha(
+	const int pivot_row,
+	const int pivot_col,
+	const int ncols,
+	__global const float* const tableau,
+	__global float* const alpha
+){
+	if (get_global_id(0) > 0)
+		return;
+	*alpha = tableau[OFFSET(pivot_row, pivot_col, ncols)];
+}
+
 __kernel void pivot_update_inner(
-	const float alpha,
 	const int pivot_row,
 	const int pivot_col,
 	const int nrows,
 	const int ncols,
+	__global const float* const alpha,
 	__global float* const tableau
 ){
 	// Determine thread ID in 2D (x and y)
@@ -169,15 +186,15 @@ __kernel void pivot_update_inner(
 		const float gamma = tableau[delta_row_idx + pivot_col];
 
 		// Store result
-		float coeff = delta - (beta * gamma) / alpha;
+		float coeff = delta - (beta * gamma) / *alpha;
 		tableau[delta_idx] = coeff;
 	}
 }
 
 __kernel void pivot_update_row(
-	const float alpha,
 	const int row,
 	const int ncols,
+	__global const float* const alpha,
 	__global float* const tableau
 ){
 	__global float* const tableau_row = &tableau[row * ncols];
@@ -185,15 +202,15 @@ __kernel void pivot_update_row(
 	if (col >= ncols)
 		return;
 	const float beta = tableau_row[col];
-	const float coeff = -beta / alpha;
+	const float coeff = -beta / *alpha;
 	tableau_row[col] = coeff;
 }
 
 __kernel void pivot_update_column(
-	const float alpha,
 	const int col,
 	const int nrows,
 	const int ncols,
+	__global const float* const alpha,
 	__global float* const tableau
 ){
 	__global float* const tableau_col = tableau + col;
@@ -202,61 +219,660 @@ __kernel void pivot_update_column(
 		return;
 	const int idx = row * ncols;
 	const float gamma = tableau_col[idx];
-	tableau_col[idx] = gamma / alpha;
+	tableau_col[idx] = gamma / *alpha;
 }
 
-__kernel void update_assignment(
+/**
+ * Writes the reciprocal of the saved pivot element, which completes the pivot.
+ */
+__kernel void pivot_store_alpha(
+	const int pivot_row,
+	const int pivot_col,
+	const int ncols,
+	__global float* const tableau,
+	__global const float* const alpha
+){
+	if (get_global_id(0) > 0)
+		return;
+	tableau[OFFSET(pivot_row, pivot_col, ncols)] = 1.0f / *alpha;
+}
+
+/*
+ * The reductions of update_assignment use a fixed amount of local memory, so
+ * that the host binds the same arguments as for the CUDA kernels. Work-items
+ * past the end of the input contribute zero, and every work-item reaches the
+ * barriers.
+ */
+#define UPDATE_MAX_WORKGROUP 256
+
+__kernel void update_assignment_1(
+	const int n,
 	__global const float* const input,
 	__global const float* const assigns,
 	__global const int* const colToVar,
-	__global float* const output,
-	__local float* const partial_sums
+	__global float* const output
 ){
-	const int tid = get_global_id(0);
-	const int idx = get_local_id(0);
+	__local float partial_sums[UPDATE_MAX_WORKGROUP];
+	const int gid = get_global_id(0);
+	const int lid = get_local_id(0);
 
 	// Pre-fetch and multiply by corresponding assignment
-	const float a = assigns[colToVar[tid]];
-	partial_sums[idx] = a * input[tid];
+	partial_sums[lid] = gid < n ? assigns[colToVar[gid]] * input[gid] : 0.0f;
 	barrier(CLK_LOCAL_MEM_FENCE);
 
 	// Reduce using interleaved pairs
-	for (int stride = get_local_size(0) / 2; stride >= 0; stride >>= 1) {
-		if (idx < stride) {
-			partial_sums[idx] += partial_sums[idx + stride];
+	for (int stride = get_local_size(0) / 2; stride > 0; stride >>= 1) {
+		if (lid < stride) {
+			partial_sums[lid] += partial_sums[lid + stride];
 		}
 		barrier(CLK_LOCAL_MEM_FENCE);
 	}
 
-	// Write the result for this block to global memory
-	if (idx == 0) {
+	// Write the result for this group to global memory
+	if (lid == 0) {
 		output[get_group_id(0)] = partial_sums[0];
 	}
 }
 
+__kernel void update_assignment_2(
+	const int n,
+	__global float* const data
+){
+	__local float partial_sums[UPDATE_MAX_WORKGROUP];
+	const int gid = get_global_id(0);
+	const int lid = get_local_id(0);
+
+	// Pre-fetch
+	partial_sums[lid] = gid < n ? data[gid] : 0.0f;
+	barrier(CLK_LOCAL_MEM_FENCE);
+
+	// Reduce using interleaved pairs
+	for (int stride = get_local_size(0) / 2; stride > 0; stride >>= 1) {
+		if (lid < stride) {
+			partial_sums[lid] += partial_sums[lid + stride];
+		}
+		barrier(CLK_LOCAL_MEM_FENCE);
+	}
+
+	// Write the result for this group to global memory
+	if (lid == 0) {
+		data[get_group_id(0)] = partial_sums[0];
+	}
+}
+
+/**
+ * Completes the reduction within a single group and writes the sum straight
+ * into the assignment of variable var, so the host never has to read it.
+ */
 __kernel void update_assignment_complete(
+	const int n,
 	const int var,
-	__global const float* const input,
-	__global float* const assigns,
-	__local float* const partial_sums
+	__global const float* const data,
+	__global float* const assigns
 ){
-	const int idx = get_local_id(0);
+	__local float partial_sums[UPDATE_MAX_WORKGROUP];
+	const int lid = get_local_id(0);
 
 	// Pre-fetch
-	partial_sums[idx] = input[idx];
+	partial_sums[lid] = lid < n ? data[lid] : 0.0f;
 	barrier(CLK_LOCAL_MEM_FENCE);
 
 	// Reduce
-	for (int stride = get_local_size(0) / 2; stride >= 0; stride >>= 1) {
-		if (idx < stride) {
-			partial_sums[idx] += partial_sums[idx + stride];
+	for (int stride = get_local_size(0) / 2; stride > 0; stride >>= 1) {
+		if (lid < stride) {
+			partial_sums[lid] += partial_sums[lid + stride];
 		}
 		barrier(CLK_LOCAL_MEM_FENCE);
 	}
 
 	// Write the result to the assignments array
-	if (idx == 0) {
+	if (lid == 0) {
 		assigns[var] = partial_sums[0];
-		printf("[%d] a(%d)=%f\n", idx, var, assigns[var]);
 	}
 }
+
+/*
+ * Batched kernels. The tableaux of many problems with the same dimensions are
+ * packed one after the other, and each workgroup works on one problem: the
+ * tableau of problem p starts at p * nrows * ncols, its variables at
+ * p * (nrows + ncols), its rows at p * nrows and its columns at p * ncols.
+ * Each problem has a status flag, and a workgroup whose problem is finished
+ * returns at once, so the same launches can be repeated until every problem
+ * is finished.
+ */
+#define BATCH_MAX_WORKGROUP 64
+#define BATCH_RUNNING 0
+#define BATCH_SAT 1
+#define BATCH_UNSAT 2
+
+/** Returns the smallest value given by the work-items of the group to every work-item. */
+int batch_group_min(__local int* const shared, const int value)
+{
+	const int lid = get_local_id(0);
+	shared[lid] = value;
+	barrier(CLK_LOCAL_MEM_FENCE);
+	for (int stride = get_local_size(0) / 2; stride > 0; stride >>= 1) {
+		if (lid < stride && shared[lid + stride] < shared[lid])
+			shared[lid] = shared[lid + stride];
+		barrier(CLK_LOCAL_MEM_FENCE);
+	}
+	const int result = shared[0];
+	barrier(CLK_LOCAL_MEM_FENCE);
+	return result;
+}
+
+bool batch_is_broken(const float low, const float upp, const float ass)
+{
+	if (fabs(ass - low) < EPSILON || fabs(ass - upp) < EPSILON)
+		return false;
+	return (low != NO_BOUND && ass < low) || (upp != NO_BOUND && ass > upp);
+}
+
+bool batch_is_suitable(const bool increase, const float coeff,
+	const float low, const float upp, const float ass)
+{
+	if (increase)
+		return (IS_INCREASABLE(low, upp, ass) && coeff > 0)
+			|| (IS_DECREASABLE(low, upp, ass) && coeff < 0);
+	return (IS_INCREASABLE(low, upp, ass) && coeff < 0)
+		|| (IS_DECREASABLE(low, upp, ass) && coeff > 0);
+}
+
+/**
+ * Stores the smallest broken basic variable of each problem in broken, or
+ * marks the problem satisfiable if there is none.
+ */
+__kernel void batch_check_bounds(
+	const int nrows,
+	const int ncols,
+	__global const float* const lower,
+	__global const float* const upper,
+	__global const float* const assigns,
+	__global const int* const rowToVar,
+	__global int* const status,
+	__global int* const broken
+){
+	__local int shared[BATCH_MAX_WORKGROUP];
+	const int p = get_group_id(0);
+	if (status[p] != BATCH_RUNNING)
+		return;
+	const int nvars = nrows + ncols;
+	const int vars = p * nvars;
+
+	int found = nvars;
+	for (int i = get_local_id(0); i < nrows; i += get_local_size(0)) {
+		const int var = rowToVar[p * nrows + i];
+		if (var < found && batch_is_broken(lower[vars + var], upper[vars + var],
+				assigns[vars + var]))
+			found = var;
+	}
+	found = batch_group_min(shared, found);
+
+	if (get_local_id(0) == 0) {
+		if (found == nvars)
+			status[p] = BATCH_SAT;
+		else
+			broken[p] = found;
+	}
+}
+
+/**
+ * Stores the smallest suitable nonbasic variable of each problem in suitable
+ * and adjusts the assignments as find_suitable_complete does, or marks the
+ * problem unsatisfiable if there is none.
+ */
+__kernel void batch_find_suitable(
+	const int nrows,
+	const int ncols,
+	__global const float* const tableau,
+	__global const float* const lower,
+	__global const float* const upper,
+	__global float* const assigns,
+	__global const int* const varToTableau,
+	__global const int* const colToVar,
+	__global int* const status,
+	__global const int* const broken,
+	__global int* const suitable
+){
+	__local int shared[BATCH_MAX_WORKGROUP];
+	const int p = get_group_id(0);
+	if (status[p] != BATCH_RUNNING)
+		return;
+	const int nvars = nrows + ncols;
+	const int vars = p * nvars;
+	__global const float* const row = tableau + p * nrows * ncols
+		+ varToTableau[vars + broken[p]] * ncols;
+	const int b = vars + broken[p];
+	const bool increase = assigns[b] < lower[b];
+
+	int found = nvars;
+	for (int j = get_local_id(0); j < ncols; j += get_local_size(0)) {
+		const int var = colToVar[p * ncols + j];
+		if (var < found && batch_is_suitable(increase, row[j], lower[vars + var],
+				upper[vars + var], assigns[vars + var]))
+			found = var;
+	}
+	found = batch_group_min(shared, found);
+
+	if (get_local_id(0) == 0) {
+		if (found == nvars) {
+			status[p] = BATCH_UNSAT;
+			return;
+		}
+		suitable[p] = found;
+		const int s = vars + found;
+		const float coeff = row[varToTableau[s]];
+		const float delta = increase ? lower[b] - assigns[b] : assigns[b] - upper[b];
+		const float theta = delta / coeff;
+		if (increase) {
+			assigns[s] += coeff < 0 ? -theta : theta;
+			assigns[b] += delta;
+		} else {
+			assigns[s] -= coeff < 0 ? theta : -theta;
+			assigns[b] -= delta;
+		}
+	}
+}
+
+/**
+ * Pivots the broken and suitable variables of each problem, with the same
+ * arithmetic as the pivot_* kernels, and swaps them in the mappings.
+ */
+__kernel void batch_pivot(
+	const int nrows,
+	const int ncols,
+	__global float* const tableau,
+	__global int* const varToTableau,
+	__global int* const colToVar,
+	__global int* const rowToVar,
+	__global const int* const status,
+	__global const int* const broken,
+	__global const int* const suitable,
+	__global int* const pivots
+){
+	const int p = get_group_id(0);
+	if (status[p] != BATCH_RUNNING)
+		return;
+	const int vars = p * (nrows + ncols);
+	const int b = broken[p];
+	const int s = suitable[p];
+	const int pivot_row = varToTableau[vars + b];
+	const int pivot_col = varToTableau[vars + s];
+	__global float* const t = tableau + p * nrows * ncols;
+	const float alpha = t[OFFSET(pivot_row, pivot_col, ncols)];
+
+	// The inner entries only read the pivot row and column, which are updated afterwards
+	for (int idx = get_local_id(0); idx < nrows * ncols; idx += get_local_size(0)) {
+		const int row = idx / ncols;
+		const int col = idx - row * ncols;
+		if (row != pivot_row && col != pivot_col)
+			t[idx] -= (t[OFFSET(pivot_row, col, ncols)] * t[OFFSET(row, pivot_col, ncols)]) / alpha;
+	}
+	barrier(CLK_GLOBAL_MEM_FENCE);
+	for (int col = get_local_id(0); col < ncols; col += get_local_size(0))
+		if (col != pivot_col)
+			t[OFFSET(pivot_row, col, ncols)] = -t[OFFSET(pivot_row, col, ncols)] / alpha;
+	for (int row = get_local_id(0); row < nrows; row += get_local_size(0))
+		if (row != pivot_row)
+			t[OFFSET(row, pivot_col, ncols)] = t[OFFSET(row, pivot_col, ncols)] / alpha;
+
+	if (get_local_id(0) == 0) {
+		t[OFFSET(pivot_row, pivot_col, ncols)] = 1.0f / alpha;
+		colToVar[p * ncols + pivot_col] = b;
+		rowToVar[p * nrows + pivot_row] = s;
+		varToTableau[vars + b] = pivot_col;
+		varToTableau[vars + s] = pivot_row;
+		pivots[p]++;
+	}
+}
+
+/**
+ * Recomputes the assignment of every basic variable of each problem from the
+ * assignments of the nonbasic variables, one row per work-item.
+ */
+__kernel void batch_update_assignment(
+	const int nrows,
+	const int ncols,
+	__global const float* const tableau,
+	__global float* const assigns,
+	__global const int* const colToVar,
+	__global const int* const rowToVar,
+	__global const int* const status
+){
+	const int p = get_group_id(0);
+	if (status[p] != BATCH_RUNNING)
+		return;
+	const int vars = p * (nrows + ncols);
+	__global const float* const t = tableau + p * nrows * ncols;
+	__global const int* const cols = colToVar + p * ncols;
+	for (int row = get_local_id(0); row < nrows; row += get_local_size(0)) {
+		float sum = 0.0f;
+		for (int col = 0; col < ncols; col++)
+			sum += t[OFFSET(row, col, ncols)] * assigns[vars + cols[col]];
+		assigns[vars + rowToVar[p * nrows + row]] = sum;
+	}
+}
+
+/*
+ * Sparse kernels. The tableau is stored in the ELLPACK format: row i holds
+ * nnz[i] entries with ascending columns, and its entry k is at
+ * ELL(i, k, stride) in cols and vals, so that the work-items of consecutive
+ * rows read consecutive addresses. Every row has room for the same number of
+ * entries (the width), and since the entries of a row are strided by the
+ * number of rows, the width can grow without moving any entry. Each
+ * work-item works on one row (or one entry), and the arithmetic is the same
+ * as that of the sparse rows of CpuSolver, in the same order.
+ */
+#define ELL(row, k, stride) ((k) * (stride) + (row))
+
+/** Returns the position of column col in row row, or NONE_FOUND. */
+int sparse_find(const int row, const int col, const int stride,
+	__global const int* const cols, __global const int* const nnz)
+{
+	int lo = 0;
+	int hi = nnz[row] - 1;
+	while (lo <= hi) {
+		const int mid = (lo + hi) >> 1;
+		const int c = cols[ELL(row, mid, stride)];
+		if (c < col)
+			lo = mid + 1;
+		else if (c > col)
+			hi = mid - 1;
+		else
+			return mid;
+	}
+	return NONE_FOUND;
+}
+
+/**
+ * Stores the smallest broken basic variable in result, one row per
+ * work-item. Unlike check_bounds, the basic variables are taken from
+ * rowToVar, so the flags are not needed.
+ */
+__kernel void sparse_check_bounds(
+	const int nrows,
+	__global const float* const lower,
+	__global const float* const upper,
+	__global const float* const assigns,
+	__global const int* const rowToVar,
+	__global int* const result
+){
+	const int row = get_global_id(0);
+	if (row >= nrows)
+		return;
+	const int var = rowToVar[row];
+	if (batch_is_broken(lower[var], upper[var], assigns[var]))
+		atomic_min(result, var);
+}
+
+/**
+ * Stores the smallest suitable nonbasic variable in result, one entry of
+ * the row of the broken variable per work-item, so that only the nonzeros
+ * of the row are visited.
+ */
+__kernel void sparse_find_suitable(
+	const int row,
+	const int stride,
+	const int broken_idx,
+	__global const int* const cols,
+	__global const float* const vals,
+	__global const int* const nnz,
+	__global const float* const lower,
+	__global const float* const upper,
+	__global const float* const assigns,
+	__global const int* const colToVar,
+	__global int* const result
+){
+	const int k = get_global_id(0);
+	if (k >= nnz[row])
+		return;
+	const bool increase = assigns[broken_idx] < lower[broken_idx];
+	const int idx = ELL(row, k, stride);
+	const int var = colToVar[cols[idx]];
+	if (batch_is_suitable(increase, vals[idx], lower[var], upper[var], assigns[var]))
+		atomic_min(result, var);
+}
+
+/**
+ * Adjusts the assignments of the broken and suitable variables, as
+ * find_suitable_complete does.
+ */
+__kernel void sparse_find_suitable_complete(
+	const int row,
+	const int stride,
+	const int broken_idx,
+	const int suitable_idx,
+	__global const int* const cols,
+	__global const float* const vals,
+	__global const int* const nnz,
+	__global const float* const lower,
+	__global const float* const upper,
+	__global float* const assigns,
+	__global const int* const varToTableau
+){
+	if (get_global_id(0) > 0)
+		return;
+	const int b = broken_idx;
+	const int s = suitable_idx;
+	const bool increase = assigns[b] < lower[b];
+	const float coeff = vals[ELL(row, sparse_find(row, varToTableau[s], stride, cols, nnz), stride)];
+	const float delta = increase ? lower[b] - assigns[b] : assigns[b] - upper[b];
+	const float theta = delta / coeff;
+	if (increase) {
+		assigns[s] += coeff < 0 ? -theta : theta;
+		assigns[b] += delta;
+	} else {
+		assigns[s] -= coeff < 0 ? theta : -theta;
+		assigns[b] -= delta;
+	}
+}
+
+/**
+ * Stores in result the largest number of entries that a row will have after
+ * the pivot, one row per work-item. The host compares it with the width
+ * before enqueuing the other pivot kernels, so a row never overflows.
+ */
+__kernel void sparse_pivot_count(
+	const int nrows,
+	const int stride,
+	const int pivot_row,
+	const int pivot_col,
+	__global const int* const cols,
+	__global const float* const vals,
+	__global const int* const nnz,
+	__global int* const result
+){
+	const int row = get_global_id(0);
+	if (row >= nrows || row == pivot_row)
+		return;
+	const int pos = sparse_find(row, pivot_col, stride, cols, nnz);
+	if (pos == NONE_FOUND || vals[ELL(row, pos, stride)] == 0.0f)
+		return;
+	const int delta_nnz = nnz[row];
+	const int beta_nnz = nnz[pivot_row];
+	int count = delta_nnz;
+	for (int a = 0, b = 0; b < beta_nnz; b++) {
+		const int j = cols[ELL(pivot_row, b, stride)];
+		while (a < delta_nnz && cols[ELL(row, a, stride)] < j)
+			a++;
+		if (j != pivot_col && (a == delta_nnz || cols[ELL(row, a, stride)] != j))
+			count++;
+	}
+	atomic_max(result, count);
+}
+
+/** Copies the pivot element into alpha, as pivot_load_alpha does. */
+__kernel void sparse_pivot_load_alpha(
+	const int stride,
+	const int pivot_row,
+	const int pivot_col,
+	__global const int* const cols,
+	__global const float* const vals,
+	__global const int* const nnz,
+	__global float* const alpha
+){
+	if (get_global_id(0) > 0)
+		return;
+	*alpha = vals[ELL(pivot_row, sparse_find(pivot_row, pivot_col, stride, cols, nnz), stride)];
+}
+
+/**
+ * Merges each row whose entry in the pivot column is nonzero with the pivot
+ * row, one row per work-item. The merged row is written backwards in place,
+ * which never overwrites an entry that has not been read yet since the
+ * merged row is at least as long as the original one.
+ */
+__kernel void sparse_pivot_update_inner(
+	const int nrows,
+	const int stride,
+	const int pivot_row,
+	const int pivot_col,
+	__global int* const cols,
+	__global float* const vals,
+	__global int* const nnz,
+	__global const float* const alpha
+){
+	const int row = get_global_id(0);
+	if (row >= nrows || row == pivot_row)
+		return;
+	const int pos = sparse_find(row, pivot_col, stride, cols, nnz);
+	if (pos == NONE_FOUND)
+		return;
+	const float gamma = vals[ELL(row, pos, stride)];
+	if (gamma == 0.0f)
+		return;
+	const int delta_nnz = nnz[row];
+	const int beta_nnz = nnz[pivot_row];
+
+	// Count the entries of the merged row
+	int count = delta_nnz;
+	for (int a = 0, b = 0; b < beta_nnz; b++) {
+		const int j = cols[ELL(pivot_row, b, stride)];
+		while (a < delta_nnz && cols[ELL(row, a, stride)] < j)
+			a++;
+		if (j != pivot_col && (a == delta_nnz || cols[ELL(row, a, stride)] != j))
+			count++;
+	}
+
+	// Merge backwards
+	int a = delta_nnz - 1;
+	int b = beta_nnz - 1;
+	for (int k = count - 1; k >= 0; k--) {
+		const int ja = a >= 0 ? cols[ELL(row, a, stride)] : -1;
+		int jb = b >= 0 ? cols[ELL(pivot_row, b, stride)] : -1;
+		if (jb == pivot_col) {
+			b--;
+			jb = b >= 0 ? cols[ELL(pivot_row, b, stride)] : -1;
+		}
+		if (ja == jb) {
+			vals[ELL(row, k, stride)] = vals[ELL(row, a, stride)]
+				- (vals[ELL(pivot_row, b, stride)] * gamma) / *alpha;
+			cols[ELL(row, k, stride)] = ja;
+			a--;
+			b--;
+		} else if (ja > jb) {
+			vals[ELL(row, k, stride)] = vals[ELL(row, a, stride)];
+			cols[ELL(row, k, stride)] = ja;
+			a--;
+		} else {
+			vals[ELL(row, k, stride)] = 0.0f - (vals[ELL(pivot_row, b, stride)] * gamma) / *alpha;
+			cols[ELL(row, k, stride)] = jb;
+			b--;
+		}
+	}
+	nnz[row] = count;
+}
+
+/** Updates the entries of the pivot row, one entry per work-item. */
+__kernel void sparse_pivot_update_row(
+	const int stride,
+	const int pivot_row,
+	__global float* const vals,
+	__global const int* const nnz,
+	__global const float* const alpha
+){
+	const int k = get_global_id(0);
+	if (k >= nnz[pivot_row])
+		return;
+	const int idx = ELL(pivot_row, k, stride);
+	vals[idx] = -vals[idx] / *alpha;
+}
+
+/**
+ * Updates the entries of the pivot column outside of the pivot row, one row
+ * per work-item.
+ */
+__kernel void sparse_pivot_update_column(
+	const int nrows,
+	const int stride,
+	const int pivot_row,
+	const int pivot_col,
+	__global const int* const cols,
+	__global float* const vals,
+	__global const int* const nnz,
+	__global const float* const alpha
+){
+	const int row = get_global_id(0);
+	if (row >= nrows || row == pivot_row)
+		return;
+	const int pos = sparse_find(row, pivot_col, stride, cols, nnz);
+	if (pos != NONE_FOUND)
+		vals[ELL(row, pos, stride)] = vals[ELL(row, pos, stride)] / *alpha;
+}
+
+/**
+ * Writes the reciprocal of the pivot element and swaps the basic and
+ * nonbasic variables in the mappings and flags, so that the host does not
+ * have to copy them after each pivot.
+ */
+__kernel void sparse_pivot_complete(
+	const int stride,
+	const int pivot_row,
+	const int pivot_col,
+	const int basic_idx,
+	const int nonbasic_idx,
+	__global const int* const cols,
+	__global float* const vals,
+	__global const int* const nnz,
+	__global const float* const alpha,
+	__global int* const colToVar,
+	__global int* const rowToVar,
+	__global int* const varToTableau,
+	__global unsigned char* const flags
+){
+	if (get_global_id(0) > 0)
+		return;
+	vals[ELL(pivot_row, sparse_find(pivot_row, pivot_col, stride, cols, nnz), stride)] =
+		1.0f / *alpha;
+	colToVar[pivot_col] = basic_idx;
+	rowToVar[pivot_row] = nonbasic_idx;
+	varToTableau[basic_idx] = pivot_col;
+	varToTableau[nonbasic_idx] = pivot_row;
+	flags[basic_idx] = NONBASIC_FLAG;
+	flags[nonbasic_idx] = BASIC_FLAG;
+}
+
+/**
+ * Recomputes the assignment of the basic variable of each row from the
+ * assignments of the nonbasic variables, one row per work-item.
+ */
+__kernel void sparse_update_assignment(
+	const int nrows,
+	const int stride,
+	__global const int* const cols,
+	__global const float* const vals,
+	__global const int* const nnz,
+	__global float* const assigns,
+	__global const int* const colToVar,
+	__global const int* const rowToVar
+){
+	const int row = get_global_id(0);
+	if (row >= nrows)
+		return;
+	float sum = 0.0f;
+	for (int k = 0; k < nnz[row]; k++) {
+		const int idx = ELL(row, k, stride);
+		sum += assigns[colToVar[cols[idx]]] * vals[idx];
+	}
+	assigns[rowToVar[row]] = sum;
+}
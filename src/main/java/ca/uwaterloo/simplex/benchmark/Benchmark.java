@@ -0,0 +1,390 @@
+package ca.uwaterloo.simplex.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+
+import ca.uwaterloo.shediac.KernelMgr.DeviceType;
+import ca.uwaterloo.simplex.benchmark.ProblemGenerator.BoundStructure;
+import ca.uwaterloo.simplex.solver.AbstractSolver;
+import ca.uwaterloo.simplex.solver.Problem;
+import ca.uwaterloo.simplex.solver.Solver;
+import ca.uwaterloo.simplex.solver.SolverDispatcher;
+import ca.uwaterloo.simplex.solver.SolverProfiler;
+
+/**
+ * A command-line benchmark that runs generated or stored problems against several backends and
+ * writes one CSV line per backend and problem group.
+ *
+ * <pre>
+ * Benchmark [options]
+ *   --sizes 10x10,100x100      problem dimensions (rows x columns), one group per size
+ *   --density 0.1              probability that a coefficient is nonzero
+ *   --bounds mixed             lower, upper, box or mixed
+ *   --count 10                 problems per group
+ *   --unsat 0.5                fraction of unsatisfiable problems
+ *   --seed 1                   seed of the first problem
+ *   --dir path                 run the *.prob files of a directory instead (one group)
+ *   --save path                also write the generated problems to a directory
+ *   --backends cpu,parallel,device
+ *                              any of cpu, parallel, device, cuda, opencl
+ *   --platform 0 --device 0    the device used by cuda and opencl
+ *   --warmup 2                 unmeasured solves before each group
+ *   --timeout 60000            milliseconds after which a solve is abandoned
+ *   --profile true             also solve each problem through SolverProfiler
+ *   --out results.csv          the CSV file (standard output by default)
+ * </pre>
+ *
+ * <p>
+ * The <code>device</code> backend is the device of <code>SolverDispatcher.getDefault()</code>, which
+ * is given by the <code>peticodiac.device</code> system property, and is skipped if there is none. Each backend keeps one solver per problem size, which is reset
+ * between problems, so that device memory is allocated once per size rather than once per problem.
+ * </p>
+ *
+ * <p>
+ * Times are reported in milliseconds. The solve time, the pivots and the throughput (problems
+ * solved per second of solving time) come from <code>AbstractSolver.solve()</code> itself. The
+ * per-primitive times are measured by a second, separate solve of each problem through
+ * <code>SolverProfiler</code>, which is skipped with <code>--profile false</code>; they are then
+ * reported as zero. The peak memory is the largest heap usage during the group, as reported by the
+ * memory pools. Solves that exceed the timeout are counted in the <code>timeouts</code> column and
+ * left out of every other column. For a directory of problems of different sizes, the dimensions
+ * are those of the last problem and the density is taken over all of them.
+ * </p>
+ */
+public final class Benchmark {
+
+  private final static String HEADER = "backend,group,rows,columns,density,problems,sat,unsat,"
+      + "timeouts,mismatches,pivots,checkBounds_ms,findSuitable_ms,pivot_ms,updateAssignment_ms,solve_ms,"
+      + "problems_per_s,peak_heap_mb";
+
+  /** A set of problems of the same dimensions, produced on demand to bound memory use. */
+  private interface Group {
+    String name();
+
+    int size();
+
+    /** Returns problem <code>k</code>. */
+    Problem problem(int k) throws IOException;
+
+    /** Returns the expected verdict of problem <code>k</code>, or <code>null</code> if unknown. */
+    Boolean expected(int k);
+  }
+
+  private final Map<String, String> options = new LinkedHashMap<>();
+  private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+    final Thread t = new Thread(r, "Benchmark");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private Benchmark(final String[] args) {
+    options.put("sizes", "10x10,100x100");
+    options.put("density", "0.1");
+    options.put("bounds", "mixed");
+    options.put("count", "10");
+    options.put("unsat", "0.5");
+    options.put("seed", "1");
+    options.put("backends", "cpu,parallel,device");
+    options.put("platform", "0");
+    options.put("device", "0");
+    options.put("warmup", "2");
+    options.put("timeout", "60000");
+    options.put("profile", "true");
+    for (int i = 0; i < args.length; i++) {
+      if (!args[i].startsWith("--") || i + 1 >= args.length)
+        throw new RuntimeException("Invalid argument: " + args[i]);
+      options.put(args[i].substring(2), args[++i]);
+    }
+  }
+
+  public static void main(final String[] args) throws IOException {
+    new Benchmark(args).run();
+  }
+
+  private void run() throws IOException {
+    final List<Group> groups = groups();
+    final String out = options.get("out");
+    try (PrintStream csv = out == null ? System.out
+        : new PrintStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(out))), false,
+            "UTF-8")) {
+      csv.println(HEADER);
+      for (final String name : options.get("backends").split(",")) {
+        final String backend = name.trim();
+        if (backend.equals("device")
+            && !SolverDispatcher.getDefault().isAvailable(SolverDispatcher.Backend.DEVICE)) {
+          System.err.println("device skipped: no device is available");
+          continue;
+        }
+        final BiFunction<Integer, Integer, AbstractSolver> factory = factory(backend);
+        final Map<String, AbstractSolver> solvers = new HashMap<>();
+        for (final Group group : groups) {
+          try {
+            csv.println(run(backend, factory, solvers, group));
+          } catch (final RuntimeException | LinkageError e) {
+            System.err.println(backend + " failed on " + group.name() + ": " + e);
+          }
+          csv.flush();
+        }
+      }
+    }
+  }
+
+  private BiFunction<Integer, Integer, AbstractSolver> factory(final String backend) {
+    final int platformId = Integer.parseInt(options.get("platform"));
+    final int deviceId = Integer.parseInt(options.get("device"));
+    switch (backend) {
+      case "cpu":
+        return Solver::create;
+      case "parallel":
+        return (m, n) -> SolverDispatcher.getDefault()
+            .create(SolverDispatcher.Backend.PARALLEL_CPU, m, n);
+      case "device":
+        return (m, n) -> SolverDispatcher.getDefault().create(SolverDispatcher.Backend.DEVICE, m, n);
+      case "cuda":
+        return (m, n) -> Solver.create(m, n, DeviceType.CUDA, platformId, deviceId, true);
+      case "opencl":
+        return (m, n) -> Solver.create(m, n, DeviceType.OpenCL, platformId, deviceId, true);
+      default:
+        throw new RuntimeException("Unknown backend: " + backend);
+    }
+  }
+
+  /** Solves the problems of a group and returns its CSV line. */
+  private String run(final String backend,
+      final BiFunction<Integer, Integer, AbstractSolver> factory,
+      final Map<String, AbstractSolver> solvers, final Group group) throws IOException {
+    final int warmup = Math.min(group.size(), Integer.parseInt(options.get("warmup")));
+    for (int k = 0; k < warmup; k++)
+      solve(load(factory, solvers, group.problem(k)));
+    final boolean profile = Boolean.parseBoolean(options.get("profile"));
+
+    final List<MemoryPoolMXBean> pools = new ArrayList<>();
+    for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        pool.resetPeakUsage();
+        pools.add(pool);
+      }
+    }
+
+    int rows = 0;
+    int columns = 0;
+    long nonzeros = 0;
+    long entries = 0;
+    int sat = 0;
+    int timeouts = 0;
+    int mismatches = 0;
+    long pivots = 0;
+    final double[] times = new double[5];
+    for (int k = 0; k < group.size(); k++) {
+      final Problem problem = group.problem(k);
+      rows = problem.numRows();
+      columns = problem.numColumns();
+      entries += (long) rows * columns;
+      for (int i = 0; i < rows; i++)
+        for (int j = 0; j < columns; j++)
+          if (problem.getCoefficient(i, j) != 0.0f)
+            nonzeros++;
+      final AbstractSolver solver = load(factory, solvers, problem);
+      final long start = System.nanoTime();
+      final Boolean result = solve(solver);
+      final long nanos = System.nanoTime() - start;
+      if (result == null) {
+        timeouts++;
+        continue;
+      }
+      if (result)
+        sat++;
+      if (group.expected(k) != null && group.expected(k) != result)
+        mismatches++;
+      pivots += solver.numPivots();
+      times[4] += nanos * 1.0e-6;
+      if (profile) {
+        final AbstractSolver profiled = load(factory, solvers, problem);
+        final SolverProfiler profiler = new SolverProfiler(profiled, false);
+        if (solve(profiled, profiler::solve) != null) {
+          times[0] += profiler.timeCheckBounds;
+          times[1] += profiler.timeFindSuitable;
+          times[2] += profiler.timePivot;
+          times[3] += profiler.timeUpdateAssignment;
+        }
+      }
+    }
+
+    long peak = 0;
+    for (final MemoryPoolMXBean pool : pools)
+      peak += pool.getPeakUsage().getUsed();
+    final int n = group.size() - timeouts;
+    final double density = entries == 0 ? 0.0 : (double) nonzeros / entries;
+    return String.format(Locale.ROOT,
+        "%s,%s,%d,%d,%.4f,%d,%d,%d,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f,%.2f,%.1f", backend,
+        group.name(), rows, columns, density, group.size(), sat, n - sat, timeouts, mismatches,
+        n == 0 ? 0.0 : (double) pivots / n, times[0] / Math.max(1, n), times[1] / Math.max(1, n),
+        times[2] / Math.max(1, n), times[3] / Math.max(1, n), times[4] / Math.max(1, n),
+        times[4] == 0.0 ? 0.0 : n / (times[4] * 1.0e-3), peak / (1024.0 * 1024.0));
+  }
+
+  /**
+   * Returns the solver of the backend for the size of a problem, created on first use and reset
+   * otherwise, with the problem loaded into it and prepared, as <code>BatchSolver</code> does, so
+   * that the preparation of device solvers is not timed.
+   */
+  private static AbstractSolver load(final BiFunction<Integer, Integer, AbstractSolver> factory,
+      final Map<String, AbstractSolver> solvers, final Problem problem) {
+    final String size = problem.numRows() + "x" + problem.numColumns();
+    AbstractSolver solver = solvers.get(size);
+    if (solver == null) {
+      solver = factory.apply(problem.numRows(), problem.numColumns());
+      solvers.put(size, solver);
+    } else {
+      solver.reset();
+    }
+    problem.load(solver);
+    solver.preSolve();
+    return solver;
+  }
+
+  /**
+   * Solves a problem, cancelling the solver after the timeout.
+   *
+   * @return the verdict, or <code>null</code> if the solve timed out
+   */
+  private Boolean solve(final AbstractSolver solver) {
+    return solve(solver, solver::solve);
+  }
+
+  /**
+   * Runs a solve of the given solver, such as one through a profiler, cancelling the solver after
+   * the timeout.
+   */
+  private Boolean solve(final AbstractSolver solver, final BooleanSupplier solve) {
+    final ScheduledFuture<?> timeout = timer.schedule(solver::cancel,
+        Long.parseLong(options.get("timeout")), TimeUnit.MILLISECONDS);
+    try {
+      return solve.getAsBoolean();
+    } catch (final CancellationException e) {
+      return null;
+    } finally {
+      timeout.cancel(false);
+    }
+  }
+
+  private List<Group> groups() throws IOException {
+    final List<Group> groups = new ArrayList<>();
+    if (options.containsKey("dir")) {
+      groups.add(directory(Paths.get(options.get("dir"))));
+      return groups;
+    }
+    final float density = Float.parseFloat(options.get("density"));
+    final BoundStructure structure =
+        BoundStructure.valueOf(options.get("bounds").toUpperCase(Locale.ROOT));
+    final int count = Integer.parseInt(options.get("count"));
+    final double unsat = Double.parseDouble(options.get("unsat"));
+    final long seed = Long.parseLong(options.get("seed"));
+    final Path save = options.containsKey("save") ? Paths.get(options.get("save")) : null;
+    for (final String size : options.get("sizes").split(",")) {
+      final String[] dims = size.trim().split("x");
+      final int rows = Integer.parseInt(dims[0]);
+      final int columns = Integer.parseInt(dims[1]);
+      final ProblemGenerator generator = new ProblemGenerator(rows, columns, density, structure);
+      final Group group = new Group() {
+        @Override
+        public String name() {
+          return rows + "x" + columns;
+        }
+
+        @Override
+        public int size() {
+          return count;
+        }
+
+        @Override
+        public Problem problem(final int k) {
+          return generator.generate(seed + k, expected(k));
+        }
+
+        @Override
+        public Boolean expected(final int k) {
+          // Spread the unsatisfiable problems evenly over the group
+          return rows < 2 || Math.floor((k + 1) * unsat) == Math.floor(k * unsat);
+        }
+      };
+      if (save != null)
+        save(group, save);
+      groups.add(group);
+    }
+    return groups;
+  }
+
+  /** Writes the problems of a group to <code>name-k.prob</code> files in a directory. */
+  private static void save(final Group group, final Path dir) throws IOException {
+    Files.createDirectories(dir);
+    for (int k = 0; k < group.size(); k++) {
+      final Path path = dir.resolve(group.name() + "-" + k + ".prob");
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+        group.problem(k).write(new DataOutputStream(out));
+      }
+    }
+  }
+
+  /** Returns the <code>*.prob</code> files of a directory, in lexicographic order. */
+  private static Group directory(final Path dir) throws IOException {
+    final List<Path> paths = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.prob")) {
+      for (final Path path : files)
+        paths.add(path);
+    }
+    final Path[] sorted = paths.toArray(new Path[0]);
+    Arrays.sort(sorted);
+    return new Group() {
+      @Override
+      public String name() {
+        return dir.getFileName().toString();
+      }
+
+      @Override
+      public int size() {
+        return sorted.length;
+      }
+
+      @Override
+      public Problem problem(final int k) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(sorted[k]))) {
+          return Problem.read(new DataInputStream(in));
+        }
+      }
+
+      @Override
+      public Boolean expected(final int k) {
+        return null;
+      }
+    };
+  }
+
+}
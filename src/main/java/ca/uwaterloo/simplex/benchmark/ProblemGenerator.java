@@ -0,0 +1,130 @@
+package ca.uwaterloo.simplex.benchmark;
+
+import java.util.Random;
+
+import ca.uwaterloo.simplex.solver.Problem;
+import ca.uwaterloo.simplex.solver.Solver;
+
+/**
+ * Generates random problems whose satisfiability is known in advance.
+ *
+ * <p>
+ * A satisfiable problem is built around a hidden point <code>x*</code> with nonnegative
+ * coordinates: every constraint <code>i</code> gets bounds that contain <code>s*_i = A_i x*</code>,
+ * so <code>x*</code> is a solution. An unsatisfiable problem is a satisfiable one whose last
+ * constraint is replaced by the negation of the first, with bounds that require
+ * <code>A_0 x</code> to be both at least <code>L</code> and at most <code>L - 1</code>.
+ * </p>
+ *
+ * <p>
+ * The same seed always yields the same problem.
+ * </p>
+ */
+public final class ProblemGenerator {
+
+  /** The bounds given to the slack variables of the constraints. */
+  public enum BoundStructure {
+    /** Only lower bounds. */
+    LOWER,
+    /** Only upper bounds. */
+    UPPER,
+    /** Lower and upper bounds. */
+    BOX,
+    /** A random choice of the above for each constraint. */
+    MIXED
+  }
+
+  /** The largest coordinate of the hidden solution. */
+  private final static float MAX_COORDINATE = 10.0f;
+
+  /** The largest distance between the hidden solution and a bound. */
+  private final static float MAX_MARGIN = 5.0f;
+
+  private final int numRows;
+  private final int numColumns;
+  private final float density;
+  private final BoundStructure structure;
+
+  /**
+   * @param numRows The number of constraints; unsatisfiable problems need at least two.
+   * @param numColumns The number of variables.
+   * @param density The probability that a coefficient is nonzero, in <code>(0, 1]</code>.
+   * @param structure The bounds of the constraints.
+   */
+  public ProblemGenerator(final int numRows, final int numColumns, final float density,
+      final BoundStructure structure) {
+    if (numRows < 1 || numColumns < 1 || density <= 0.0f || density > 1.0f)
+      throw new RuntimeException("Invalid generator parameters.");
+    this.numRows = numRows;
+    this.numColumns = numColumns;
+    this.density = density;
+    this.structure = structure;
+  }
+
+  /**
+   * Returns a random problem.
+   *
+   * @param seed The seed.
+   * @param sat Whether the problem must be satisfiable or unsatisfiable.
+   */
+  public Problem generate(final long seed, final boolean sat) {
+    if (!sat && numRows < 2)
+      throw new RuntimeException("An unsatisfiable problem needs at least two constraints.");
+    final Random rnd = new Random(seed);
+    final Problem problem = new Problem(numRows, numColumns);
+    final float[] x = new float[numColumns];
+    for (int j = 0; j < numColumns; j++)
+      x[j] = rnd.nextFloat() * MAX_COORDINATE;
+
+    for (int i = 0; i < numRows; i++) {
+      // Every constraint has at least one nonzero coefficient
+      final int forced = rnd.nextInt(numColumns);
+      float value = 0.0f;
+      for (int j = 0; j < numColumns; j++) {
+        if (j != forced && rnd.nextFloat() >= density)
+          continue;
+        final float coeff = coefficient(rnd);
+        problem.setCoefficient(i, j, coeff);
+        value += coeff * x[j];
+      }
+      BoundStructure s = structure;
+      if (s == BoundStructure.MIXED)
+        s = BoundStructure.values()[rnd.nextInt(BoundStructure.MIXED.ordinal())];
+      final float lower = s == BoundStructure.UPPER ? Solver.NO_BOUND
+          : bound(value - rnd.nextFloat() * MAX_MARGIN);
+      final float upper = s == BoundStructure.LOWER ? Solver.NO_BOUND
+          : bound(value + rnd.nextFloat() * MAX_MARGIN);
+      problem.setBounds(numColumns + i, lower, upper);
+    }
+
+    if (!sat) {
+      // The last row is the negation of the first: A_0 x >= L and -A_0 x >= 1 - L
+      final int last = numRows - 1;
+      float value = 0.0f;
+      for (int j = 0; j < numColumns; j++) {
+        final float coeff = problem.getCoefficient(0, j);
+        problem.setCoefficient(last, j, coeff == 0.0f ? 0.0f : -coeff);
+        value += coeff * x[j];
+      }
+      final float lower = bound(value - rnd.nextFloat() * MAX_MARGIN);
+      problem.setBounds(numColumns, lower, Solver.NO_BOUND);
+      problem.setBounds(numColumns + last, bound(1.0f - lower), Solver.NO_BOUND);
+    }
+    return problem;
+  }
+
+  /** Returns a nonzero coefficient in <code>[-5, 5]</code>. */
+  private static float coefficient(final Random rnd) {
+    final float coeff = Math.round((rnd.nextFloat() * 10.0f - 5.0f) * 4.0f) / 4.0f;
+    return coeff == 0.0f ? 1.0f : coeff;
+  }
+
+  /**
+   * Returns the bound, moved away from the value that the solvers reserve to mean that there is no
+   * bound.
+   */
+  private static float bound(final float value) {
+    return value == Solver.NO_BOUND ? Math.nextDown(value) : value;
+  }
+
+}
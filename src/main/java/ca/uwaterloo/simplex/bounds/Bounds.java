@@ -25,6 +25,16 @@ public interface Bounds {
   /** Returns a reference to the variable assignments. */
   float[] getAssignments();
 
+  /**
+   * Copies the assignments of variables <code>0 .. count-1</code> into <code>dest</code>. Unlike
+   * {@link #getAssignments()}, this never allocates, and implementations that keep the
+   * assignments elsewhere read them back in one transfer.
+   */
+  default void copyAssignments(final float[] dest, final int count) {
+    for (int i = 0; i < count; i++)
+      dest[i] = getAssignment(i);
+  }
+
   /** Returns a reference to the flags, which indicate which variables are basic or nonbasic. */
   byte[] getFlags();
 
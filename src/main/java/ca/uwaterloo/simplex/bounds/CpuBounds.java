@@ -51,6 +51,11 @@ public class CpuBounds implements Bounds {
     return assigns;
   }
 
+  @Override
+  public void copyAssignments(final float[] dest, final int count) {
+    System.arraycopy(assigns, 0, dest, 0, count);
+  }
+
   @Override
   public byte[] getFlags() {
     return flags;
@@ -14,11 +14,26 @@ public class DeviceBounds implements Bounds {
   public Memory memAssigns;
   public Memory memFlags;
 
+  /**
+   * The host copy of {@link #memAssigns}, which holds the bits of each assignment and is filled by
+   * <code>copyDtoH()</code>.
+   */
+  private final int[] hostAssigns;
+
   public DeviceBounds(final int numBasic, final int numNonbasic, final float epsilon) {
     this.numBasic = numBasic;
     this.numNonbasic = numNonbasic;
     // this.epsilon = epsilon;
     numVars = numBasic + numNonbasic;
+    hostAssigns = new int[numVars];
+  }
+
+  /**
+   * Returns the host array from which {@link #memAssigns} must be allocated, so that
+   * <code>copyDtoH()</code> fills it.
+   */
+  public int[] hostAssigns() {
+    return hostAssigns;
   }
 
   @Override
@@ -40,11 +55,17 @@ public class DeviceBounds implements Bounds {
   @Override
   public float[] getAssignments() {
     float[] data = new float[numVars];
-    for (int i = 0; i < numVars; i++)
-      data[i] = memAssigns.asFloatMemory().get(0);
+    copyAssignments(data, numVars);
     return data;
   }
 
+  @Override
+  public void copyAssignments(final float[] dest, final int count) {
+    memAssigns.copyDtoH();
+    for (int i = 0; i < count; i++)
+      dest[i] = Float.intBitsToFloat(hostAssigns[i]);
+  }
+
   @Override
   public byte[] getFlags() {
     byte[] data = new byte[numVars];
@@ -0,0 +1,147 @@
+package ca.uwaterloo.simplex.daemon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Opens the channels of the daemon and its clients. Unix domain sockets are only available from
+ * Java 16, so they are reached through reflection; on older runtimes, only loopback TCP is
+ * available.
+ */
+final class Sockets {
+
+  /** <code>StandardProtocolFamily.UNIX</code>, or <code>null</code> if unsupported. */
+  private final static ProtocolFamily UNIX;
+
+  /** <code>UnixDomainSocketAddress.of(Path)</code>. */
+  private final static Method UNIX_ADDRESS;
+
+  /** <code>ServerSocketChannel.open(ProtocolFamily)</code>. */
+  private final static Method OPEN_SERVER;
+
+  static {
+    ProtocolFamily unix = null;
+    Method address = null;
+    Method openServer = null;
+    try {
+      unix = StandardProtocolFamily.valueOf("UNIX");
+      address = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+      openServer = ServerSocketChannel.class.getMethod("open", ProtocolFamily.class);
+    } catch (final IllegalArgumentException | ReflectiveOperationException e) {
+      unix = null;
+    }
+    UNIX = unix;
+    UNIX_ADDRESS = address;
+    OPEN_SERVER = openServer;
+  }
+
+  private Sockets() {}
+
+  /** Returns <code>true</code> if the runtime supports Unix domain sockets. */
+  static boolean unixSupported() {
+    return UNIX != null;
+  }
+
+  /** Listens on the Unix domain socket at <code>path</code>, which must not exist. */
+  static ServerSocketChannel listen(final Path path) throws IOException {
+    final ServerSocketChannel server = (ServerSocketChannel) invoke(OPEN_SERVER, UNIX);
+    try {
+      server.bind(unixAddress(path));
+    } catch (final IOException e) {
+      server.close();
+      throw e;
+    }
+    return server;
+  }
+
+  /** Listens on a loopback TCP port, or on a free one if <code>port</code> is zero. */
+  static ServerSocketChannel listen(final int port) throws IOException {
+    final ServerSocketChannel server = ServerSocketChannel.open();
+    try {
+      server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    } catch (final IOException e) {
+      server.close();
+      throw e;
+    }
+    return server;
+  }
+
+  /** Connects to the Unix domain socket at <code>path</code>. */
+  static SocketChannel connect(final Path path) throws IOException {
+    if (!unixSupported())
+      throw new RuntimeException("Unix domain sockets require Java 16.");
+    return SocketChannel.open(unixAddress(path));
+  }
+
+  /** Connects to a loopback TCP port. */
+  static SocketChannel connect(final int port) throws IOException {
+    return SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+  }
+
+  private static SocketAddress unixAddress(final Path path) throws IOException {
+    return (SocketAddress) invoke(UNIX_ADDRESS, path);
+  }
+
+  private static Object invoke(final Method method, final Object arg) throws IOException {
+    try {
+      return method.invoke(null, arg);
+    } catch (final InvocationTargetException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw new RuntimeException("Unable to open a Unix domain socket.", e.getCause());
+    } catch (final IllegalAccessException e) {
+      throw new RuntimeException("Unable to open a Unix domain socket.", e);
+    }
+  }
+
+  /*
+   * The streams of java.nio.channels.Channels hold the lock of a blocking channel while they wait,
+   * so a thread could not write results while another one waits for the next problem. These
+   * streams use the channel directly.
+   */
+
+  static InputStream in(final ByteChannel channel) {
+    return new InputStream() {
+      @Override
+      public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+      }
+
+      @Override
+      public int read(final byte[] b, final int off, final int len) throws IOException {
+        return len == 0 ? 0 : channel.read(ByteBuffer.wrap(b, off, len));
+      }
+    };
+  }
+
+  static OutputStream out(final ByteChannel channel) {
+    return new OutputStream() {
+      @Override
+      public void write(final int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(final byte[] b, final int off, final int len) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while (buffer.hasRemaining())
+          channel.write(buffer);
+      }
+    };
+  }
+
+}
@@ -0,0 +1,139 @@
+package ca.uwaterloo.simplex.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uwaterloo.simplex.solver.Problem;
+import ca.uwaterloo.simplex.solver.Result;
+
+/**
+ * A connection to a {@link SolverDaemon}.
+ *
+ * <pre>
+ * SolverClient [--socket path | --port 7717] file.prob...
+ * </pre>
+ *
+ * <p>
+ * From the command line, the client sends the problems of the given files (see
+ * {@link Problem#write}) and prints one line per problem: its verdict (SAT, UNSAT or
+ * UNKNOWN) and, if it is satisfiable, its solution. Without <code>--port</code>, the client
+ * connects to the Unix domain socket of the daemon if the runtime supports it, and to
+ * {@link SolverDaemon#DEFAULT_PORT} otherwise.
+ * </p>
+ */
+public final class SolverClient implements AutoCloseable {
+
+  private final SocketChannel channel;
+  private final DataInputStream in;
+  private final DataOutputStream out;
+
+  private SolverClient(final SocketChannel channel) {
+    this.channel = channel;
+    in = new DataInputStream(new BufferedInputStream(Sockets.in(channel)));
+    out = new DataOutputStream(new BufferedOutputStream(Sockets.out(channel)));
+  }
+
+  /** Connects to a daemon listening on the Unix domain socket <code>socket</code>. */
+  public static SolverClient connect(final Path socket) throws IOException {
+    return new SolverClient(Sockets.connect(socket));
+  }
+
+  /** Connects to a daemon listening on the loopback TCP port <code>port</code>. */
+  public static SolverClient connect(final int port) throws IOException {
+    return new SolverClient(Sockets.connect(port));
+  }
+
+  /** Sends a problem to the daemon and waits for its result. */
+  public Result solve(final Problem problem) throws IOException {
+    problem.write(out);
+    out.flush();
+    return Result.read(in);
+  }
+
+  /**
+   * Sends every problem without waiting for the results, so that the daemon can solve them in
+   * parallel, and returns the results in the order of the problems. The problems are written by
+   * another thread, since the daemon stops reading once too many results are waiting to be read.
+   */
+  public List<Result> solveAll(final List<Problem> problems) throws IOException {
+    final IOException[] failure = new IOException[1];
+    final Thread writer = new Thread(() -> {
+      try {
+        for (final Problem problem : problems)
+          problem.write(out);
+        out.flush();
+      } catch (final IOException e) {
+        failure[0] = e;
+      }
+    }, "SolverClient");
+    writer.setDaemon(true);
+    writer.start();
+    final List<Result> results = new ArrayList<>(problems.size());
+    try {
+      for (int k = 0; k < problems.size(); k++)
+        results.add(Result.read(in));
+      writer.join();
+    } catch (final IOException e) {
+      throw failure[0] != null ? failure[0] : e;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    if (failure[0] != null)
+      throw failure[0];
+    return results;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  public static void main(final String[] args) throws IOException {
+    Path socket = SolverDaemon.DEFAULT_SOCKET;
+    int port = -1;
+    final List<Path> files = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--socket") && i + 1 < args.length)
+        socket = Paths.get(args[++i]);
+      else if (args[i].equals("--port") && i + 1 < args.length)
+        port = Integer.parseInt(args[++i]);
+      else if (args[i].startsWith("--"))
+        throw new RuntimeException("Invalid argument: " + args[i]);
+      else
+        files.add(Paths.get(args[i]));
+    }
+
+    final List<Problem> problems = new ArrayList<>(files.size());
+    for (final Path file : files)
+      try (InputStream is = new BufferedInputStream(Files.newInputStream(file))) {
+        problems.add(Problem.read(new DataInputStream(is)));
+      }
+    if (port < 0 && !Sockets.unixSupported())
+      port = SolverDaemon.DEFAULT_PORT;
+    try (SolverClient client = port < 0 ? connect(socket) : connect(port)) {
+      final List<Result> results = client.solveAll(problems);
+      for (int k = 0; k < results.size(); k++) {
+        final Result result = results.get(k);
+        final StringBuilder sb = new StringBuilder();
+        sb.append(files.get(k)).append(": ").append(result.statusName());
+        if (result.isSat())
+          for (final float x : result.solution())
+            sb.append(' ').append(x);
+        System.out.println(sb);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,354 @@
+package ca.uwaterloo.simplex.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.LongStream;
+
+import ca.uwaterloo.shediac.KernelMgr.DeviceType;
+import ca.uwaterloo.simplex.benchmark.ProblemGenerator;
+import ca.uwaterloo.simplex.benchmark.ProblemGenerator.BoundStructure;
+import ca.uwaterloo.simplex.solver.AbstractSolver;
+import ca.uwaterloo.simplex.solver.BatchSolver;
+import ca.uwaterloo.simplex.solver.Problem;
+import ca.uwaterloo.simplex.solver.Result;
+import ca.uwaterloo.simplex.solver.Solver;
+import ca.uwaterloo.simplex.solver.SolverDispatcher;
+
+/**
+ * A long-running local daemon that solves problems sent over a socket, so that tools which solve
+ * one problem per invocation pay for starting and warming up a JVM (and for building the device
+ * kernels) only once.
+ *
+ * <pre>
+ * SolverDaemon [options]
+ *   --socket path          the Unix domain socket (a file in the temporary directory by default)
+ *   --port 7717            the loopback TCP port, used if Unix domain sockets are unavailable
+ *   --backend cpu          any of cpu, parallel, cuda, opencl
+ *   --platform 0 --device 0    the device used by cuda and opencl
+ *   --threads n            worker threads (one per core by default)
+ *   --warmup 200           generated problems solved before accepting connections
+ *   --pivots 0             the pivots allowed per problem (no limit by default)
+ *   --timeout 10000        the milliseconds allowed per problem (0 for no limit)
+ * </pre>
+ *
+ * <p>
+ * Unix domain sockets require Java 16; on older runtimes the daemon listens on a loopback TCP port
+ * instead. The address is printed on standard output once the daemon is ready.
+ * </p>
+ *
+ * <p>
+ * A client sends any number of problems in the binary format of {@link Problem#write} and
+ * receives one result per problem, in the binary format of {@link Result#write} and in the same
+ * order; the index of a result is the position of its problem on the connection. Problems are
+ * solved by a {@link BatchSolver}, whose workers keep their solvers (and kernels) between problems,
+ * and several connections share its workers. The workers only queue the results of a connection,
+ * which are written to the client by the thread of the connection, so that a slow client cannot
+ * hold the workers; once {@link #MAX_PENDING_RESULTS} results are waiting to be written, the
+ * daemon stops reading the problems of that connection. A problem that reaches the pivot or time
+ * limit gets
+ * an unknown result, so that one hard problem cannot hold a worker indefinitely. A problem that
+ * cannot be read (including one cut short by the end of the input) closes the connection.
+ * </p>
+ */
+public final class SolverDaemon implements AutoCloseable {
+
+  private final static Logger logger = Logger.getLogger("Solver");
+
+  /** The Unix domain socket used unless another one is given. */
+  public final static Path DEFAULT_SOCKET =
+      Paths.get(System.getProperty("java.io.tmpdir"), "simplex-solver.sock");
+
+  /** The loopback TCP port used unless another one is given. */
+  public final static int DEFAULT_PORT = 7717;
+
+  /**
+   * The number of problems of a connection that may be read before the results of the earlier
+   * ones have been written.
+   */
+  public final static int MAX_PENDING_RESULTS = 256;
+
+  /** Marks the end of the results of a connection. */
+  private final static Object END = new Object();
+
+  /** The number of distinct problems solved by {@link #warmUp(BatchSolver, int)}. */
+  private final static int WARMUP_SEEDS = 64;
+
+  private final ServerSocketChannel server;
+  private final Path socket;
+  private final BatchSolver batch;
+  private final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+    final Thread t = new Thread(r, "SolverDaemon");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private SolverDaemon(final ServerSocketChannel server, final Path socket,
+      final BatchSolver batch) {
+    this.server = server;
+    this.socket = socket;
+    this.batch = batch;
+  }
+
+  /**
+   * Listens on the Unix domain socket <code>socket</code> if the runtime supports it, and on the
+   * loopback TCP port <code>port</code> otherwise (or if <code>socket</code> is
+   * <code>null</code>). A socket file left behind by a daemon that is no longer running is
+   * replaced.
+   *
+   * @param batch Solves the problems; it is not closed with the daemon.
+   * @throws RuntimeException If another daemon is listening on the socket.
+   */
+  public static SolverDaemon open(final Path socket, final int port, final BatchSolver batch)
+      throws IOException {
+    if (socket == null || !Sockets.unixSupported())
+      return new SolverDaemon(Sockets.listen(port), null, batch);
+    if (Files.exists(socket)) {
+      if (listening(socket))
+        throw new RuntimeException("A daemon is already listening on " + socket + ".");
+      Files.delete(socket);
+    }
+    return new SolverDaemon(Sockets.listen(socket), socket, batch);
+  }
+
+  /** Returns <code>true</code> if a daemon accepts connections on the socket file. */
+  private static boolean listening(final Path socket) throws IOException {
+    final SocketChannel channel;
+    try {
+      channel = Sockets.connect(socket);
+    } catch (final IOException e) {
+      return false;
+    }
+    channel.close();
+    return true;
+  }
+
+  /** Returns the address the daemon listens on. */
+  public SocketAddress address() throws IOException {
+    return server.getLocalAddress();
+  }
+
+  /**
+   * Accepts connections and serves each one on its own thread until the daemon is closed.
+   */
+  public void serve() throws IOException {
+    while (true) {
+      final SocketChannel channel;
+      try {
+        channel = server.accept();
+      } catch (final ClosedChannelException e) {
+        return;
+      }
+      try {
+        connections.execute(() -> handle(channel));
+      } catch (final RejectedExecutionException e) {
+        // The daemon was closed after accepting the connection
+        channel.close();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Solves the problems of one connection. The problems are read and solved on another thread,
+   * and this thread writes each result as soon as it is known, flushing whenever no other result
+   * is waiting.
+   */
+  private void handle(final SocketChannel channel) {
+    try (SocketChannel c = channel) {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(Sockets.in(c)));
+      final DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Sockets.out(c)));
+      final Semaphore pending = new Semaphore(MAX_PENDING_RESULTS);
+      final BlockingQueue<Object> results = new ArrayBlockingQueue<>(MAX_PENDING_RESULTS + 1);
+      final Future<?> reader = connections.submit(() -> {
+        try {
+          batch.solve(new Problems(in, pending), results::add, true);
+        } finally {
+          results.add(END);
+        }
+      });
+      try {
+        for (Object result; (result = results.take()) != END;) {
+          ((Result) result).write(out);
+          if (results.isEmpty())
+            out.flush();
+          pending.release();
+        }
+        out.flush();
+        reader.get();
+      } finally {
+        reader.cancel(true);
+      }
+    } catch (final IOException | RuntimeException | ExecutionException e) {
+      logger.log(Level.FINE, "SolverDaemon: connection closed", e);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * The problems sent on a connection, up to the end of its input. Only an end between two
+   * problems ends the sequence; a problem cut short fails like any other that cannot be read.
+   * Each problem takes a permit, which is returned once its result has been written.
+   */
+  private static final class Problems implements Iterator<Problem> {
+    private final DataInputStream in;
+    private final Semaphore pending;
+    private Problem next = null;
+    private boolean done = false;
+
+    Problems(final DataInputStream in, final Semaphore pending) {
+      this.in = in;
+      this.pending = pending;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next == null && !done) {
+        try {
+          pending.acquire();
+          next = Problem.read(in);
+        } catch (final EOFException e) {
+          done = true;
+        } catch (final IOException e) {
+          throw new UncheckedIOException(e);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new CancellationException();
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public Problem next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+      final Problem problem = next;
+      next = null;
+      return problem;
+    }
+  }
+
+  /**
+   * Solves <code>count</code> generated problems, so that the solvers of the workers are created
+   * and the solving procedure is compiled before the first connection. The problems repeat a small
+   * set of seeds, all of which the solving procedure is known to finish, since a problem that
+   * cycles would keep the daemon from starting.
+   */
+  public static void warmUp(final BatchSolver batch, final int count) {
+    final ProblemGenerator generator = new ProblemGenerator(5, 5, 0.5f, BoundStructure.BOX);
+    batch.solve(LongStream.range(0, count)
+        .mapToObj(k -> generator.generate(k % WARMUP_SEEDS, k % 2 == 0)), result -> {}, false);
+  }
+
+  /** Stops accepting connections and removes the socket file. */
+  @Override
+  public void close() throws IOException {
+    server.close();
+    connections.shutdown();
+    if (socket != null)
+      Files.deleteIfExists(socket);
+  }
+
+  public static void main(final String[] args) throws IOException {
+    final Map<String, String> options = new LinkedHashMap<>();
+    options.put("socket", DEFAULT_SOCKET.toString());
+    options.put("port", Integer.toString(DEFAULT_PORT));
+    options.put("backend", "cpu");
+    options.put("platform", "0");
+    options.put("device", "0");
+    options.put("threads", Integer.toString(Runtime.getRuntime().availableProcessors()));
+    options.put("warmup", "200");
+    options.put("pivots", "0");
+    options.put("timeout", "10000");
+    for (int i = 0; i < args.length; i++) {
+      if (!args[i].startsWith("--") || i + 1 >= args.length)
+        throw new RuntimeException("Invalid argument: " + args[i]);
+      options.put(args[i].substring(2), args[++i]);
+    }
+
+    final int threads = Integer.parseInt(options.get("threads"));
+    try (BatchSolver batch = new BatchSolver(threads, 4 * threads, factory(options))) {
+      final SolverDaemon daemon =
+          open(Paths.get(options.get("socket")), Integer.parseInt(options.get("port")), batch);
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          daemon.close();
+        } catch (final IOException e) {
+          // The socket file is left behind and replaced by the next daemon
+        }
+      }));
+      try {
+        warmUp(batch, Integer.parseInt(options.get("warmup")));
+        System.out.println("Listening on " + daemon.address());
+        System.out.flush();
+        daemon.serve();
+      } finally {
+        daemon.close();
+      }
+    }
+  }
+
+  /** Returns the factory of the backend, whose solvers are limited as the options ask. */
+  private static BiFunction<Integer, Integer, AbstractSolver> factory(
+      final Map<String, String> options) {
+    final BiFunction<Integer, Integer, AbstractSolver> backend = backend(options);
+    final long maxPivots = Long.parseLong(options.get("pivots"));
+    final long maxNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(options.get("timeout")));
+    return (m, n) -> {
+      final AbstractSolver solver = backend.apply(m, n);
+      solver.setLimits(maxPivots, maxNanos);
+      return solver;
+    };
+  }
+
+  private static BiFunction<Integer, Integer, AbstractSolver> backend(
+      final Map<String, String> options) {
+    final int platformId = Integer.parseInt(options.get("platform"));
+    final int deviceId = Integer.parseInt(options.get("device"));
+    switch (options.get("backend")) {
+      case "cpu":
+        return Solver::create;
+      case "parallel":
+        return (m, n) -> SolverDispatcher.getDefault()
+            .create(SolverDispatcher.Backend.PARALLEL_CPU, m, n);
+      case "cuda":
+        return (m, n) -> Solver.create(m, n, DeviceType.CUDA, platformId, deviceId, true);
+      case "opencl":
+        return (m, n) -> Solver.create(m, n, DeviceType.OpenCL, platformId, deviceId, true);
+      default:
+        throw new RuntimeException("Unknown backend: " + options.get("backend"));
+    }
+  }
+
+}
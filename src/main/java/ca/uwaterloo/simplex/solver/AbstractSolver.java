@@ -1,8 +1,14 @@
 package ca.uwaterloo.simplex.solver;
 
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import ca.uwaterloo.simplex.bounds.Bounds;
 import ca.uwaterloo.simplex.bounds.CpuBounds;
@@ -16,16 +22,84 @@ public abstract class AbstractSolver implements Solver {
 
   protected final static Logger logger = Logger.getLogger("Solver");
 
+  /** The default number of pivots between two interval checks (see {@link #setIntervalCheck}). */
+  public final static int DEFAULT_INTERVAL_CHECK = 32;
+
+  /** The size of tableau from which the rows are checked in parallel. */
+  private final static long PARALLEL_INTERVAL_ENTRIES = 1 << 16;
+
+  /** The relative rounding error tolerated by the interval checks. */
+  private final static double INTERVAL_TOLERANCE = 1e-4;
+
   protected final Bounds bounds;
   protected int numRows = 0;
   protected final int maxNumRows;
   protected final int numColumns;
   protected final int numVars;
-  protected final float[] tableau;
+  protected float[] tableau;
   protected final int[] colToVar;
   protected final int[] rowToVar;
   protected final int[] varToTableau;
 
+  /** Set by {@link #cancel()} to stop a running solve from another thread. */
+  private volatile boolean cancelled = false;
+
+  /*
+   * The trail records the previous bounds of every variable changed by assertBound(), and levels
+   * holds the size of the trail at each push(), so that pop() can undo the changes in reverse.
+   */
+  private int[] trailIdx = new int[16];
+  private float[] trailLower = new float[16];
+  private float[] trailUpper = new float[16];
+  private int trailSize = 0;
+  private int[] levels = new int[16];
+  private int numLevels = 0;
+
+  /**
+   * The position in the trail of the first assertBound() that left its variable with empty bounds,
+   * or NONE_FOUND. The problem is unsatisfiable until pop() undoes that entry.
+   */
+  private int conflict = NONE_FOUND;
+
+  /** The cache of final bases used to warm-start solve(), or <code>null</code>. */
+  private BasisCache basisCache = null;
+
+  /** The number of pivots performed by the current (or last) call to solve(). */
+  private long numPivots = 0;
+
+  /*
+   * Limits of a call to solve(): the number of pivots and the time in nanoseconds (zero for no
+   * limit), and the time at which the current call runs out.
+   */
+  private long pivotLimit = 0;
+  private long timeLimit = 0;
+  private long deadline = 0;
+
+  /*
+   * Residual checks: when residualInterval is positive, the constraints as they were added are
+   * kept in original, and every residualInterval pivots the assignment is checked against them.
+   */
+  private float[] original = null;
+  private int residualInterval = 0;
+  private float residualTolerance = 0.0f;
+  private int pivotsSinceResidualCheck = 0;
+  private long numRefactorizations = 0;
+
+  /*
+   * Interval checks: every intervalCheckInterval pivots (and before the first one), the range of
+   * each row over the bounds of the nonbasic variables is compared with the bounds of its basic
+   * variable.
+   */
+  private int intervalCheckInterval = DEFAULT_INTERVAL_CHECK;
+  private int pivotsSinceIntervalCheck = 0;
+  private final RowRange intervalRange = new RowRange();
+
+  /** Records the next call to solve(), or <code>null</code>. */
+  private PivotTrace.Recorder recorder = null;
+
+  /** The view returned by {@link #solutionView()}, created on first use. */
+  private FloatBuffer solutionView = null;
+
   /**
    * 
    * 
@@ -34,6 +108,17 @@ public abstract class AbstractSolver implements Solver {
    * @param type
    */
   public AbstractSolver(final int maxNumBasic, final int numNonbasic, final BoundsType type) {
+    this(maxNumBasic, numNonbasic, type, new float[maxNumBasic * numNonbasic]);
+  }
+
+  /**
+   * Creates a solver that uses the given array as its host tableau. Implementations that store
+   * the tableau elsewhere may pass an empty array, in which case they must override every method
+   * that accesses the host tableau, including {@link #setRow(int, float[], int)} and
+   * {@link #hostTableau()}.
+   */
+  protected AbstractSolver(final int maxNumBasic, final int numNonbasic, final BoundsType type,
+      final float[] tableau) {
     if (type == BoundsType.CPU)
       bounds = new CpuBounds(maxNumBasic, numNonbasic, EPSILON);
     else if (type == BoundsType.Device)
@@ -45,54 +130,903 @@ public abstract class AbstractSolver implements Solver {
     numColumns = numNonbasic;
     numVars = maxNumBasic + numNonbasic;
 
-    tableau = new float[maxNumBasic * numNonbasic];
+    this.tableau = tableau;
     colToVar = new int[numNonbasic];
     rowToVar = new int[maxNumBasic];
     varToTableau = new int[numVars];
 
-    // Initialize maps
+    initMaps();
+  }
+
+  /** Initializes the maps so that the original variables label the columns. */
+  private void initMaps() {
     int i;
-    for (i = 0; i < numNonbasic; i++) {
+    for (i = 0; i < numColumns; i++) {
       colToVar[i] = i;
       varToTableau[i] = i;
     }
-    for (int j = 0; j < maxNumBasic; i++, j++) {
+    for (int j = 0; j < maxNumRows; i++, j++) {
       rowToVar[j] = i;
       varToTableau[i] = j;
     }
   }
 
+  /**
+   * Returns the solver to the state it had after construction, without any constraints, so that
+   * its buffers can be reused for another problem of the same dimensions.
+   */
+  public void reset() {
+    numRows = 0;
+    initMaps();
+    for (int i = 0; i < numVars; i++) {
+      bounds.setBounds(i, 0.0f, NO_BOUND);
+      bounds.setAssignment(i, 0.0f);
+      bounds.setFlag(i, i < numColumns ? Bounds.NON_BASIC : Bounds.BASIC);
+    }
+    trailSize = 0;
+    numLevels = 0;
+    conflict = NONE_FOUND;
+    cancelled = false;
+    basisChanged();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws CancellationException If {@link #cancel()} is called while solving, or if the limits
+   *         set by {@link #setLimits(long, long)} are reached.
+   */
   @Override
   public boolean solve() {
+    return run(false);
+  }
+
+  /**
+   * Runs the solving procedure, or the repair procedure of {@link #resolve()}, and records it in
+   * the statistics. The pivots of both are counted by {@link #numPivots()}.
+   */
+  private boolean run(final boolean repair) {
+    final long start = System.nanoTime();
+    numPivots = 0;
+    deadline = start + timeLimit;
+    final boolean sat;
+    try {
+      if (conflict != NONE_FOUND) {
+        sat = false;
+      } else if (repair) {
+        sat = repair();
+      } else if (basisCache == null) {
+        sat = tracedSearch();
+      } else {
+        final BasisCache.Key key = warmStart();
+        sat = tracedSearch();
+        if (key != null)
+          basisCache.put(key, new BasisCache.Basis(Arrays.copyOf(rowToVar, numRows),
+              Arrays.copyOf(bounds.getAssignments(), numVars)));
+      }
+    } finally {
+      if (recorder != null) {
+        recorder.end();
+        recorder = null;
+      }
+    }
+    SolverStatistics.get().recordSolve(getClass(), numRows, numColumns, sat, numPivots,
+        System.nanoTime() - start);
+    return sat;
+  }
+
+  /** Runs {@link #search()}, after writing the initial state if the solve is recorded. */
+  private boolean tracedSearch() {
+    if (recorder != null)
+      recorder.begin(this);
+    return search();
+  }
+
+  /**
+   * Records the next call to {@link #solve()} (or {@link #resolve()}) to a trace file: the state
+   * before the first pivot (after a warm start, if any) and the variables of every pivot. See
+   * {@link PivotTrace}.
+   */
+  public void recordTrace(final Path path) {
+    recorder = new PivotTrace.Recorder(path);
+  }
+
+  /**
+   * The solving procedure, starting from the current basis. With residual checks enabled, the
+   * verdict is only returned once the tableau it was reached with has passed a check.
+   */
+  private boolean search() {
     int brokenIdx = 0;
     int suitableIdx = 0;
-    while ((brokenIdx = checkBounds()) >= 0) {
-      if ((suitableIdx = findSuitable(brokenIdx)) < 0)
+    boolean sat;
+    do {
+      sat = intervalCheckInterval == 0 || infeasibleRow() < 0;
+      pivotsSinceIntervalCheck = 0;
+      while (sat && (brokenIdx = checkBounds()) >= 0) {
+        checkStopped();
+        if ((suitableIdx = findSuitable(brokenIdx)) < 0) {
+          sat = false;
+          break;
+        }
+        sat = step(brokenIdx, suitableIdx);
+      }
+    } while (residualInterval > 0 && pivotsSinceResidualCheck > 0 && refactorIfDrifted());
+    return sat;
+  }
+
+  /**
+   * Throws a <code>CancellationException</code> if {@link #cancel()} has been called or the
+   * limits of the current call have been reached.
+   */
+  private void checkStopped() {
+    if (cancelled)
+      throw new CancellationException();
+    if (limitReached())
+      throw new CancellationException("The solve reached its limits.");
+  }
+
+  /**
+   * Pivots a broken and a suitable variable and updates the assignment, once the broken variable
+   * has been given its new assignment. The pivot is counted and recorded, and the residual and
+   * interval checks that are due are run.
+   *
+   * @return <code>false</code> if an interval check finds the problem unsatisfiable
+   */
+  private boolean step(final int brokenIdx, final int suitableIdx) {
+    if (recorder != null)
+      recorder.add(brokenIdx, suitableIdx, bounds.getAssignment(brokenIdx));
+    pivot(brokenIdx, suitableIdx);
+    updateAssignment();
+    numPivots++;
+    if (residualInterval > 0 && ++pivotsSinceResidualCheck >= residualInterval) {
+      pivotsSinceResidualCheck = 0;
+      if (drifted())
+        refactor();
+    }
+    if (intervalCheckInterval > 0 && ++pivotsSinceIntervalCheck >= intervalCheckInterval) {
+      pivotsSinceIntervalCheck = 0;
+      return infeasibleRow() < 0;
+    }
+    return true;
+  }
+
+  /**
+   * Limits the work of each call to {@link #solve()}, which throws a
+   * <code>CancellationException</code> once it has performed <code>maxPivots</code> pivots or has
+   * run for <code>maxNanos</code> nanoseconds without reaching a verdict. The limits are kept by
+   * {@link #reset()}.
+   *
+   * @param maxPivots The maximum number of pivots, or zero for no limit.
+   * @param maxNanos The maximum time in nanoseconds, or zero for no limit.
+   */
+  public void setLimits(final long maxPivots, final long maxNanos) {
+    if (maxPivots < 0 || maxNanos < 0)
+      throw new RuntimeException("Invalid solve limits.");
+    pivotLimit = maxPivots;
+    timeLimit = maxNanos;
+  }
+
+  /** Returns <code>true</code> if the current call to solve() has used up its limits. */
+  private boolean limitReached() {
+    return (pivotLimit > 0 && numPivots >= pivotLimit)
+        || (timeLimit > 0 && System.nanoTime() - deadline >= 0);
+  }
+
+  /**
+   * Enables or disables interval checks, which detect many unsatisfiable problems long before the
+   * solving procedure runs out of suitable variables. Each row of the tableau expresses its basic
+   * variable as a combination of the nonbasic variables, so the bounds of the nonbasic variables
+   * bound the values the basic variable can take. If that range misses the bounds of the basic
+   * variable, no assignment satisfies the problem. The check runs before the first pivot and
+   * every <code>interval</code> pivots, and costs about as much as one pivot (a sparse tableau
+   * only visits its stored entries).
+   *
+   * <p>
+   * Interval checks are enabled by default, every {@link #DEFAULT_INTERVAL_CHECK} pivots, except
+   * on the solvers that keep the tableau on a device, which disable them in their constructors:
+   * every entry read by a check is a transfer from the device.
+   * </p>
+   *
+   * @param interval The number of pivots between two checks, or zero to disable the checks.
+   */
+  public void setIntervalCheck(final int interval) {
+    if (interval < 0)
+      throw new RuntimeException("Invalid interval check.");
+    intervalCheckInterval = interval;
+    pivotsSinceIntervalCheck = 0;
+  }
+
+  /**
+   * Returns the first row whose basic variable cannot reach its bounds, or <code>-1</code> if
+   * there is none. Large tableaux are checked in parallel.
+   */
+  private int infeasibleRow() {
+    final int row;
+    if ((long) numRows * numColumns < PARALLEL_INTERVAL_ENTRIES) {
+      int found = -1;
+      for (int i = 0; i < numRows && found < 0; i++)
+        if (isInfeasible(i, intervalRange))
+          found = i;
+      row = found;
+    } else {
+      row = IntStream.range(0, numRows).parallel().filter(i -> isInfeasible(i, new RowRange()))
+          .findFirst().orElse(-1);
+    }
+    if (row >= 0 && logger.isLoggable(Level.FINE))
+      logger.log(Level.FINE, "Interval check: row " + row + " is infeasible");
+    return row;
+  }
+
+  /**
+   * Returns <code>true</code> if the range of row <code>row</code> over the bounds of the nonbasic
+   * variables misses the bounds of its basic variable by more than the rounding errors of the
+   * tableau could explain. The range is computed in double precision, in <code>range</code>.
+   */
+  private boolean isInfeasible(final int row, final RowRange range) {
+    range.clear();
+    addRowRange(row, range);
+    final int var = rowToVar[row];
+    final float lower = bounds.getLowerBound(var);
+    final float upper = bounds.getUpperBound(var);
+    final double tolerance = EPSILON + INTERVAL_TOLERANCE * range.scale;
+    return (lower != NO_BOUND && range.hi < lower - tolerance)
+        || (upper != NO_BOUND && range.lo > upper + tolerance);
+  }
+
+  /**
+   * Adds the entries of row <code>row</code> to the range of the interval checks. Solvers that
+   * keep the tableau sparse add their stored entries instead of looking up every column.
+   */
+  void addRowRange(final int row, final RowRange range) {
+    for (int j = 0; j < numColumns; j++)
+      range.add(j, getTableauEntry(row, j));
+  }
+
+  /**
+   * The range of a row over the bounds of the nonbasic variables, and the magnitude of its terms,
+   * accumulated in double precision.
+   */
+  final class RowRange {
+    private double lo = 0.0;
+    private double hi = 0.0;
+    private double scale = 0.0;
+
+    void clear() {
+      lo = 0.0;
+      hi = 0.0;
+      scale = 0.0;
+    }
+
+    /** Adds the term of coefficient <code>c</code> in column <code>col</code>. */
+    void add(final int col, final float c) {
+      if (c == 0.0f)
+        return;
+      final int var = colToVar[col];
+      final float lower = bounds.getLowerBound(var);
+      final float upper = bounds.getUpperBound(var);
+      final double min = lower == NO_BOUND ? Double.NEGATIVE_INFINITY : lower;
+      final double max = upper == NO_BOUND ? Double.POSITIVE_INFINITY : upper;
+      if (c > 0.0f) {
+        lo += c * min;
+        hi += c * max;
+      } else {
+        lo += c * max;
+        hi += c * min;
+      }
+      if (lower != NO_BOUND)
+        scale += Math.abs((double) c * lower);
+      if (upper != NO_BOUND)
+        scale += Math.abs((double) c * upper);
+    }
+  }
+
+  /** Checks the residuals and rebuilds the tableau if they fail, returning whether it did. */
+  private boolean refactorIfDrifted() {
+    pivotsSinceResidualCheck = 0;
+    return drifted() && refactor();
+  }
+
+  /**
+   * Enables periodic residual checks. Every pivot adds rounding errors to the tableau, and after
+   * many pivots the entries can drift far enough from their exact values to cause wasted or
+   * oscillating pivots. With residual checks enabled, the solver keeps a copy of the constraints
+   * and, every <code>interval</code> pivots, evaluates each constraint in double precision at the
+   * current assignment. If the value of a slack variable differs from its constraint by more than
+   * <code>tolerance</code> (relative to the magnitude of the terms of the constraint), the tableau
+   * is rebuilt from the constraints for the current basis, in double precision.
+   *
+   * <p>
+   * Residual checks must be enabled before the first pivot, since the constraints are recovered
+   * from the initial tableau.
+   * </p>
+   *
+   * @param interval The number of pivots between two checks, or zero to disable the checks.
+   * @param tolerance The largest relative residual that is tolerated.
+   */
+  public void setResidualCheck(final int interval, final float tolerance) {
+    if (interval < 0 || tolerance < 0.0f)
+      throw new RuntimeException("Invalid residual check.");
+    residualInterval = interval;
+    residualTolerance = tolerance;
+    pivotsSinceResidualCheck = 0;
+    if (interval == 0 || original != null)
+      return;
+    for (int j = 0; j < numColumns; j++)
+      if (colToVar[j] != j)
+        throw new RuntimeException("Residual checks must be enabled before the first pivot.");
+    original = new float[maxNumRows * numColumns];
+    for (int i = 0; i < numRows; i++)
+      for (int j = 0; j < numColumns; j++)
+        original[i * numColumns + j] = getTableauEntry(i, j);
+  }
+
+  /** Returns the number of pivots performed by the current (or last) call to solve(). */
+  public long numPivots() {
+    return numPivots;
+  }
+
+  /** Returns the number of times the tableau has been rebuilt after a failed residual check. */
+  public long numRefactorizations() {
+    return numRefactorizations;
+  }
+
+  /**
+   * Records the coefficients of row <code>row</code> as an original constraint, if residual checks
+   * are enabled. The coefficients are taken from <code>coefficients</code>, starting at
+   * <code>offset</code>, rather than from the tableau, which may store them with less precision.
+   */
+  final void recordOriginal(final int row, final float[] coefficients, final int offset) {
+    if (original != null)
+      System.arraycopy(coefficients, offset, original, row * numColumns, numColumns);
+  }
+
+  /**
+   * Rebuilds the tableau for the current basis from the original constraints, as a failed residual
+   * check does, and returns whether it did. Nothing is done unless residual checks are enabled.
+   */
+  final boolean rebuildTableau() {
+    return original != null && refactor();
+  }
+
+  /**
+   * Returns <code>true</code> if the assignment of a slack variable differs from the value of its
+   * original constraint by more than the tolerance.
+   */
+  private boolean drifted() {
+    for (int i = 0; i < numRows; i++) {
+      double value = 0.0;
+      double scale = 0.0;
+      for (int j = 0, offset = i * numColumns; j < numColumns; j++) {
+        final double term = (double) original[offset + j] * bounds.getAssignment(j);
+        value += term;
+        scale += Math.abs(term);
+      }
+      final double residual = Math.abs(bounds.getAssignment(numColumns + i) - value);
+      if (!(residual <= residualTolerance * (1.0 + scale)))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Rebuilds the tableau for the current basis from the original constraints. The initial tableau
+   * is pivoted into the current basis in double precision, leaving each variable with the row of
+   * largest magnitude that is not yet taken by the basis, and the result is written back in the
+   * current order of the rows and columns.
+   *
+   * @return <code>false</code> if the current basis is singular, in which case the tableau is left
+   *         unchanged
+   */
+  private boolean refactor() {
+    final int n = numColumns;
+    final double[] t = new double[numRows * n];
+    for (int k = 0; k < t.length; k++)
+      t[k] = original[k];
+    final int[] rowVar = new int[numRows];
+    final int[] colVar = new int[n];
+    final int[] position = new int[numVars];
+    final boolean[] target = new boolean[numVars];
+    final boolean[] basic = new boolean[numVars];
+    for (int j = 0; j < n; j++) {
+      colVar[j] = j;
+      position[j] = j;
+    }
+    for (int i = 0; i < numRows; i++) {
+      rowVar[i] = n + i;
+      position[n + i] = i;
+      basic[n + i] = true;
+      target[rowToVar[i]] = true;
+    }
+
+    for (int i = 0; i < numRows; i++) {
+      final int var = rowToVar[i];
+      if (basic[var])
+        continue;
+      final int col = position[var];
+      int row = NONE_FOUND;
+      double largest = 0.0;
+      for (int r = 0; r < numRows; r++) {
+        final double coeff = Math.abs(t[r * n + col]);
+        if (!target[rowVar[r]] && coeff > largest) {
+          row = r;
+          largest = coeff;
+        }
+      }
+      if (row == NONE_FOUND) {
+        logger.log(Level.FINE, "Solver: the current basis is singular, not refactoring");
         return false;
-      pivot(brokenIdx, suitableIdx);
-      updateAssignment();
+      }
+      pivot(t, n, row, col);
+      final int leaving = rowVar[row];
+      rowVar[row] = var;
+      colVar[col] = leaving;
+      position[var] = row;
+      position[leaving] = col;
+      basic[var] = true;
+      basic[leaving] = false;
     }
+
+    final float[] dest = hostTableau();
+    for (int i = 0; i < numRows; i++) {
+      final int offset = position[rowToVar[i]] * n;
+      for (int j = 0; j < n; j++)
+        dest[i * n + j] = (float) t[offset + position[colToVar[j]]];
+    }
+    numRefactorizations++;
+    tableauReplaced();
+    updateAssignment();
     return true;
   }
 
+  /** Pivots a double-precision tableau with the same arithmetic as <code>CpuSolver</code>. */
+  private static void pivot(final double[] t, final int n, final int row, final int col) {
+    final int rows = t.length / n;
+    final double alpha = t[row * n + col];
+    for (int i = 0; i < rows; i++) {
+      if (i == row)
+        continue;
+      final double gamma = t[i * n + col];
+      if (gamma == 0.0)
+        continue;
+      for (int j = 0; j < n; j++)
+        if (j != col)
+          t[i * n + j] -= (t[row * n + j] * gamma) / alpha;
+      t[i * n + col] = gamma / alpha;
+    }
+    for (int j = 0; j < n; j++)
+      t[row * n + j] = -t[row * n + j] / alpha;
+    t[row * n + col] = 1.0 / alpha;
+  }
+
+  /**
+   * Returns the host tableau before it is overwritten as a whole with a tableau for the current
+   * basis. Implementations that only allocate the host tableau when they need it allocate it here.
+   */
+  protected float[] hostTableau() {
+    return tableau;
+  }
+
+  /**
+   * Called after the host tableau has been overwritten with a tableau for the current basis, so
+   * that implementations keeping the tableau elsewhere can pick it up.
+   */
+  protected void tableauReplaced() {
+    basisChanged();
+  }
+
+  /**
+   * Sets the cache of final bases. When a cache is set and the solver is still in its initial
+   * basis, {@link #solve()} first pivots into the cached basis of the same constraint matrix, if
+   * there is one, and stores its own final basis in the cache afterwards. The pivots into the
+   * cached basis are counted by {@link #numPivots()}.
+   *
+   * <p>
+   * The matrix is read from the tableau entry by entry, to build its key and to choose the pivots,
+   * and every such read is a transfer on a device. Only solvers that keep the tableau on the host
+   * accept a cache.
+   * </p>
+   *
+   * @param cache The cache, or <code>null</code> to disable warm starts.
+   * @throws RuntimeException If the solver keeps its tableau on a device.
+   */
+  public void setBasisCache(final BasisCache cache) {
+    if (cache != null && bounds instanceof DeviceBounds)
+      throw new RuntimeException("Warm starts need a solver with a host tableau.");
+    basisCache = cache;
+  }
+
+  /**
+   * Pivots into the cached basis of the current matrix, if any, and gives the nonbasic variables
+   * their cached assignment, moved into their current bounds.
+   *
+   * @return the key of the matrix, or <code>null</code> if the solver is not in its initial basis
+   */
+  private BasisCache.Key warmStart() {
+    for (int j = 0; j < numColumns; j++)
+      if (colToVar[j] != j)
+        return null;
+    final BasisCache.Key key = new BasisCache.Key(this);
+    final BasisCache.Basis basis = basisCache.get(key);
+    if (basis == null || basis.rowToVar.length != numRows)
+      return key;
+
+    final boolean[] target = new boolean[numVars];
+    for (final int var : basis.rowToVar)
+      target[var] = true;
+    for (final int var : basis.rowToVar) {
+      if (!isNonbasicVar(var))
+        continue;
+      // Leave with the largest entry among the rows whose variable is not in the target basis
+      final int col = varToTableau[var];
+      int best = NONE_FOUND;
+      float largest = EPSILON;
+      for (int i = 0; i < numRows; i++) {
+        final float coeff = Math.abs(getTableauEntry(i, col));
+        if (!target[rowToVar[i]] && coeff > largest) {
+          best = i;
+          largest = coeff;
+        }
+      }
+      if (best != NONE_FOUND) {
+        pivot(rowToVar[best], var);
+        numPivots++;
+      }
+    }
+    for (int j = 0; j < numColumns; j++) {
+      final int var = colToVar[j];
+      bounds.setAssignment(var, basis.assignments[var]);
+      moveIntoBounds(var, false);
+    }
+    updateAssignment();
+    return key;
+  }
+
+  /**
+   * Restores feasibility after the bounds of a solved problem have been tightened, reusing the
+   * current tableau and basis. Nonbasic variables that are now out of bounds are first moved to
+   * their nearest bound. Then, as in the dual simplex method, each step picks the basic variable
+   * with the largest bounds violation to leave the basis, and the entering column by a ratio test:
+   * among the columns that can move the leaving variable towards its bounds, the one requiring the
+   * smallest change <code>delta / |coeff|</code> of its own variable, preferring columns whose
+   * variable stays within its bounds after that change.
+   *
+   * <p>
+   * The repair pivots are counted by {@link #numPivots()} and in the statistics, recorded by
+   * {@link #recordTrace(Path)}, and followed by the residual and interval checks, as those of
+   * {@link #solve()} are. Choosing the largest violation usually needs far fewer pivots than the
+   * smallest-index rule of <code>solve()</code> when several variables are broken at once, but it
+   * does not guarantee termination, so the repair gives up after {@link #maxRepairPivots()}
+   * pivots. The solver is then left in a valid basis, from which <code>solve()</code> can continue.
+   * </p>
+   *
+   * @return <code>true</code> if a solution is found, or <code>false</code> if the problem is
+   *         unsatisfiable under the current bounds
+   * @throws CancellationException If {@link #cancel()} is called while solving, if the limits set
+   *         by {@link #setLimits(long, long)} are reached, or if the repair needs more than
+   *         {@link #maxRepairPivots()} pivots.
+   */
+  public boolean resolve() {
+    return run(true);
+  }
+
+  /** The repair procedure of {@link #resolve()}. */
+  private boolean repair() {
+    boolean moved = false;
+    for (int j = 0; j < numColumns; j++)
+      moved |= moveIntoBounds(colToVar[j], false);
+    if (moved)
+      updateAssignment();
+    if (recorder != null)
+      recorder.begin(this);
+
+    final int limit = maxRepairPivots();
+    boolean sat = intervalCheckInterval == 0 || infeasibleRow() < 0;
+    pivotsSinceIntervalCheck = 0;
+    while (sat) {
+      checkStopped();
+      final int row = mostInfeasibleRow();
+      if (row < 0) {
+        // As in search(), the verdict must hold for a tableau that has passed a residual check
+        if (residualInterval > 0 && pivotsSinceResidualCheck > 0 && refactorIfDrifted())
+          continue;
+        return true;
+      }
+      if (numPivots >= limit)
+        throw new CancellationException("The repair reached its limit of " + limit + " pivots.");
+      final int brokenIdx = rowToVar[row];
+      final int suitableIdx = ratioTest(row);
+      if (suitableIdx < 0)
+        return false;
+      final float a = bounds.getAssignment(brokenIdx);
+      final float lower = bounds.getLowerBound(brokenIdx);
+      bounds.setAssignment(brokenIdx,
+          lower != NO_BOUND && a < lower ? lower : bounds.getUpperBound(brokenIdx));
+      sat = step(brokenIdx, suitableIdx);
+    }
+    return false;
+  }
+
+  /** Returns the number of pivots after which {@link #resolve()} gives up. */
+  protected int maxRepairPivots() {
+    return numVars;
+  }
+
+  /**
+   * Returns the amount by which the assignment of variable <code>idx</code> violates its bounds, or
+   * zero if it is within <code>EPSILON</code> of them.
+   */
+  private float violation(final int idx) {
+    final float a = bounds.getAssignment(idx);
+    final float lower = bounds.getLowerBound(idx);
+    final float upper = bounds.getUpperBound(idx);
+    if (lower != NO_BOUND && a < lower - EPSILON)
+      return lower - a;
+    if (upper != NO_BOUND && a > upper + EPSILON)
+      return a - upper;
+    return 0.0f;
+  }
+
+  /** Returns the row whose basic variable has the largest violation, or NONE_FOUND. */
+  private int mostInfeasibleRow() {
+    int best = NONE_FOUND;
+    float worst = 0.0f;
+    for (int i = 0; i < numRows; i++) {
+      final float v = violation(rowToVar[i]);
+      if (v > worst) {
+        worst = v;
+        best = i;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Returns the variable of the entering column for a leaving variable in row <code>row</code>, or
+   * NONE_FOUND if no nonbasic variable can move it towards its bounds (in which case the row proves
+   * that the problem is unsatisfiable).
+   */
+  private int ratioTest(final int row) {
+    final int brokenIdx = rowToVar[row];
+    final boolean increase = bounds.getAssignment(brokenIdx) < bounds.getLowerBound(brokenIdx)
+        && bounds.getLowerBound(brokenIdx) != NO_BOUND;
+    final float delta = violation(brokenIdx);
+    int best = NONE_FOUND;
+    float bestRatio = Float.MAX_VALUE;
+    boolean bestFits = false;
+    for (int j = 0; j < numColumns; j++) {
+      final float coeff = getTableauEntry(row, j);
+      if (coeff == 0.0f)
+        continue;
+      // Direction in which the nonbasic variable has to move
+      final boolean up = increase == coeff > 0;
+      final int idx = colToVar[j];
+      final float a = bounds.getAssignment(idx);
+      final float lower = bounds.getLowerBound(idx);
+      final float upper = bounds.getUpperBound(idx);
+      final float room;
+      if (up)
+        room = upper == NO_BOUND ? Float.MAX_VALUE : upper - a;
+      else
+        room = lower == NO_BOUND ? Float.MAX_VALUE : a - lower;
+      if (room <= 0.0f)
+        continue;
+      final float ratio = delta / Math.abs(coeff);
+      final boolean fits = ratio <= room;
+      if ((fits && !bestFits) || (fits == bestFits
+          && (ratio < bestRatio || (ratio == bestRatio && idx < best)))) {
+        best = idx;
+        bestRatio = ratio;
+        bestFits = fits;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Requests that a running (or the next) call to {@link #solve()} stops at the start of its next
+   * step by throwing a <code>CancellationException</code>. This method may be called from any
+   * thread.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /** Returns <code>true</code> if {@link #cancel()} has been called since the last reset. */
+  final boolean isCancelled() {
+    return cancelled;
+  }
+
   @Override
   public void setBounds(int idx, float lower, float upper) {
     bounds.setBounds(idx, lower, upper);
   }
 
+  /**
+   * Opens a new backtracking level. Bound changes made by {@link #assertBound(int, float, float)}
+   * after this call are undone by the matching {@link #pop()}.
+   */
+  public void push() {
+    if (numLevels == levels.length)
+      levels = Arrays.copyOf(levels, 2 * numLevels);
+    levels[numLevels++] = trailSize;
+  }
+
+  /**
+   * Closes the current backtracking level and restores the bounds that were in place at the
+   * matching {@link #push()}. The tableau, the basis and the assignment are kept, so the next call
+   * to {@link #solve()} continues from the current basis. Because the restored bounds are at least
+   * as loose as the ones being retracted, a feasible assignment stays feasible.
+   *
+   * @throws RuntimeException If there is no matching <code>push()</code>.
+   */
+  public void pop() {
+    if (numLevels == 0)
+      throw new RuntimeException("No matching push.");
+    final int mark = levels[--numLevels];
+    while (trailSize > mark) {
+      trailSize--;
+      bounds.setBounds(trailIdx[trailSize], trailLower[trailSize], trailUpper[trailSize]);
+    }
+    if (conflict >= trailSize)
+      conflict = NONE_FOUND;
+  }
+
+  /**
+   * Returns the number of backtracking levels that are currently open.
+   */
+  public int numLevels() {
+    return numLevels;
+  }
+
+  /**
+   * Tightens the bounds of variable <code>idx</code> to the intersection of its current bounds and
+   * <code>[lower, upper]</code>, where either value may be <code>NO_BOUND</code>. The previous
+   * bounds are recorded so that they can be restored by {@link #pop()}.
+   *
+   * <p>
+   * If the variable is nonbasic and its assignment falls outside of the new bounds, it is moved to
+   * the nearest bound and the assignment of the basic variables is updated. The next call to
+   * {@link #solve()} then only needs to repair the basic variables that this breaks.
+   * </p>
+   *
+   * @return <code>false</code> if the bounds of the variable are now empty, in which case the
+   *         problem is unsatisfiable, and {@link #solve()} and {@link #resolve()} return
+   *         <code>false</code> without pivoting, until the <code>pop()</code> of the current
+   *         level.
+   */
+  public boolean assertBound(final int idx, final float lower, final float upper) {
+    final float oldLower = bounds.getLowerBound(idx);
+    final float oldUpper = bounds.getUpperBound(idx);
+    if (trailSize == trailIdx.length) {
+      trailIdx = Arrays.copyOf(trailIdx, 2 * trailSize);
+      trailLower = Arrays.copyOf(trailLower, 2 * trailSize);
+      trailUpper = Arrays.copyOf(trailUpper, 2 * trailSize);
+    }
+    trailIdx[trailSize] = idx;
+    trailLower[trailSize] = oldLower;
+    trailUpper[trailSize] = oldUpper;
+    trailSize++;
+
+    final float newLower =
+        oldLower == NO_BOUND || (lower != NO_BOUND && lower > oldLower) ? lower : oldLower;
+    final float newUpper =
+        oldUpper == NO_BOUND || (upper != NO_BOUND && upper < oldUpper) ? upper : oldUpper;
+    bounds.setBounds(idx, newLower, newUpper);
+    if (newLower != NO_BOUND && newUpper != NO_BOUND && newLower > newUpper) {
+      if (conflict == NONE_FOUND)
+        conflict = trailSize - 1;
+      return false;
+    }
+    if (isNonbasicVar(idx))
+      moveIntoBounds(idx);
+    return true;
+  }
+
+  /** Returns <code>true</code> if variable <code>idx</code> currently labels a column. */
+  protected final boolean isNonbasicVar(final int idx) {
+    final int col = varToTableau[idx];
+    return col < numColumns && colToVar[col] == idx;
+  }
+
+  /**
+   * Moves the assignment of nonbasic variable <code>idx</code> to its nearest bound, if it is out
+   * of bounds, and updates the assignment of the basic variables accordingly.
+   *
+   * @return <code>true</code> if the assignment was changed.
+   */
+  protected boolean moveIntoBounds(final int idx) {
+    return moveIntoBounds(idx, true);
+  }
+
+  /**
+   * Moves the assignment of nonbasic variable <code>idx</code> to its nearest bound, if it is out
+   * of bounds. The basic variables are only updated if <code>update</code> is set.
+   */
+  private boolean moveIntoBounds(final int idx, final boolean update) {
+    final float a = bounds.getAssignment(idx);
+    final float lower = bounds.getLowerBound(idx);
+    final float upper = bounds.getUpperBound(idx);
+    final float target;
+    if (lower != NO_BOUND && a < lower)
+      target = lower;
+    else if (upper != NO_BOUND && a > upper)
+      target = upper;
+    else
+      return false;
+    bounds.setAssignment(idx, target);
+    if (update)
+      updateAssignment();
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>
+   * The coefficients refer to the original variables <code>x0 .. x(n-1)</code>. If some of them
+   * have become basic through earlier pivots, their rows are substituted so that the new row is
+   * expressed in terms of the current nonbasic variables, and the assignment of its slack variable
+   * is computed from the current assignment. The next call to {@link #solve()} therefore continues
+   * from the current basis instead of starting over.
+   * </p>
+   */
   @Override
   public void addConstraint(List<Float> cs) {
     if (cs.size() != numColumns)
       throw new RuntimeException("Invalid constraint size.");
     else if (numRows >= maxNumRows)
       throw new RuntimeException("Unable to add more constraints.");
-    final int offset = numRows * numColumns;
+    final float[] values = new float[numColumns];
     for (int i = 0; i < cs.size(); i++) {
-      tableau[offset + i] = cs.get(i);
+      final float coeff = cs.get(i);
+      if (coeff == 0.0f)
+        continue;
+      if (isNonbasicVar(i)) {
+        values[varToTableau[i]] += coeff;
+      } else {
+        final int row = varToTableau[i];
+        for (int j = 0; j < numColumns; j++)
+          values[j] += coeff * getTableauEntry(row, j);
+      }
     }
+    float assignment = 0.0f;
+    for (int j = 0; j < numColumns; j++)
+      assignment += bounds.getAssignment(colToVar[j]) * values[j];
+    bounds.setAssignment(rowToVar[numRows], assignment);
+    if (original != null)
+      for (int j = 0; j < numColumns; j++)
+        original[numRows * numColumns + j] = cs.get(j);
+    setRow(numRows, values, 0);
     numRows++;
+    rowAdded(numRows - 1);
   }
 
+  /**
+   * Stores row <code>row</code> of the tableau, whose coefficients are read from
+   * <code>values</code> starting at <code>offset</code>. Rows are added and restored through this
+   * method, so that implementations that store the tableau elsewhere need not keep a host tableau.
+   */
+  protected void setRow(final int row, final float[] values, final int offset) {
+    System.arraycopy(values, offset, tableau, row * numColumns, numColumns);
+  }
+
+  /**
+   * Copies row <code>row</code> of the current tableau into <code>dest</code>, starting at
+   * <code>offset</code>. Checkpoints read the tableau through this method, so implementations that
+   * keep the tableau on a device should read it back in bulk rather than entry by entry.
+   */
+  protected void getRow(final int row, final float[] dest, final int offset) {
+    for (int j = 0; j < numColumns; j++)
+      dest[offset + j] = getTableauEntry(row, j);
+  }
+
+  /**
+   * Called after row <code>row</code> has been stored by {@link #setRow(int, float[], int)} when a
+   * constraint is added, so that implementations keeping their own copy of the tableau can pick it
+   * up.
+   */
+  protected void rowAdded(final int row) {}
+
   @Override
   public List<Float> solution() {
     final ArrayList<Float> s = new ArrayList<>();
@@ -101,6 +1035,32 @@ public abstract class AbstractSolver implements Solver {
     return s;
   }
 
+  /**
+   * {@inheritDoc} The assignments are copied in bulk, so a device solver reads them back in one
+   * transfer and nothing is allocated.
+   */
+  @Override
+  public float[] solutionInto(final float[] dest) {
+    if (dest.length < numColumns)
+      throw new RuntimeException("The solution array is too small.");
+    bounds.copyAssignments(dest, numColumns);
+    return dest;
+  }
+
+  /**
+   * Returns a read-only view of the solution, with one value per (original) variable. On the CPU
+   * the view is backed by the assignments themselves: nothing is copied, and the view follows the
+   * assignments as the solver runs. The same buffer is returned by every call, with its position
+   * and limit reset, so it must not be shared between threads.
+   */
+  public FloatBuffer solutionView() {
+    if (solutionView == null)
+      solutionView = FloatBuffer.wrap(bounds.getAssignments(), 0, numColumns).slice()
+          .asReadOnlyBuffer();
+    solutionView.clear();
+    return solutionView;
+  }
+
   /**
    * Returns the index of the smallest basic variable whose current assignment violates its bounds
    * (a "broken" variable). The word "smallest" refers to the broken variable that appears earliest
@@ -179,7 +1139,20 @@ public abstract class AbstractSolver implements Solver {
 
   protected abstract float getTableauEntry(int row, int col);
 
-  protected abstract void preSolve();
+  /**
+   * Prepares the solver for the solving procedure once its constraints and bounds are set, such as
+   * by copying the tableau to a device. Device solvers must be prepared before {@link #solve()},
+   * as <code>BatchSolver</code> and <code>SolverProfiler</code> do.
+   */
+  public abstract void preSolve();
+
+  /**
+   * Called after the basis (the variable flags and the <code>colToVar</code>,
+   * <code>rowToVar</code> and <code>varToTableau</code> mappings) has been written directly, for
+   * instance when restoring a checkpoint, so that implementations can rebuild any state derived
+   * from it.
+   */
+  protected void basisChanged() {}
 
   public void printBounds() {
     for (int i = 0; i < numVars; i++)
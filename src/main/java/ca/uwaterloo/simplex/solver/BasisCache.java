@@ -0,0 +1,143 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded cache of final bases, keyed by the constraint matrix that produced them. When a
+ * solver with a basis cache is asked to solve a matrix that was solved before (typically with
+ * different bounds), it first pivots into the cached basis, gives the nonbasic variables their
+ * final assignment (within their current bounds), which is often close to a feasible one, and
+ * then runs the regular solving procedure from there.
+ *
+ * <p>
+ * When the cache is full, the least recently used basis is evicted. A cache may be shared by any
+ * number of solvers on any number of threads.
+ * </p>
+ */
+public final class BasisCache {
+
+  /**
+   * The constraint matrix of a problem. The hash is computed once, but keys are compared in full.
+   */
+  static final class Key {
+    private final int numRows;
+    private final int numColumns;
+    private final float[] coefficients;
+    private final int hash;
+
+    /** Reads the matrix from the tableau of a solver that is in its initial basis. */
+    Key(final AbstractSolver solver) {
+      numRows = solver.numRows;
+      numColumns = solver.numColumns;
+      coefficients = new float[numRows * numColumns];
+      for (int i = 0, k = 0; i < numRows; i++) {
+        for (int j = 0; j < numColumns; j++, k++) {
+          final float coeff = solver.getTableauEntry(i, j);
+          coefficients[k] = coeff == 0.0f ? 0.0f : coeff;
+        }
+      }
+      hash = 31 * (31 * numRows + numColumns) + Arrays.hashCode(coefficients);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof Key))
+        return false;
+      final Key other = (Key) obj;
+      return hash == other.hash && numRows == other.numRows && numColumns == other.numColumns
+          && Arrays.equals(coefficients, other.coefficients);
+    }
+  }
+
+  /** A final basis: the basic variable of each row, and the assignment of every variable. */
+  static final class Basis {
+    final int[] rowToVar;
+    final float[] assignments;
+
+    Basis(final int[] rowToVar, final float[] assignments) {
+      this.rowToVar = rowToVar;
+      this.assignments = assignments;
+    }
+  }
+
+  private final int capacity;
+  private final LinkedHashMap<Key, Basis> bases;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * @param capacity The maximum number of bases to keep.
+   */
+  public BasisCache(final int capacity) {
+    if (capacity < 1)
+      throw new RuntimeException("Invalid cache capacity.");
+    this.capacity = capacity;
+    bases = new LinkedHashMap<Key, Basis>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Key, Basis> eldest) {
+        return size() > BasisCache.this.capacity;
+      }
+    };
+  }
+
+  /** Returns the cached basis of a matrix, or <code>null</code> if there is none. */
+  Basis get(final Key key) {
+    final Basis basis;
+    synchronized (bases) {
+      basis = bases.get(key);
+    }
+    if (basis == null)
+      misses.increment();
+    else
+      hits.increment();
+    return basis;
+  }
+
+  void put(final Key key, final Basis basis) {
+    synchronized (bases) {
+      bases.put(key, basis);
+    }
+  }
+
+  /** Removes every basis. The statistics are kept. */
+  public void clear() {
+    synchronized (bases) {
+      bases.clear();
+    }
+  }
+
+  /** Returns the number of cached bases. */
+  public int size() {
+    synchronized (bases) {
+      return bases.size();
+    }
+  }
+
+  /** Returns the number of lookups that found a basis. */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /** Returns the number of lookups that did not find a basis. */
+  public long misses() {
+    return misses.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "BasisCache [size=" + size() + ", hits=" + hits() + ", misses=" + misses() + "]";
+  }
+
+}
@@ -0,0 +1,241 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Solves many independent problems on a bounded pool of threads.
+ *
+ * <p>
+ * Each worker thread keeps a few solver instances (<code>CpuSolver</code>s unless another
+ * factory is given), one per problem shape, and
+ * resets them between problems instead of creating a new solver every time, so that the only
+ * allocation per problem is its result. The solvers of another factory are kept for every shape
+ * that a worker meets, since device memory is not returned when a solver is dropped. At most <code>maxInFlight</code> problems are taken from
+ * the input before their results have been delivered, which bounds the memory used when the input
+ * is produced lazily (for instance, read from disk).
+ * </p>
+ */
+public final class BatchSolver implements AutoCloseable {
+
+  /** The number of problem shapes for which each worker keeps a <code>CpuSolver</code>. */
+  private final static int SOLVERS_PER_WORKER = 4;
+
+  private final ExecutorService executor;
+  private final int maxInFlight;
+  private final int maxSolvers;
+  private final BiFunction<Integer, Integer, AbstractSolver> factory;
+  private final ThreadLocal<Map<Long, AbstractSolver>> solvers =
+      ThreadLocal.withInitial(() -> new LinkedHashMap<Long, AbstractSolver>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, AbstractSolver> eldest) {
+          return size() > maxSolvers;
+        }
+      });
+
+  /**
+   * @param numThreads The number of worker threads.
+   * @param maxInFlight The maximum number of problems that are being solved, or whose results are
+   *        waiting to be delivered, at any time.
+   */
+  public BatchSolver(final int numThreads, final int maxInFlight) {
+    this(numThreads, maxInFlight, CpuSolver::new, SOLVERS_PER_WORKER);
+  }
+
+  /**
+   * @param numThreads The number of worker threads.
+   * @param maxInFlight The maximum number of problems that are being solved, or whose results are
+   *        waiting to be delivered, at any time.
+   * @param factory Creates the solvers of the workers from the number of constraints and
+   *        variables of a problem.
+   */
+  public BatchSolver(final int numThreads, final int maxInFlight,
+      final BiFunction<Integer, Integer, AbstractSolver> factory) {
+    this(numThreads, maxInFlight, factory, Integer.MAX_VALUE);
+  }
+
+  private BatchSolver(final int numThreads, final int maxInFlight,
+      final BiFunction<Integer, Integer, AbstractSolver> factory, final int maxSolvers) {
+    if (numThreads < 1 || maxInFlight < 1)
+      throw new RuntimeException("Invalid batch size.");
+    this.maxInFlight = maxInFlight;
+    this.maxSolvers = maxSolvers;
+    this.factory = factory;
+    executor = Executors.newFixedThreadPool(numThreads, r -> {
+      final Thread t = new Thread(r, "BatchSolver");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Returns a batch solver with one worker per available core.
+   */
+  public static BatchSolver create() {
+    final int cores = Runtime.getRuntime().availableProcessors();
+    return new BatchSolver(cores, 4 * cores);
+  }
+
+  /**
+   * Solves every problem of the stream. See {@link #solve(Iterator, Consumer, boolean)}.
+   */
+  public void solve(final Stream<Problem> problems, final Consumer<Result> sink,
+      final boolean ordered) {
+    solve(problems.iterator(), sink, ordered);
+  }
+
+  /**
+   * Solves every problem returned by the iterator and passes the results to the sink. The sink is
+   * never called concurrently, and the index of each result is the position of its problem in the
+   * input. This method returns once every result has been delivered.
+   *
+   * <p>
+   * If a problem cannot be solved (or the sink throws), no further problems are taken from the
+   * iterator, no further results are delivered, and the first exception is rethrown once the
+   * problems in flight have finished.
+   * </p>
+   *
+   * @param problems The problems; the iterator is only used by the calling thread.
+   * @param sink Receives the results.
+   * @param ordered If <code>true</code>, results are delivered in the order of the input;
+   *        otherwise, they are delivered as they complete.
+   * @throws CancellationException If the calling thread is interrupted.
+   */
+  public void solve(final Iterator<Problem> problems, final Consumer<Result> sink,
+      final boolean ordered) {
+    final Semaphore permits = new Semaphore(maxInFlight);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final Emitter emitter = new Emitter(sink, permits, failure);
+    long index = 0;
+    try {
+      while (failure.get() == null && problems.hasNext()) {
+        final Problem problem = problems.next();
+        permits.acquire();
+        final long i = index++;
+        executor.execute(() -> {
+          Result result;
+          try {
+            result = solve(problem, i);
+          } catch (final Throwable t) {
+            failure.compareAndSet(null, t);
+            result = new Result(i, false, null);
+          }
+          if (ordered)
+            emitter.emitOrdered(result);
+          else
+            emitter.emit(result);
+        });
+      }
+      // Wait for the problems in flight
+      permits.acquire(maxInFlight);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException();
+    }
+    final Throwable t = failure.get();
+    if (t instanceof RuntimeException)
+      throw (RuntimeException) t;
+    else if (t instanceof Error)
+      throw (Error) t;
+    else if (t != null)
+      throw new RuntimeException("Unable to solve the batch.", t);
+  }
+
+  /**
+   * Solves a problem on the calling worker, reusing the worker's solver for problems of this
+   * shape. The result is unknown if the solver reaches its limits (see
+   * {@link AbstractSolver#setLimits(long, long)}).
+   */
+  private Result solve(final Problem problem, final long index) {
+    final Map<Long, AbstractSolver> cache = solvers.get();
+    final long shape = ((long) problem.numRows() << 32) | problem.numColumns();
+    AbstractSolver solver = cache.get(shape);
+    if (solver == null) {
+      solver = factory.apply(problem.numRows(), problem.numColumns());
+      cache.put(shape, solver);
+    } else {
+      solver.reset();
+    }
+    problem.loadInto(solver);
+    solver.preSolve();
+    final boolean sat;
+    try {
+      sat = solver.solve();
+    } catch (final CancellationException e) {
+      return Result.unknown(index);
+    }
+    if (!sat)
+      return new Result(index, false, null);
+    return new Result(index, true, solver.solutionInto(new float[problem.numColumns()]));
+  }
+
+  /**
+   * Stops the worker threads. Batches that are being solved are completed first.
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+
+  /**
+   * Delivers results to the sink, one at a time, and releases the permit of each result once it
+   * has been delivered (or dropped after a failure).
+   */
+  private final class Emitter {
+    private final Consumer<Result> sink;
+    private final Semaphore permits;
+    private final AtomicReference<Throwable> failure;
+
+    /**
+     * Results that are waiting for an earlier one, at position <code>index % maxInFlight</code>.
+     * Since a permit is only released when its result is delivered, the results waiting at any
+     * time have distinct positions.
+     */
+    private final Result[] pending = new Result[maxInFlight];
+    private long next = 0;
+
+    Emitter(final Consumer<Result> sink, final Semaphore permits,
+        final AtomicReference<Throwable> failure) {
+      this.sink = sink;
+      this.permits = permits;
+      this.failure = failure;
+    }
+
+    synchronized void emit(final Result result) {
+      deliver(result);
+    }
+
+    synchronized void emitOrdered(final Result result) {
+      pending[(int) (result.index() % maxInFlight)] = result;
+      Result head;
+      while ((head = pending[(int) (next % maxInFlight)]) != null && head.index() == next) {
+        pending[(int) (next % maxInFlight)] = null;
+        next++;
+        deliver(head);
+      }
+    }
+
+    private void deliver(final Result result) {
+      try {
+        if (failure.get() == null)
+          sink.accept(result);
+      } catch (final Throwable t) {
+        failure.compareAndSet(null, t);
+      } finally {
+        permits.release();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,331 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ca.uwaterloo.shediac.KernelMgr;
+import ca.uwaterloo.shediac.KernelMgr.DeviceType;
+import ca.uwaterloo.shediac.memory.Memory;
+
+/**
+ * Solves many small problems at once on a device. A {@link DeviceSolver} spreads a single tableau
+ * over the device and returns to the host after every step, which leaves most of the device idle
+ * when the tableau is small. Instead, this solver packs the tableaux of up to
+ * <code>maxProblems</code> problems into one buffer and gives each problem a workgroup of its own.
+ * One launch of each of the batched kernels (<code>batch_check_bounds</code>,
+ * <code>batch_find_suitable</code>, <code>batch_pivot</code> and
+ * <code>batch_update_assignment</code>) then performs one step of every problem.
+ *
+ * <p>
+ * Each problem has a status flag on the device, set when its workgroup finds it satisfiable or
+ * unsatisfiable, after which its workgroup returns at once. The host enqueues the steps
+ * back-to-back and only reads the flags every {@link #setPollInterval(int) poll interval} steps.
+ * </p>
+ *
+ * <p>
+ * All problems share the dimensions given to the constructor. A smaller problem is padded with
+ * zero coefficients, and the padding variables have no upper bound, so they do not change the
+ * result.
+ * </p>
+ */
+public class BatchedDeviceSolver {
+
+  /** The status of a problem, as set by the kernels. */
+  private final static int RUNNING = 0;
+  private final static int SAT = 1;
+  private final static int UNSAT = 2;
+
+  /** The largest workgroup, which must match BATCH_MAX_WORKGROUP in the kernels. */
+  private final static int MAX_WORKGROUP_SIZE = 64;
+
+  /** The default number of steps enqueued between two reads of the status flags. */
+  public final static int DEFAULT_POLL_INTERVAL = 16;
+
+  private final static Logger logger = Logger.getLogger("Solver");
+
+  private final String cuFilename = "kernels/generalSimplex.cu";
+  private final String clFilename = "kernels/generalSimplex.cl";
+
+  private final String[] kernelNames = new String[] {"batch_check_bounds", "batch_find_suitable",
+      "batch_pivot", "batch_update_assignment"};
+
+  /** Positions of the kernels in {@link #kernelNames} and {@link #kernels}. */
+  private final static int CHECK_BOUNDS = 0;
+  private final static int FIND_SUITABLE = 1;
+  private final static int PIVOT = 2;
+  private final static int UPDATE_ASSIGNMENT = 3;
+
+  /** The kernel ids, indexed by the constants above. */
+  private final int[] kernels = new int[kernelNames.length];
+
+  private final KernelMgr mgr;
+  private final int groupId;
+  private final int maxProblems;
+  private final int numRows;
+  private final int numColumns;
+  private final int numVars;
+
+  /*
+   * The mappings and flags of every problem, packed like the tableaux. The kernels keep the
+   * device copies up to date, and the host copies are only written when problems are added.
+   */
+  private final int[] colToVar;
+  private final int[] rowToVar;
+  private final int[] varToTableau;
+  private final int[] status;
+  private final int[] broken;
+  private final int[] suitable;
+  private final int[] pivots;
+
+  /** The bits of the assignments, read back once by {@link #solve(long)}. */
+  private final int[] assigns;
+
+  /**
+   * The bits of the padded tableaux and bounds, staged on the host by {@link #add(Problem)} and
+   * copied to the device in one block by {@link #solve(long)}.
+   */
+  private final int[] tableau;
+  private final int[] lower;
+  private final int[] upper;
+
+  private final Memory memTableau;
+  private final Memory memLower;
+  private final Memory memUpper;
+  private final Memory memAssigns;
+  private final Memory memColToVar;
+  private final Memory memRowToVar;
+  private final Memory memVarToTableau;
+  private final Memory memStatus;
+  private final Memory memBroken;
+  private final Memory memSuitable;
+  private final Memory memPivots;
+
+  /** The number of original variables of each problem, before padding. */
+  private final int[] problemColumns;
+
+  private final long[] localGroup;
+  private int numProblems = 0;
+  private int pollInterval = DEFAULT_POLL_INTERVAL;
+
+  /**
+   * @param maxProblems The largest number of problems solved at once.
+   * @param numRows The largest number of constraints of a problem.
+   * @param numColumns The largest number of (original) variables of a problem.
+   * @param type The type of device.
+   * @param platformId The platform of the device.
+   * @param deviceId The device.
+   * @param enableExceptions Whether errors on the device throw exceptions.
+   */
+  public BatchedDeviceSolver(final int maxProblems, final int numRows, final int numColumns,
+      final DeviceType type, final int platformId, final int deviceId,
+      final boolean enableExceptions) {
+    if (maxProblems < 1 || numRows < 1 || numColumns < 1)
+      throw new RuntimeException("Invalid batch size.");
+    this.maxProblems = maxProblems;
+    this.numRows = numRows;
+    this.numColumns = numColumns;
+    this.numVars = numRows + numColumns;
+
+    mgr = new KernelMgr();
+    groupId = mgr.createKernelGroup(type, platformId, deviceId, enableExceptions);
+    final String filename = type == DeviceType.CUDA ? cuFilename : clFilename;
+    for (int i = 0; i < kernelNames.length; i++)
+      kernels[i] = mgr.addKernel(groupId, filename, kernelNames[i]);
+
+    // The reductions in the kernels need a power of two
+    int workgroupSize = 1;
+    final long maxWorkgroupSize = mgr.getDevice(groupId).maxWorkGroupSize();
+    while (workgroupSize * 2 <= Math.min(MAX_WORKGROUP_SIZE, maxWorkgroupSize))
+      workgroupSize *= 2;
+    localGroup = new long[] {workgroupSize, 1, 1};
+
+    colToVar = new int[maxProblems * numColumns];
+    rowToVar = new int[maxProblems * numRows];
+    varToTableau = new int[maxProblems * numVars];
+    status = new int[maxProblems];
+    broken = new int[maxProblems];
+    suitable = new int[maxProblems];
+    pivots = new int[maxProblems];
+    assigns = new int[maxProblems * numVars];
+    tableau = new int[maxProblems * numRows * numColumns];
+    lower = new int[maxProblems * numVars];
+    upper = new int[maxProblems * numVars];
+    problemColumns = new int[maxProblems];
+
+    // Allocate device memory
+    memTableau = mgr.allocateDeviceFromHost(groupId, tableau);
+    memLower = mgr.allocateDeviceFromHost(groupId, lower);
+    memUpper = mgr.allocateDeviceFromHost(groupId, upper);
+    memAssigns = mgr.allocateDeviceFromHost(groupId, assigns);
+    memColToVar = mgr.allocateDeviceFromHost(groupId, colToVar);
+    memRowToVar = mgr.allocateDeviceFromHost(groupId, rowToVar);
+    memVarToTableau = mgr.allocateDeviceFromHost(groupId, varToTableau);
+    memStatus = mgr.allocateDeviceFromHost(groupId, status);
+    memBroken = mgr.allocateDeviceFromHost(groupId, broken);
+    memSuitable = mgr.allocateDeviceFromHost(groupId, suitable);
+    memPivots = mgr.allocateDeviceFromHost(groupId, pivots);
+
+    // Every argument is fixed, so launching a step only sets the number of workgroups
+    addArgs(kernels[CHECK_BOUNDS], memLower, memUpper, memAssigns, memRowToVar, memStatus,
+        memBroken);
+    addArgs(kernels[FIND_SUITABLE], memTableau, memLower, memUpper, memAssigns, memVarToTableau,
+        memColToVar, memStatus, memBroken, memSuitable);
+    addArgs(kernels[PIVOT], memTableau, memVarToTableau, memColToVar, memRowToVar, memStatus,
+        memBroken, memSuitable, memPivots);
+    addArgs(kernels[UPDATE_ASSIGNMENT], memTableau, memAssigns, memColToVar, memRowToVar,
+        memStatus);
+  }
+
+  /** Adds the dimensions of the tableaux followed by <code>buffers</code> to a kernel. */
+  private void addArgs(final int kernelId, final Memory... buffers) {
+    mgr.addArgumentScalar(groupId, kernelId, numRows);
+    mgr.addArgumentScalar(groupId, kernelId, numColumns);
+    for (final Memory m : buffers)
+      mgr.addArgument(groupId, kernelId, m);
+  }
+
+  /**
+   * Sets the number of steps enqueued between two reads of the status flags. A longer interval
+   * means fewer round trips to the host, but finished problems may wait longer for the others.
+   */
+  public void setPollInterval(final int pollInterval) {
+    if (pollInterval < 1)
+      throw new RuntimeException("Invalid poll interval.");
+    this.pollInterval = pollInterval;
+  }
+
+  /** Returns the largest number of problems solved at once. */
+  public int maxProblems() {
+    return maxProblems;
+  }
+
+  /** Returns the number of problems in the batch. */
+  public int numProblems() {
+    return numProblems;
+  }
+
+  /** Removes every problem from the batch, so that the device memory can be reused. */
+  public void clear() {
+    numProblems = 0;
+  }
+
+  /**
+   * Adds a problem to the batch and returns its index.
+   *
+   * @param problem A problem with at most as many constraints and variables as the batch.
+   */
+  public int add(final Problem problem) {
+    if (numProblems >= maxProblems)
+      throw new RuntimeException("The batch is full.");
+    else if (problem.numRows() > numRows || problem.numColumns() > numColumns)
+      throw new RuntimeException("Invalid problem size.");
+    final int p = numProblems++;
+    final int rows = problem.numRows();
+    final int cols = problem.numColumns();
+    problemColumns[p] = cols;
+
+    // Stage the tableau and bounds, padded with zero coefficients and unbounded variables
+    for (int i = 0, offset = p * numRows * numColumns; i < numRows; i++)
+      for (int j = 0; j < numColumns; j++, offset++)
+        tableau[offset] = Float.floatToRawIntBits(
+            i < rows && j < cols ? problem.getCoefficient(i, j) : 0.0f);
+    for (int var = 0; var < numVars; var++) {
+      // Variable var of the batch is variable idx of the problem, or padding if idx is negative
+      final int idx = var < numColumns ? (var < cols ? var : -1)
+          : (var - numColumns < rows ? cols + var - numColumns : -1);
+      final int offset = p * numVars + var;
+      lower[offset] = Float.floatToRawIntBits(idx < 0 ? 0.0f : problem.getLowerBound(idx));
+      upper[offset] =
+          Float.floatToRawIntBits(idx < 0 ? Solver.NO_BOUND : problem.getUpperBound(idx));
+      assigns[offset] = Float.floatToRawIntBits(0.0f);
+    }
+
+    // Start from the initial basis, in which the slack variables are basic
+    for (int j = 0; j < numColumns; j++) {
+      colToVar[p * numColumns + j] = j;
+      varToTableau[p * numVars + j] = j;
+    }
+    for (int i = 0; i < numRows; i++) {
+      rowToVar[p * numRows + i] = numColumns + i;
+      varToTableau[p * numVars + numColumns + i] = i;
+    }
+    status[p] = RUNNING;
+    pivots[p] = 0;
+    return p;
+  }
+
+  /**
+   * Solves every problem in the batch, or stops after <code>maxSteps</code> steps. The problems
+   * are copied to the device first, so the unsolved ones start over from their initial basis.
+   *
+   * @param maxSteps The largest number of pivots performed for any one problem.
+   * @return The number of problems that are still unsolved.
+   */
+  public int solve(final long maxSteps) {
+    if (numProblems == 0)
+      return 0;
+    memTableau.copyHtoD();
+    memLower.copyHtoD();
+    memUpper.copyHtoD();
+    memAssigns.copyHtoD();
+    memColToVar.copyHtoD();
+    memRowToVar.copyHtoD();
+    memVarToTableau.copyHtoD();
+    memStatus.copyHtoD();
+    memPivots.copyHtoD();
+
+    final long[] global = new long[] {numProblems * localGroup[0], 1, 1};
+    int running = numProblems;
+    // Each step ends with check_bounds, so a problem solved by its last pivot is marked SAT
+    runKernel(CHECK_BOUNDS, global);
+    for (long step = 0; step < maxSteps && running > 0;) {
+      for (int i = 0; i < pollInterval && step < maxSteps; i++, step++) {
+        runKernel(FIND_SUITABLE, global);
+        runKernel(PIVOT, global);
+        runKernel(UPDATE_ASSIGNMENT, global);
+        runKernel(CHECK_BOUNDS, global);
+      }
+      memStatus.copyDtoH();
+      running = 0;
+      for (int p = 0; p < numProblems; p++)
+        if (status[p] == RUNNING)
+          running++;
+      if (logger.isLoggable(Level.FINE))
+        logger.log(Level.FINE, "BatchedDeviceSolver: " + running + " of " + numProblems
+            + " problems running after " + step + " steps");
+    }
+    memStatus.copyDtoH();
+    memPivots.copyDtoH();
+    memAssigns.copyDtoH();
+    return running;
+  }
+
+  private void runKernel(final int kernel, final long[] global) {
+    mgr.runKernel(groupId, kernels[kernel], global, localGroup);
+  }
+
+  /**
+   * Returns the result of problem <code>index</code> after {@link #solve(long)}, or
+   * <code>null</code> if it is still unsolved.
+   */
+  public Result result(final int index) {
+    if (index < 0 || index >= numProblems)
+      throw new RuntimeException("Invalid problem index.");
+    if (status[index] == RUNNING)
+      return null;
+    else if (status[index] != SAT)
+      return new Result(index, false, null);
+    final float[] solution = new float[problemColumns[index]];
+    for (int j = 0, offset = index * numVars; j < solution.length; j++)
+      solution[j] = Float.intBitsToFloat(assigns[offset + j]);
+    return new Result(index, true, solution);
+  }
+
+  /** Returns the number of pivots performed for problem <code>index</code>. */
+  public int numPivots(final int index) {
+    if (index < 0 || index >= numProblems)
+      throw new RuntimeException("Invalid problem index.");
+    return pivots[index];
+  }
+
+}
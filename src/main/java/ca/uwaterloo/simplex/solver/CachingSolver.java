@@ -0,0 +1,107 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class provides a wrapper around an <code>AbstractSolver</code> that answers repeated
+ * problems from a {@link ResultCache} instead of solving them again.
+ *
+ * <p>
+ * The wrapper records the constraints and bounds it is given. When <code>solve()</code> is called,
+ * they form the key of the problem; if the cache holds a result for an identical problem, its
+ * verdict and solution are returned without calling the wrapped solver. Otherwise, the wrapped
+ * solver is run and its result is added to the cache. The key depends only on the problem, not on
+ * the state of the wrapped solver, so a cached solution may differ from the one the wrapped
+ * solver would have found, but it always satisfies the same problem.
+ * </p>
+ */
+public final class CachingSolver implements Solver {
+
+  private final AbstractSolver solver;
+  private final ResultCache cache;
+
+  private final float[] coefficients;
+  private final float[] lower;
+  private final float[] upper;
+  private int numRows = 0;
+  private float[] solution = null;
+  private boolean hit = false;
+
+  /**
+   * Instantiates the wrapper with a solver instance, which must not have any constraints yet, and
+   * the cache to use.
+   */
+  public CachingSolver(final AbstractSolver solver, final ResultCache cache) {
+    if (solver.numRows != 0)
+      throw new RuntimeException("The solver already has constraints.");
+    this.solver = solver;
+    this.cache = cache;
+    coefficients = new float[solver.maxNumRows * solver.numColumns];
+    lower = new float[solver.numVars];
+    upper = new float[solver.numVars];
+    Arrays.fill(upper, NO_BOUND);
+  }
+
+  @Override
+  public void addConstraint(final List<Float> cs) {
+    solver.addConstraint(cs);
+    final int offset = numRows * solver.numColumns;
+    for (int j = 0; j < solver.numColumns; j++)
+      coefficients[offset + j] = cs.get(j);
+    numRows++;
+  }
+
+  @Override
+  public void setBounds(final int idx, final float lower, final float upper) {
+    solver.setBounds(idx, lower, upper);
+    this.lower[idx] = lower;
+    this.upper[idx] = upper;
+  }
+
+  /**
+   * Returns the cached result of the current problem, if any, or runs the wrapped solver.
+   */
+  @Override
+  public boolean solve() {
+    final ResultCache.Key key =
+        new ResultCache.Key(numRows, solver.numColumns, coefficients, lower, upper);
+    final Result cached = cache.get(key);
+    hit = cached != null;
+    if (hit) {
+      solution = cached.solution();
+      return cached.isSat();
+    }
+    final boolean sat = solver.solve();
+    solution = sat ? solver.solutionInto(new float[solver.numColumns]) : null;
+    cache.put(key, new Result(0, sat, solution));
+    return sat;
+  }
+
+  /** Returns <code>true</code> if the last call to <code>solve()</code> was answered by the cache. */
+  public boolean wasCached() {
+    return hit;
+  }
+
+  @Override
+  public List<Float> solution() {
+    if (solution == null)
+      return solver.solution();
+    final List<Float> s = new ArrayList<>(solution.length);
+    for (final float x : solution)
+      s.add(x);
+    return s;
+  }
+
+  @Override
+  public float[] solutionInto(final float[] dest) {
+    if (solution == null)
+      return solver.solutionInto(dest);
+    if (dest.length < solution.length)
+      throw new RuntimeException("The solution array is too small.");
+    System.arraycopy(solution, 0, dest, 0, solution.length);
+    return dest;
+  }
+
+}
@@ -1,22 +1,53 @@
 package ca.uwaterloo.simplex.solver;
 
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.Arrays;
 
 import ca.uwaterloo.simplex.bounds.Bounds;
 
 /**
  * A CPU-only implementation of a linear constraint solver.
+ *
+ * <p>
+ * The tableau is kept either as a dense row-major array or as sparse rows (sorted column indices
+ * and values), whichever is cheaper for its current density. Since pivots fill in sparse tableaux
+ * and may thin out dense ones, the density is measured every few pivots and the representation is
+ * switched when it crosses the sparse threshold (or twice the threshold, in the other direction,
+ * so that a tableau near the threshold does not switch back and forth). Both representations
+ * perform the same floating-point operations on the nonzero entries in the same order, so the
+ * results do not depend on the representation.
+ * </p>
  * 
  * @author Steven Stewart
  */
 public class CpuSolver extends AbstractSolver {
 
-  /** The set of indices of basic variables. */
-  private final SortedSet<Integer> basic = new TreeSet<>();
+  /**
+   * The indices of basic variables in ascending order. Sorted primitive arrays are used instead of
+   * sorted sets so that iterating over them and swapping variables does not allocate.
+   */
+  private final int[] basic;
+
+  /** The indices of non-basic variables in ascending order. */
+  private final int[] nonbasic;
+
+  /** The number of pivots between two measurements of the density. */
+  private final static int DENSITY_CHECK_INTERVAL = 16;
+
+  /** The density under which new solvers switch to sparse rows. */
+  private static volatile float defaultSparseThreshold = defaultSparseThreshold();
+
+  private float sparseThreshold = defaultSparseThreshold;
+  private int pivotsSinceCheck = DENSITY_CHECK_INTERVAL - 1;
 
-  /** The set of indices of non-basic variables. */
-  private final SortedSet<Integer> nonbasic = new TreeSet<>();
+  /*
+   * The sparse representation, in use when sparse is true: row i holds rowNnz[i] entries, with
+   * ascending column indices in rowCols[i] and values in rowVals[i]. The dense tableau is stale
+   * while the sparse rows are in use, except for rows that have just been added.
+   */
+  private boolean sparse = false;
+  private int[][] rowCols;
+  private float[][] rowVals;
+  private int[] rowNnz;
 
   /**
    * 
@@ -24,28 +55,158 @@ public class CpuSolver extends AbstractSolver {
    * @param maxNumConstrs
    */
   CpuSolver(final int maxNumBasic, final int numNonbasic) {
-    super(maxNumBasic, numNonbasic, BoundsType.CPU);
+    this(maxNumBasic, numNonbasic, new float[maxNumBasic * numNonbasic]);
+  }
+
+  /** Creates a solver that uses the given array as its host tableau. */
+  CpuSolver(final int maxNumBasic, final int numNonbasic, final float[] tableau) {
+    super(maxNumBasic, numNonbasic, BoundsType.CPU, tableau);
 
     // Initialize maps
+    basic = new int[maxNumBasic];
+    nonbasic = new int[numNonbasic];
     int i;
     for (i = 0; i < numNonbasic; i++)
-      nonbasic.add(i);
+      nonbasic[i] = i;
     for (int j = 0; j < maxNumBasic; i++, j++)
-      basic.add(i);
+      basic[j] = i;
+  }
+
+  private static float defaultSparseThreshold() {
+    final String threshold = System.getProperty("peticodiac.sparseThreshold");
+    if (threshold != null) {
+      try {
+        return Float.parseFloat(threshold);
+      } catch (final NumberFormatException e) {
+        logger.warning("CpuSolver: invalid sparse threshold " + threshold);
+      }
+    }
+    return 0.1f;
+  }
+
+  /**
+   * Sets the density under which solvers created afterwards switch to sparse rows. The default is
+   * 0.1, unless the <code>peticodiac.sparseThreshold</code> system property is set, and is replaced
+   * by the calibrated value once a {@link SolverDispatcher} has been created.
+   */
+  public static void setDefaultSparseThreshold(final float threshold) {
+    defaultSparseThreshold = threshold;
+  }
+
+  /**
+   * Sets the density under which this solver switches to sparse rows. A threshold of zero keeps
+   * the tableau dense, and a threshold of <code>Float.MAX_VALUE</code> keeps it sparse.
+   */
+  public void setSparseThreshold(final float threshold) {
+    sparseThreshold = threshold;
+    pivotsSinceCheck = DENSITY_CHECK_INTERVAL - 1;
+  }
+
+  /** Returns <code>true</code> if the tableau is currently stored as sparse rows. */
+  public boolean isSparse() {
+    return sparse;
+  }
+
+  /**
+   * Switches the representation of the tableau if its density has crossed the threshold. Counting
+   * the nonzeros of a dense tableau costs about as much as one pivot, which is why this is only
+   * done every few pivots.
+   */
+  private void adjustRepresentation() {
+    final long size = (long) numRows * numColumns;
+    if (size == 0)
+      return;
+    long nnz = 0;
+    if (sparse) {
+      for (int i = 0; i < numRows; i++)
+        nnz += rowNnz[i];
+    } else {
+      for (int i = 0, n = numRows * numColumns; i < n; i++)
+        if (tableau[i] != 0.0f)
+          nnz++;
+    }
+    final double density = (double) nnz / size;
+    if (!sparse && density < sparseThreshold)
+      toSparse();
+    else if (sparse && density > 2.0 * sparseThreshold)
+      toDense();
+  }
+
+  private void toSparse() {
+    if (rowNnz == null) {
+      rowCols = new int[maxNumRows][];
+      rowVals = new float[maxNumRows][];
+      rowNnz = new int[maxNumRows];
+    }
+    for (int i = 0; i < numRows; i++)
+      gatherRow(i);
+    sparse = true;
+  }
+
+  private void toDense() {
+    for (int i = 0; i < numRows; i++) {
+      final int offset = i * numColumns;
+      Arrays.fill(tableau, offset, offset + numColumns, 0.0f);
+      final int[] cols = rowCols[i];
+      final float[] vals = rowVals[i];
+      for (int k = 0; k < rowNnz[i]; k++)
+        tableau[offset + cols[k]] = vals[k];
+    }
+    sparse = false;
+  }
+
+  /** Copies row <code>i</code> of the dense tableau into its sparse row. */
+  private void gatherRow(final int i) {
+    final int offset = i * numColumns;
+    int nnz = 0;
+    for (int j = 0; j < numColumns; j++)
+      if (tableau[offset + j] != 0.0f)
+        nnz++;
+    ensureCapacity(i, nnz);
+    final int[] cols = rowCols[i];
+    final float[] vals = rowVals[i];
+    int k = 0;
+    for (int j = 0; j < numColumns; j++) {
+      final float val = tableau[offset + j];
+      if (val != 0.0f) {
+        cols[k] = j;
+        vals[k++] = val;
+      }
+    }
+    rowNnz[i] = nnz;
+  }
+
+  /** Makes room for <code>nnz</code> entries in sparse row <code>i</code>, keeping its entries. */
+  private void ensureCapacity(final int i, final int nnz) {
+    if (rowCols[i] != null && rowCols[i].length >= nnz)
+      return;
+    final int capacity = Math.min(numColumns, Math.max(4, 2 * nnz));
+    rowCols[i] = rowCols[i] == null ? new int[capacity] : Arrays.copyOf(rowCols[i], capacity);
+    rowVals[i] = rowVals[i] == null ? new float[capacity] : Arrays.copyOf(rowVals[i], capacity);
+  }
+
+  /** Returns the position of column <code>col</code> in sparse row <code>i</code>, or -1. */
+  private int find(final int i, final int col) {
+    final int pos = Arrays.binarySearch(rowCols[i], 0, rowNnz[i], col);
+    return pos < 0 ? -1 : pos;
+  }
+
+  @Override
+  protected void rowAdded(final int row) {
+    if (sparse)
+      gatherRow(row);
   }
 
   @Override
   protected int checkBounds() {
-    for (final Integer i : basic)
+    for (final int i : basic)
       if (bounds.isBroken(i))
         return i;
     return NONE_FOUND;
   }
 
   private float lookup(final int row, final int col) {
-    final int rowIdx = varToTableau[row];
-    final int colIdx = varToTableau[col];
-    return tableau[rowIdx * numColumns + colIdx];
+    return getTableauEntry(varToTableau[row], varToTableau[col]);
   }
 
   @Override
@@ -60,7 +221,7 @@ public class CpuSolver extends AbstractSolver {
   }
 
   protected int findSuitableIncrease(final int brokenIdx, final float delta) {
-    for (final Integer idx : nonbasic) {
+    for (final int idx : nonbasic) {
       final float coeff = lookup(brokenIdx, idx);
       if ((bounds.isIncreasable(idx) && coeff > 0) || (bounds.isDecreasable(idx) && coeff < 0)) {
         final float theta = delta / coeff;
@@ -73,7 +234,7 @@ public class CpuSolver extends AbstractSolver {
   }
 
   protected int findSuitableDecrease(final int brokenIdx, final float delta) {
-    for (final Integer idx : nonbasic) {
+    for (final int idx : nonbasic) {
       final float coeff = lookup(brokenIdx, idx);
       if ((bounds.isIncreasable(idx) && coeff < 0) || (bounds.isDecreasable(idx) && coeff > 0)) {
         final float theta = delta / coeff;
@@ -94,29 +255,35 @@ public class CpuSolver extends AbstractSolver {
     final int row = varToTableau[basicIdx];
     final int col = varToTableau[nonbasicIdx];
 
+    if (++pivotsSinceCheck >= DENSITY_CHECK_INTERVAL) {
+      pivotsSinceCheck = 0;
+      adjustRepresentation();
+    }
+
     // Save current value of alpha
-    final int alphaIdx = row * numColumns + col;
-    final float alpha = tableau[alphaIdx];
+    final float alpha = getTableauEntry(row, col);
 
     // Update the tableau
     updateInner(alpha, row, col);
     updatePivotRow(alpha, row);
     updatePivotCol(alpha, col);
-    tableau[alphaIdx] = 1.0f / alpha;
+    if (sparse)
+      rowVals[row][find(row, col)] = 1.0f / alpha;
+    else
+      tableau[row * numColumns + col] = 1.0f / alpha;
 
     // Swap the basic and non-basic variables
     swap(basicIdx, nonbasicIdx);
   }
 
-  private void swap(final int basicVar, final int nonbasicVar) {
+  /** Exchanges a basic and a non-basic variable after their row and column have been pivoted. */
+  protected final void swap(final int basicVar, final int nonbasicVar) {
     final int basicTableauIdx = varToTableau[basicVar];
     final int nonbasicTableauIdx = varToTableau[nonbasicVar];
 
     // Swap basic and non-basic variables
-    basic.remove(basicVar);
-    nonbasic.remove(nonbasicVar);
-    basic.add(nonbasicVar);
-    nonbasic.add(basicVar);
+    replace(basic, basicVar, nonbasicVar);
+    replace(nonbasic, nonbasicVar, basicVar);
     bounds.setFlag(basicVar, Bounds.NON_BASIC);
     bounds.setFlag(nonbasicVar, Bounds.BASIC);
 
@@ -129,30 +296,138 @@ public class CpuSolver extends AbstractSolver {
     varToTableau[nonbasicVar] = basicTableauIdx;
   }
 
-  private void updateInner(final float alpha, final int row, final int col) {
-    for (int i = 0; i < numRows; i++) {
-      if (i == row)
+  /**
+   * Replaces <code>oldVar</code> by <code>newVar</code> in the sorted array <code>vars</code>,
+   * shifting the entries in between so that the array remains sorted.
+   */
+  private static void replace(final int[] vars, final int oldVar, final int newVar) {
+    int pos = Arrays.binarySearch(vars, oldVar);
+    assert pos >= 0;
+    if (newVar > oldVar) {
+      for (; pos + 1 < vars.length && vars[pos + 1] < newVar; pos++)
+        vars[pos] = vars[pos + 1];
+    } else {
+      for (; pos > 0 && vars[pos - 1] > newVar; pos--)
+        vars[pos] = vars[pos - 1];
+    }
+    vars[pos] = newVar;
+  }
+
+  /**
+   * Updates every tableau entry outside of the pivot row and pivot column. Rows whose entry in the
+   * pivot column is zero are left untouched, since <code>delta - (beta * 0) / alpha</code> is just
+   * <code>delta</code>; this is what makes the cost of a pivot proportional to the density of the
+   * pivot column rather than to the size of the tableau.
+   */
+  protected void updateInner(final float alpha, final int row, final int col) {
+    for (int i = 0; i < numRows; i++)
+      updateInnerRow(alpha, row, col, i);
+  }
+
+  /** Applies the inner pivot update to row <code>i</code>. */
+  protected final void updateInnerRow(final float alpha, final int row, final int col,
+      final int i) {
+    if (i == row)
+      return;
+    if (sparse) {
+      updateInnerSparseRow(alpha, row, col, i);
+      return;
+    }
+    final int deltaRowIdx = i * numColumns;
+    final float gamma = tableau[deltaRowIdx + col];
+    if (gamma == 0.0f)
+      return;
+    final int betaRowIdx = row * numColumns;
+    for (int j = 0; j < numColumns; j++) {
+      if (j == col)
         continue;
-      for (int j = 0; j < numColumns; j++) {
-        if (j == col)
-          continue;
-        final int deltaRowIdx = i * numColumns;
-        final int deltaIdx = deltaRowIdx + j;
-        final float delta = tableau[deltaIdx];
-        final float beta = tableau[row * numColumns + j];
-        final float gamma = tableau[deltaRowIdx + col];
-        tableau[deltaIdx] = delta - (beta * gamma) / alpha;
+      final int deltaIdx = deltaRowIdx + j;
+      final float delta = tableau[deltaIdx];
+      final float beta = tableau[betaRowIdx + j];
+      tableau[deltaIdx] = delta - (beta * gamma) / alpha;
+    }
+  }
+
+  /**
+   * Applies the inner pivot update to sparse row <code>i</code> by merging it with the pivot row.
+   * The merged row is written backwards in place, which never overwrites an entry that has not
+   * been read yet since the merged row is at least as long as row <code>i</code>.
+   */
+  private void updateInnerSparseRow(final float alpha, final int row, final int col,
+      final int i) {
+    final int pos = find(i, col);
+    if (pos < 0)
+      return;
+    final float gamma = rowVals[i][pos];
+    if (gamma == 0.0f)
+      return;
+    final int[] betaCols = rowCols[row];
+    final float[] betaVals = rowVals[row];
+    final int betaNnz = rowNnz[row];
+
+    // Count the entries of the merged row
+    final int deltaNnz = rowNnz[i];
+    int nnz = deltaNnz;
+    for (int a = 0, b = 0; b < betaNnz; b++) {
+      final int j = betaCols[b];
+      while (a < deltaNnz && rowCols[i][a] < j)
+        a++;
+      if (j != col && (a == deltaNnz || rowCols[i][a] != j))
+        nnz++;
+    }
+    ensureCapacity(i, nnz);
+    final int[] cols = rowCols[i];
+    final float[] vals = rowVals[i];
+
+    // Merge backwards
+    int a = deltaNnz - 1;
+    int b = betaNnz - 1;
+    for (int k = nnz - 1; k >= 0; k--) {
+      final int ja = a >= 0 ? cols[a] : -1;
+      int jb = b >= 0 ? betaCols[b] : -1;
+      if (jb == col) {
+        b--;
+        jb = b >= 0 ? betaCols[b] : -1;
+      }
+      if (ja == jb) {
+        vals[k] = vals[a] - (betaVals[b] * gamma) / alpha;
+        cols[k] = ja;
+        a--;
+        b--;
+      } else if (ja > jb) {
+        vals[k] = vals[a];
+        cols[k] = ja;
+        a--;
+      } else {
+        vals[k] = 0.0f - (betaVals[b] * gamma) / alpha;
+        cols[k] = jb;
+        b--;
       }
     }
+    rowNnz[i] = nnz;
   }
 
   private void updatePivotRow(final float alpha, final int row) {
+    if (sparse) {
+      final float[] vals = rowVals[row];
+      for (int k = 0; k < rowNnz[row]; k++)
+        vals[k] = -vals[k] / alpha;
+      return;
+    }
     for (int i = 0, idx = row * numColumns; i < numColumns; i++, idx++) {
       tableau[idx] = -tableau[idx] / alpha;
     }
   }
 
   private void updatePivotCol(final float alpha, final int col) {
+    if (sparse) {
+      for (int i = 0; i < numRows; i++) {
+        final int pos = find(i, col);
+        if (pos >= 0)
+          rowVals[i][pos] = rowVals[i][pos] / alpha;
+      }
+      return;
+    }
     for (int i = 0, idx = col; i < numRows; i++, idx += numColumns) {
       tableau[idx] = tableau[idx] / alpha;
     }
@@ -160,21 +435,69 @@ public class CpuSolver extends AbstractSolver {
 
   @Override
   protected void updateAssignment() {
-    for (int i = 0; i < numRows; i++) {
-      float accum = 0.0f;
-      final int offset = i * numColumns;
-      for (int j = 0; j < numColumns; j++) {
-        accum += bounds.getAssignment(colToVar[j]) * tableau[offset + j];
-      }
+    for (int i = 0; i < numRows; i++)
+      updateAssignmentRow(i);
+  }
+
+  /** Recomputes the assignment of the basic variable of row <code>i</code>. */
+  protected final void updateAssignmentRow(final int i) {
+    float accum = 0.0f;
+    if (sparse) {
+      final int[] cols = rowCols[i];
+      final float[] vals = rowVals[i];
+      for (int k = 0; k < rowNnz[i]; k++)
+        accum += bounds.getAssignment(colToVar[cols[k]]) * vals[k];
       bounds.setAssignment(rowToVar[i], accum);
+      return;
+    }
+    final int offset = i * numColumns;
+    for (int j = 0; j < numColumns; j++) {
+      accum += bounds.getAssignment(colToVar[j]) * tableau[offset + j];
     }
+    bounds.setAssignment(rowToVar[i], accum);
   }
 
   @Override
-  protected void preSolve() {}
+  public void preSolve() {}
+
+  /**
+   * {@inheritDoc} The dense tableau is authoritative after a reset or a restore, so the solver
+   * returns to the dense representation.
+   */
+  @Override
+  protected void basisChanged() {
+    sparse = false;
+    pivotsSinceCheck = DENSITY_CHECK_INTERVAL - 1;
+    int b = 0;
+    int n = 0;
+    for (int i = 0; i < numVars; i++) {
+      if (bounds.isBasic(i))
+        basic[b++] = i;
+      else
+        nonbasic[n++] = i;
+    }
+    assert b == basic.length && n == nonbasic.length;
+  }
+
+  /** {@inheritDoc} Sparse rows add only their stored entries. */
+  @Override
+  void addRowRange(final int row, final RowRange range) {
+    if (!sparse) {
+      super.addRowRange(row, range);
+      return;
+    }
+    final int[] cols = rowCols[row];
+    final float[] vals = rowVals[row];
+    for (int k = 0; k < rowNnz[row]; k++)
+      range.add(cols[k], vals[k]);
+  }
 
   @Override
   protected float getTableauEntry(final int row, final int col) {
+    if (sparse) {
+      final int pos = find(row, col);
+      return pos < 0 ? 0.0f : rowVals[row][pos];
+    }
     return tableau[row * numColumns + col];
   }
 
@@ -0,0 +1,295 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * A solver that splits a problem into independent blocks and solves each block as its own,
+ * smaller problem, in parallel.
+ *
+ * <p>
+ * Two variables are in the same block if they both appear (with a nonzero coefficient) in some
+ * constraint, directly or through other variables: the blocks are the connected components of the
+ * graph in which the constraints connect their variables. Since no constraint spans two blocks, a
+ * problem is satisfiable if and only if each of its blocks is, and the solutions of the blocks
+ * together form a solution of the problem. A pivot on the whole tableau of a block-diagonal
+ * problem would also have to pass over the zeros of every other block.
+ * </p>
+ *
+ * <p>
+ * Constraints whose coefficients are all zero join the block of variable 0, and the variables
+ * that appear in no constraint form one block of their own, so that these cases are decided by a
+ * solver as well. As soon as a block is found to be unsatisfiable, the other blocks are cancelled.
+ * </p>
+ *
+ * <p>
+ * The limits of each block are those of its solver (see {@link AbstractSolver#setLimits(long,
+ * long)}). A block that reaches them, or a call to {@link #cancel()}, cancels the other blocks,
+ * and {@link #solve()} throws the <code>CancellationException</code> of the block, unless another
+ * block has been found to be unsatisfiable.
+ * </p>
+ */
+public final class DecomposingSolver implements Solver {
+
+  private final static Logger logger = Logger.getLogger("Solver");
+
+  private final int maxNumBasic;
+  private final int numNonbasic;
+  private final BiFunction<Integer, Integer, AbstractSolver> factory;
+
+  private final float[] coefficients;
+  private final float[] lower;
+  private final float[] upper;
+  private int numRows = 0;
+  private float[] solution = null;
+  private int numBlocks = 0;
+
+  /** The solvers of the blocks of the current solve, guarded by themselves. */
+  private AbstractSolver[] solvers = new AbstractSolver[0];
+  private volatile boolean cancelled = false;
+
+  /**
+   * Creates a solver for at most <code>maxNumBasic</code> constraints over
+   * <code>numNonbasic</code> variables, which solves each block with a solver created by
+   * <code>factory</code> from the number of constraints and variables of the block.
+   */
+  public DecomposingSolver(final int maxNumBasic, final int numNonbasic,
+      final BiFunction<Integer, Integer, AbstractSolver> factory) {
+    if (maxNumBasic < 0 || numNonbasic < 1)
+      throw new RuntimeException("Invalid problem size.");
+    this.maxNumBasic = maxNumBasic;
+    this.numNonbasic = numNonbasic;
+    this.factory = factory;
+    coefficients = new float[maxNumBasic * numNonbasic];
+    lower = new float[maxNumBasic + numNonbasic];
+    upper = new float[maxNumBasic + numNonbasic];
+    Arrays.fill(upper, NO_BOUND);
+  }
+
+  /** Returns a solver that solves each block on a <code>CpuSolver</code>. */
+  public static DecomposingSolver create(final int maxNumBasic, final int numNonbasic) {
+    return new DecomposingSolver(maxNumBasic, numNonbasic, CpuSolver::new);
+  }
+
+  @Override
+  public void addConstraint(final List<Float> cs) {
+    if (cs.size() != numNonbasic)
+      throw new RuntimeException("Invalid constraint size.");
+    else if (numRows >= maxNumBasic)
+      throw new RuntimeException("Unable to add more constraints.");
+    final int offset = numRows * numNonbasic;
+    for (int j = 0; j < numNonbasic; j++)
+      coefficients[offset + j] = cs.get(j);
+    numRows++;
+  }
+
+  @Override
+  public void setBounds(final int idx, final float lower, final float upper) {
+    this.lower[idx] = lower;
+    this.upper[idx] = upper;
+  }
+
+  @Override
+  public List<Float> solution() {
+    final List<Float> s = new ArrayList<>();
+    if (solution != null)
+      for (final float x : solution)
+        s.add(x);
+    return s;
+  }
+
+  @Override
+  public float[] solutionInto(final float[] dest) {
+    if (solution != null) {
+      if (dest.length < solution.length)
+        throw new RuntimeException("The solution array is too small.");
+      System.arraycopy(solution, 0, dest, 0, solution.length);
+    }
+    return dest;
+  }
+
+  /** Returns the number of blocks found by the last call to <code>solve()</code>. */
+  public int numBlocks() {
+    return numBlocks;
+  }
+
+  /**
+   * Requests that a running (or the next) call to {@link #solve()} stops by throwing a
+   * <code>CancellationException</code>, as {@link AbstractSolver#cancel()} does. This method may be
+   * called from any thread.
+   */
+  public void cancel() {
+    cancelled = true;
+    final AbstractSolver[] current = solvers;
+    synchronized (current) {
+      for (final AbstractSolver s : current)
+        if (s != null)
+          s.cancel();
+    }
+  }
+
+  /**
+   * Returns the block of each variable and sets {@link #numBlocks}. The blocks are numbered in
+   * the order of their first variable.
+   */
+  private int[] findBlocks() {
+    // Union-find over the variables, joining the variables of each constraint
+    final int[] parent = new int[numNonbasic];
+    final boolean[] used = new boolean[numNonbasic];
+    for (int j = 0; j < numNonbasic; j++)
+      parent[j] = j;
+    for (int i = 0; i < numRows; i++) {
+      int first = -1;
+      for (int j = 0, offset = i * numNonbasic; j < numNonbasic; j++) {
+        if (coefficients[offset + j] == 0.0f)
+          continue;
+        used[j] = true;
+        if (first < 0)
+          first = find(parent, j);
+        else
+          parent[find(parent, j)] = first;
+      }
+    }
+
+    final int[] block = new int[numNonbasic];
+    final int[] label = new int[numNonbasic];
+    Arrays.fill(label, -1);
+    int unused = -1;
+    numBlocks = 0;
+    for (int j = 0; j < numNonbasic; j++) {
+      if (!used[j]) {
+        if (unused < 0)
+          unused = numBlocks++;
+        block[j] = unused;
+      } else {
+        final int root = find(parent, j);
+        if (label[root] < 0)
+          label[root] = numBlocks++;
+        block[j] = label[root];
+      }
+    }
+    return block;
+  }
+
+  private static int find(final int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+  /**
+   * Splits the problem into blocks, solves them in parallel and merges their solutions.
+   *
+   * @throws CancellationException If {@link #cancel()} is called while solving, or if a block
+   *         reaches the limits of its solver, and no block is unsatisfiable.
+   */
+  @Override
+  public boolean solve() {
+    solution = null;
+    if (cancelled) {
+      cancelled = false;
+      throw new CancellationException();
+    }
+    final int[] colBlock = findBlocks();
+
+    // Number the variables and constraints of each block in their original order
+    final int[] blockCols = new int[numBlocks];
+    final int[] blockRows = new int[numBlocks];
+    final int[] colLocal = new int[numNonbasic];
+    final int[] rowBlock = new int[numRows];
+    final int[] rowLocal = new int[numRows];
+    for (int j = 0; j < numNonbasic; j++)
+      colLocal[j] = blockCols[colBlock[j]]++;
+    for (int i = 0; i < numRows; i++) {
+      int b = colBlock[0];
+      for (int j = 0, offset = i * numNonbasic; j < numNonbasic; j++) {
+        if (coefficients[offset + j] != 0.0f) {
+          b = colBlock[j];
+          break;
+        }
+      }
+      rowBlock[i] = b;
+      rowLocal[i] = blockRows[b]++;
+    }
+    if (logger.isLoggable(Level.FINE))
+      logger.log(Level.FINE, "DecomposingSolver: " + numBlocks + " blocks");
+
+    final Problem[] problems = new Problem[numBlocks];
+    for (int b = 0; b < numBlocks; b++)
+      problems[b] = new Problem(blockRows[b], blockCols[b]);
+    for (int j = 0; j < numNonbasic; j++)
+      problems[colBlock[j]].setBounds(colLocal[j], lower[j], upper[j]);
+    for (int i = 0; i < numRows; i++) {
+      final Problem p = problems[rowBlock[i]];
+      p.setBounds(p.numColumns() + rowLocal[i], lower[numNonbasic + i], upper[numNonbasic + i]);
+      for (int j = 0, offset = i * numNonbasic; j < numNonbasic; j++)
+        if (coefficients[offset + j] != 0.0f)
+          p.setCoefficient(rowLocal[i], colLocal[j], coefficients[offset + j]);
+    }
+
+    final AbstractSolver[] solvers = new AbstractSolver[numBlocks];
+    final float[][] solutions = new float[numBlocks][];
+    final boolean[] unsat = new boolean[1];
+    // The first cancellation of a block that was not cancelled by an unsatisfiable one
+    final CancellationException[] stopped = new CancellationException[1];
+    this.solvers = solvers;
+    IntStream.range(0, numBlocks).parallel().forEach(b -> {
+      final AbstractSolver solver = factory.apply(problems[b].numRows(), problems[b].numColumns());
+      synchronized (solvers) {
+        if (unsat[0] || stopped[0] != null)
+          return;
+        solvers[b] = solver;
+        if (cancelled)
+          solver.cancel();
+      }
+      problems[b].load(solver);
+      solver.preSolve();
+      try {
+        if (solver.solve()) {
+          solutions[b] = solver.solutionInto(new float[problems[b].numColumns()]);
+          return;
+        }
+      } catch (final CancellationException e) {
+        // The whole problem is undecided, unless another block is unsatisfiable
+        synchronized (solvers) {
+          if (!unsat[0] && stopped[0] == null) {
+            stopped[0] = e;
+            cancelAll(solvers);
+          }
+        }
+        return;
+      }
+      // The problem is unsatisfiable, so the other blocks need not be finished
+      synchronized (solvers) {
+        unsat[0] = true;
+        cancelAll(solvers);
+      }
+    });
+    this.solvers = new AbstractSolver[0];
+    cancelled = false;
+    if (unsat[0])
+      return false;
+    if (stopped[0] != null)
+      throw stopped[0];
+
+    solution = new float[numNonbasic];
+    for (int j = 0; j < numNonbasic; j++)
+      solution[j] = solutions[colBlock[j]][colLocal[j]];
+    return true;
+  }
+
+  private static void cancelAll(final AbstractSolver[] solvers) {
+    for (final AbstractSolver s : solvers)
+      if (s != null)
+        s.cancel();
+  }
+
+}
@@ -1,9 +1,8 @@
 package ca.uwaterloo.simplex.solver;
 
+import java.nio.FloatBuffer;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.logging.Level;
-import java.util.logging.Logger;
 
 import ca.uwaterloo.shediac.KernelMgr;
 import ca.uwaterloo.shediac.KernelMgr.DeviceType;
@@ -15,6 +14,12 @@ import ca.uwaterloo.simplex.bounds.DeviceBounds;
  * A device-accelerated implementation of the AbstractSolver for general simplex. This
  * implementation will call compute kernels in order to carry out the core operations: checkBounds,
  * findSuitable, pivot, and updateAssignment.
+ *
+ * <p>
+ * The host keeps the bits of each tableau entry in an <code>int</code> array from which the device
+ * tableau is allocated, so that the tableau is copied to the device, and read back, in one
+ * transfer.
+ * </p>
  * 
  * @author Steven Stewart
  */
@@ -28,25 +33,74 @@ public class DeviceSolver extends AbstractSolver {
   private final Memory memOutput;
   private final Memory memTableau;
   private final Memory memColToVar;
-  private final Memory memRowToVar;
   private final Memory memVarToTableau;
   private final Memory memPartialSums;
+  private final Memory memAlpha;
   private final int[] output = new int[1];
+  private boolean argumentsAdded = false;
+  private boolean prepared = false;
   private final byte[] flags;
 
+  private final static float[] NO_TABLEAU = new float[0];
+
+  /**
+   * The host copy of {@link #memTableau}, which holds the bits of each entry. It matches the device
+   * only when hostCurrent is true.
+   */
+  private final int[] tableauBits;
+  private boolean hostCurrent = true;
+
+  /** The host array read back by {@link #solutionView()}, and a view of it. */
+  private final float[] hostSolution;
+  private final FloatBuffer hostSolutionView;
+
   private final String cuFilename = "kernels/generalSimplex.cu";
   private final String clFilename = "kernels/generalSimplex.cl";
 
   private final String[] kernelNames = new String[] {"check_bounds", "find_suitable",
-      "find_suitable_complete", "pivot_update_inner", "pivot_update_row", "pivot_update_column",
-      "update_assignment_1", "update_assignment_2", "update_assignment_complete"};
-
-  private final HashMap<String, Integer> kernels = new HashMap<>();
+      "find_suitable_complete", "pivot_load_alpha", "pivot_update_inner", "pivot_update_row",
+      "pivot_update_column", "pivot_store_alpha", "update_assignment_1", "update_assignment_2",
+      "update_assignment_complete"};
+
+  /** Positions of the kernels in {@link #kernelNames} and {@link #kernels}. */
+  private final static int CHECK_BOUNDS = 0;
+  private final static int FIND_SUITABLE = 1;
+  private final static int FIND_SUITABLE_COMPLETE = 2;
+  private final static int PIVOT_LOAD_ALPHA = 3;
+  private final static int PIVOT_UPDATE_INNER = 4;
+  private final static int PIVOT_UPDATE_ROW = 5;
+  private final static int PIVOT_UPDATE_COLUMN = 6;
+  private final static int PIVOT_STORE_ALPHA = 7;
+  private final static int UPDATE_ASSIGNMENT_1 = 8;
+  private final static int UPDATE_ASSIGNMENT_2 = 9;
+  private final static int UPDATE_ASSIGNMENT_COMPLETE = 10;
+
+  /** The kernel ids, indexed by the constants above. */
+  private final int[] kernels = new int[kernelNames.length];
 
   private final int workgroupSize;
   private final int numLaunches;
+  private final int numColumnLaunches;
   private final int numVarsPerLaunch;
 
+  /*
+   * Launch dimensions and row buffers are created once, either here or in preSolve(), so that the
+   * solving steps do not allocate.
+   */
+  private final long[] single = new long[] {1, 1, 1};
+  private final long[] localGroup;
+  private final long[] globalVars;
+  private final long[] globalColumns;
+  private final long[] localInner = new long[] {32, 32, 1};
+  private long[] globalInner;
+  private long[] globalRows;
+  private final Buffer[] rowBuffers;
+
+  /** The number of items left after each update_assignment_2 step, and its launch dimensions. */
+  private final int[] reduceItems;
+  private final long[][] reduceGlobal;
+  private final long[] completeDims;
+
   /**
    * DeviceSolver
    * 
@@ -59,7 +113,9 @@ public class DeviceSolver extends AbstractSolver {
    */
   DeviceSolver(final int maxNumBasic, final int numNonbasic, final DeviceType type,
       final int platformId, final int deviceId, final boolean enableExceptions) {
-    super(maxNumBasic, numNonbasic, BoundsType.Device);
+    super(maxNumBasic, numNonbasic, BoundsType.Device, NO_TABLEAU);
+    // Each entry read by an interval check would be a transfer from the device
+    setIntervalCheck(0);
 
     this.type = type;
     this.devBounds = ((DeviceBounds) bounds);
@@ -77,26 +133,51 @@ public class DeviceSolver extends AbstractSolver {
     // Configuration
     workgroupSize = 2;// (int) mgr.getDevice(groupId).maxWorkGroupSize();
     numVarsPerLaunch = mgr.getDevice(groupId).computeUnits() * workgroupSize;
-    numLaunches = (numVars + workgroupSize - 1) / workgroupSize;
+    numLaunches = (numVars + numVarsPerLaunch - 1) / numVarsPerLaunch;
+    numColumnLaunches = (numColumns + numVarsPerLaunch - 1) / numVarsPerLaunch;
+    localGroup = new long[] {workgroupSize, 1, 1};
+    globalVars = new long[] {numVarsPerLaunch, 1, 1};
+    globalColumns = new long[] {numColumns, 1, 1};
+
+    // Sizes of the reduction steps performed by updateAssignment
+    int numReduce = 0;
+    int numItems = numWorkgroups(numColumns, workgroupSize);
+    int n = numItems;
+    while (workgroupSize > 1 && n > workgroupSize) {
+      n = numWorkgroups(n, workgroupSize);
+      numReduce++;
+    }
+    reduceItems = new int[numReduce];
+    reduceGlobal = new long[numReduce][];
+    for (int i = 0; i < numReduce; i++) {
+      reduceItems[i] = numItems;
+      reduceGlobal[i] = new long[] {numItems, 1, 1};
+      numItems = numWorkgroups(numItems, workgroupSize);
+    }
+    completeDims = new long[] {numItems, 1, 1};
 
     // Allocate output array for partial sums used during updateAssignment
     final int numWorkgroups = (numColumns + workgroupSize - 1) / workgroupSize;
 
     // Allocate device memory
-    memTableau = mgr.allocateDevice(groupId, maxNumRows * numColumns * Float.BYTES);
+    tableauBits = new int[maxNumRows * numColumns];
+    memTableau = mgr.allocateDeviceFromHost(groupId, tableauBits);
     memOutput = mgr.allocateDeviceFromHost(groupId, output);
     memColToVar = mgr.allocateDeviceFromHost(groupId, colToVar);
-    memRowToVar = mgr.allocateDeviceFromHost(groupId, rowToVar);
     memVarToTableau = mgr.allocateDeviceFromHost(groupId, varToTableau);
     memPartialSums = mgr.allocateDevice(groupId, numWorkgroups * Float.BYTES);
+    memAlpha = mgr.allocateDevice(groupId, Float.BYTES);
 
     // Allocate device memory
     final int size = Float.BYTES * numVars;
-    devBounds.memAssigns = mgr.allocateDevice(groupId, size);
+    devBounds.memAssigns = mgr.allocateDeviceFromHost(groupId, devBounds.hostAssigns());
     devBounds.memLower = mgr.allocateDevice(groupId, size);
     devBounds.memUpper = mgr.allocateDevice(groupId, size);
     devBounds.memFlags = mgr.allocateDeviceFromHost(groupId, flags);
 
+    hostSolution = new float[numColumns];
+    hostSolutionView = FloatBuffer.wrap(hostSolution).asReadOnlyBuffer();
+
     // Set default upper bounds
     for (int i = 0; i < numVars; i++)
       bounds.setUpperBound(i, NO_BOUND);
@@ -106,80 +187,117 @@ public class DeviceSolver extends AbstractSolver {
       bounds.setAssignment(i, 0.0f);
 
     // Create kernels
-    for (final String name : kernelNames)
-      kernels.put(name, mgr.addKernel(groupId, filename, name));
+    for (int i = 0; i < kernelNames.length; i++)
+      kernels[i] = mgr.addKernel(groupId, filename, kernelNames[i]);
+
+    // Create a buffer referring to each row of the tableau
+    rowBuffers = new Buffer[maxNumRows];
+    for (int i = 0; i < maxNumRows; i++)
+      rowBuffers[i] = memTableau.getDeviceBuffer().withByteOffset(i * numColumns * Float.BYTES);
   }
 
   /**
    * Prepares the kernels prior to carrying out the solving procedure. This includes: (1) adding
-   * kernel arguments; (2) the initial copying of the tableau from host to device.
+   * kernel arguments; (2) the initial copying of the tableau from host to device. Since the device
+   * then holds the current tableau, later calls have no effect until the solver is reset.
    */
   @Override
   public void preSolve() {
+    if (prepared)
+      return;
+    prepared = true;
+    if (!argumentsAdded)
+      addArguments();
+    upload();
+  }
+
+  /**
+   * Copies the host tableau to the device and updates the kernels that depend on the number of
+   * rows.
+   */
+  private void upload() {
+    mgr.setArgumentScalar(groupId, kernels[PIVOT_UPDATE_INNER], 2, numRows);
+    mgr.setArgumentScalar(groupId, kernels[PIVOT_UPDATE_COLUMN], 1, numRows);
+    globalInner = new long[] {numRows, numColumns, 1};
+    globalRows = new long[] {numRows, 1, 1};
+
+    memTableau.copyHtoD();
+    hostCurrent = true;
+  }
+
+  /** Reads the device tableau back into the host array, unless it is current. */
+  private void download() {
+    if (hostCurrent)
+      return;
+    memTableau.copyDtoH();
+    hostCurrent = true;
+  }
+
+  /** Adds the arguments of every kernel. */
+  private void addArguments() {
+    argumentsAdded = true;
     // Add arguments for checkBounds kernel
     {
       final Integer[] scalars = new Integer[] {numVars, 0};
       final Memory[] buffers = new Memory[] {devBounds.memLower, devBounds.memUpper,
           devBounds.memAssigns, devBounds.memFlags, memOutput};
-      addArgs(kernels.get("check_bounds"), scalars, buffers);
+      addArgs(kernels[CHECK_BOUNDS], scalars, buffers);
     }
     // Add arguments for findSuitable kernel
     {
       final Integer[] scalars = new Integer[] {numColumns, 0, 0};
       final Memory[] buffers = new Memory[] {memTableau, devBounds.memLower, devBounds.memUpper,
           devBounds.memAssigns, devBounds.memFlags, memVarToTableau, memColToVar, memOutput};
-      addArgs(kernels.get("find_suitable"), scalars, buffers);
+      addArgs(kernels[FIND_SUITABLE], scalars, buffers);
     }
     // Add arguments for findSuitableComplete kernel
     {
       final Integer[] scalars = new Integer[] {numColumns, 0, 0};
       final Memory[] buffers = new Memory[] {memTableau, devBounds.memLower, devBounds.memUpper,
           devBounds.memAssigns, memVarToTableau};
-      addArgs(kernels.get("find_suitable_complete"), scalars, buffers);
+      addArgs(kernels[FIND_SUITABLE_COMPLETE], scalars, buffers);
+    }
+    // Add arguments for the pivotLoadAlpha and pivotStoreAlpha kernels
+    {
+      final Integer[] scalars = new Integer[] {0, 0, numColumns};
+      final Memory[] buffers = new Memory[] {memTableau, memAlpha};
+      addArgs(kernels[PIVOT_LOAD_ALPHA], scalars, buffers);
+      addArgs(kernels[PIVOT_STORE_ALPHA], scalars, buffers);
     }
     // Add arguments for pivotUpdateInner kernel
     {
-      final Integer[] scalars = new Integer[] {0, 0, 0, numRows, numColumns};
-      final Memory[] buffers = new Memory[] {memTableau};
-      addArgs(kernels.get("pivot_update_inner"), scalars, buffers);
+      final Integer[] scalars = new Integer[] {0, 0, numRows, numColumns};
+      final Memory[] buffers = new Memory[] {memAlpha, memTableau};
+      addArgs(kernels[PIVOT_UPDATE_INNER], scalars, buffers);
     }
     // Add arguments for pivotUpdateRow kernel
     {
-      final Integer[] scalars = new Integer[] {0, 0, numColumns};
-      final Memory[] buffers = new Memory[] {memTableau};
-      addArgs(kernels.get("pivot_update_row"), scalars, buffers);
+      final Integer[] scalars = new Integer[] {0, numColumns};
+      final Memory[] buffers = new Memory[] {memAlpha, memTableau};
+      addArgs(kernels[PIVOT_UPDATE_ROW], scalars, buffers);
     }
     // Add arguments for pivotUpdateColumn kernel
     {
-      final Integer[] scalars = new Integer[] {0, 0, numRows, numColumns};
-      final Memory[] buffers = new Memory[] {memTableau};
-      addArgs(kernels.get("pivot_update_column"), scalars, buffers);
+      final Integer[] scalars = new Integer[] {0, numRows, numColumns};
+      final Memory[] buffers = new Memory[] {memAlpha, memTableau};
+      addArgs(kernels[PIVOT_UPDATE_COLUMN], scalars, buffers);
     }
     // Add arguments for the two updateAssignment kernels
     {
       final Integer[] scalars = new Integer[] {numColumns};
       final Memory[] buffers =
           new Memory[] {memTableau, devBounds.memAssigns, memColToVar, memPartialSums};
-      addArgs(kernels.get("update_assignment_1"), scalars, buffers);
+      addArgs(kernels[UPDATE_ASSIGNMENT_1], scalars, buffers);
     }
     {
       final Integer[] scalars = new Integer[] {0};
       final Memory[] buffers = new Memory[] {memPartialSums};
-      addArgs(kernels.get("update_assignment_2"), scalars, buffers);
+      addArgs(kernels[UPDATE_ASSIGNMENT_2], scalars, buffers);
     }
     {
-      final Integer[] scalars = {0};
-      final Memory[] buffers = new Memory[] {memPartialSums};
-      addArgs(kernels.get("update_assignment_complete"), scalars, buffers);
-    }
-
-    // Copy tableau from host to device
-    // TODO This is inefficient. A block H2D copy should be available.
-    for (int i = 0; i < numRows; i++) {
-      for (int j = 0; j < numColumns; j++) {
-        final int offset = i * numColumns + j;
-        memTableau.asFloatMemory().set(offset, tableau[offset]);
-      }
+      final Integer[] scalars = {0, 0};
+      final Memory[] buffers = new Memory[] {memPartialSums, devBounds.memAssigns};
+      addArgs(kernels[UPDATE_ASSIGNMENT_COMPLETE], scalars, buffers);
     }
   }
 
@@ -200,74 +318,83 @@ public class DeviceSolver extends AbstractSolver {
         mgr.addArgument(groupId, kernelId, m);
   }
 
+  /**
+   * Launches the check_bounds kernel over all slices of the variables before reading back the
+   * result. Since every launch reduces into the same output with an atomic minimum, the result is
+   * the same as stopping at the first slice with a broken variable, but the launches are enqueued
+   * back-to-back and the host waits on the device only once.
+   */
   @Override
   protected int checkBounds() {
-    int kernelId = kernels.get("check_bounds");
+    int kernelId = kernels[CHECK_BOUNDS];
     int offset = 0;
     output[0] = bounds.numVars();
     memOutput.copyHtoD();
     for (int i = 0; i < numLaunches; i++, offset += numVarsPerLaunch) {
       mgr.setArgumentScalar(groupId, kernelId, 1, offset);
-      mgr.runKernel(groupId, kernelId, new long[] {numVarsPerLaunch, 1, 1},
-          new long[] {workgroupSize, 1, 1});
-      memOutput.copyDtoH();
-      if (output[0] != numVars)
-        break;
+      mgr.runKernel(groupId, kernelId, globalVars, localGroup);
     }
+    memOutput.copyDtoH();
     final int result = output[0] != numVars ? output[0] : -1;
-    Logger.getLogger("Solver").log(Level.FINE, "checkBounds: @ row " + (output[0] - numColumns)
-        + ", " + var2str(output[0]) + " is broken");
+    if (logger.isLoggable(Level.FINE))
+      logger.log(Level.FINE, "checkBounds: @ row " + (output[0] - numColumns) + ", "
+          + var2str(output[0]) + " is broken");
     return result;
   }
 
   @Override
   protected int findSuitable(final int brokenIdx) {
     // Launch kernel to find suitable variable
-    int kernelId = kernels.get("find_suitable");
+    int kernelId = kernels[FIND_SUITABLE];
     int offset = 0;
     output[0] = numVars;
     mgr.setArgumentScalar(groupId, kernelId, 1, brokenIdx);
     memOutput.copyHtoD();
-    for (int i = 0; i < numLaunches; i++, offset += numVarsPerLaunch) {
+    for (int i = 0; i < numColumnLaunches; i++, offset += numVarsPerLaunch) {
       mgr.setArgumentScalar(groupId, kernelId, 2, offset);
-      mgr.runKernel(groupId, kernelId, new long[] {numVarsPerLaunch, 1, 1},
-          new long[] {workgroupSize, 1, 1});
-      memOutput.copyDtoH();
-      if (output[0] != numVars)
-        break;
+      mgr.runKernel(groupId, kernelId, globalVars, localGroup);
     }
+    memOutput.copyDtoH();
     final int suitableIdx = output[0] != numVars ? colToVar[output[0]] : -1;
 
     if (suitableIdx >= 0) {
       // Run second kernel to complete the operation
-      kernelId = kernels.get("find_suitable_complete");
+      kernelId = kernels[FIND_SUITABLE_COMPLETE];
       mgr.setArgumentScalar(groupId, kernelId, 1, brokenIdx);
       mgr.setArgumentScalar(groupId, kernelId, 2, suitableIdx);
-      mgr.runKernel(groupId, kernelId, new long[] {1, 1, 1}, new long[] {1, 1, 1});
+      mgr.runKernel(groupId, kernelId, single, single);
     }
     // printBounds();
-    Logger.getLogger("Solver").log(Level.FINE, "findSuitable: " + var2str(suitableIdx));
+    if (logger.isLoggable(Level.FINE))
+      logger.log(Level.FINE, "findSuitable: " + var2str(suitableIdx));
     return suitableIdx;
   }
 
+  /**
+   * Enqueues the pivot kernels without waiting for them. The pivot element is copied to and from
+   * {@link #memAlpha} on the device, so the host never reads the tableau; it updates its copy of
+   * the mappings while the kernels run. Only <code>colToVar</code> and <code>varToTableau</code>
+   * are read by the kernels, so <code>rowToVar</code> is kept on the host only.
+   */
   @Override
   protected void pivot(int basicIdx, int nonbasicIdx) {
-    Logger.getLogger("Solver").log(Level.FINE,
-        "pivot: brokenIdx=" + var2str(basicIdx) + " suitableIdx=" + var2str(nonbasicIdx));
+    if (logger.isLoggable(Level.FINE))
+      logger.log(Level.FINE,
+          "pivot: brokenIdx=" + var2str(basicIdx) + " suitableIdx=" + var2str(nonbasicIdx));
     final int pivotRow = varToTableau[basicIdx];
     final int pivotCol = varToTableau[nonbasicIdx];
-    final int alphaIdx = pivotRow * numColumns + pivotCol;
 
     // Save pivot element
-    final float alpha = memTableau.asFloatMemory().get(alphaIdx);
+    pivotAlpha(PIVOT_LOAD_ALPHA, pivotRow, pivotCol);
 
     // Update the tableau
-    pivotUpdateInner(alpha, pivotRow, pivotCol);
-    pivotUpdateRow(alpha, pivotRow);
-    pivotUpdateColumn(alpha, pivotCol);
+    pivotUpdateInner(pivotRow, pivotCol);
+    pivotUpdateRow(pivotRow);
+    pivotUpdateColumn(pivotCol);
 
     // Update pivot element
-    memTableau.asFloatMemory().set(alphaIdx, 1 / alpha);
+    pivotAlpha(PIVOT_STORE_ALPHA, pivotRow, pivotCol);
+    hostCurrent = false;
 
     // Swap the basic and nonbasic variables
     colToVar[pivotCol] = basicIdx;
@@ -277,70 +404,58 @@ public class DeviceSolver extends AbstractSolver {
 
     // Copy update mappings to device
     memColToVar.copyHtoD();
-    memRowToVar.copyHtoD();
     memVarToTableau.copyHtoD();
   }
 
   /** Helper method for pivot operation. */
-  private void pivotUpdateInner(final float alpha, final int row, final int col) {
-    final int kernelId = kernels.get("pivot_update_inner");
-    mgr.setArgumentScalar(groupId, kernelId, 0, alpha);
-    mgr.setArgumentScalar(groupId, kernelId, 1, row);
-    mgr.setArgumentScalar(groupId, kernelId, 2, col);
-    final long global[] = new long[] {numRows, numColumns, 1};
-    final long local[] = new long[] {32, 32, 1};
-    mgr.runKernel(groupId, kernels.get("pivot_update_inner"), global, local);
+  private void pivotAlpha(final int kernel, final int row, final int col) {
+    final int kernelId = kernels[kernel];
+    mgr.setArgumentScalar(groupId, kernelId, 0, row);
+    mgr.setArgumentScalar(groupId, kernelId, 1, col);
+    mgr.runKernel(groupId, kernelId, single, single);
+  }
+
+  /** Helper method for pivot operation. */
+  private void pivotUpdateInner(final int row, final int col) {
+    final int kernelId = kernels[PIVOT_UPDATE_INNER];
+    mgr.setArgumentScalar(groupId, kernelId, 0, row);
+    mgr.setArgumentScalar(groupId, kernelId, 1, col);
+    mgr.runKernel(groupId, kernelId, globalInner, localInner);
   }
 
   /** Helper method for pivot operation. */
-  private void pivotUpdateRow(final float alpha, final int row) {
-    final int kernelId = kernels.get("pivot_update_row");
-    mgr.setArgumentScalar(groupId, kernelId, 0, alpha);
-    mgr.setArgumentScalar(groupId, kernelId, 1, row);
-    final long global[] = new long[] {numColumns, 1, 1};
-    final long local[] = new long[] {workgroupSize, 1, 1};
-    mgr.runKernel(groupId, kernelId, global, local);
+  private void pivotUpdateRow(final int row) {
+    final int kernelId = kernels[PIVOT_UPDATE_ROW];
+    mgr.setArgumentScalar(groupId, kernelId, 0, row);
+    mgr.runKernel(groupId, kernelId, globalColumns, localGroup);
   }
 
   /** Helper method for pivot operation. */
-  private void pivotUpdateColumn(final float alpha, final int col) {
-    final int kernelId = kernels.get("pivot_update_column");
-    mgr.setArgumentScalar(groupId, kernelId, 0, alpha);
-    mgr.setArgumentScalar(groupId, kernelId, 1, col);
-    final long global[] = new long[] {numRows, 1, 1};
-    final long local[] = new long[] {workgroupSize, 1, 1};
-    mgr.runKernel(groupId, kernels.get("pivot_update_column"), global, local);
+  private void pivotUpdateColumn(final int col) {
+    final int kernelId = kernels[PIVOT_UPDATE_COLUMN];
+    mgr.setArgumentScalar(groupId, kernelId, 0, col);
+    mgr.runKernel(groupId, kernelId, globalRows, localGroup);
   }
 
   @Override
   protected void updateAssignment() {
-    for (int i = 0; i < numRows; i++) {
-      final Buffer row = memTableau.getDeviceBuffer().withByteOffset(i * numColumns * Float.BYTES);
-      updateAssignmentRow(i, row);
-    }
+    for (int i = 0; i < numRows; i++)
+      updateAssignmentRow(i, rowBuffers[i]);
   }
 
+  /**
+   * Enqueues the reduction of one row. The final kernel writes the sum directly into the
+   * assignment of the row's basic variable, so the rows are reduced back-to-back without a round
+   * trip to the host.
+   */
   private void updateAssignmentRow(final int rowIdx, final Buffer row) {
-    float a = 0.0f;
-    if (workgroupSize == 1) {
-      for (int i = 0; i < numColumns; i++)
-        a += memPartialSums.asFloatMemory().get(i);      
-    } else {
-      int numItems = updateAssignment1(row, numColumns);
-      if (numItems > 1) {
-        while (numItems > workgroupSize) {
-          numItems = updateAssignment2(numItems);
-        }
-        updateAssignmentComplete(numItems);
-      }
-      a = memPartialSums.asFloatMemory().get(0);
-    }
-    
-    // Write the computed assignment to device memory
-    devBounds.setAssignment(rowToVar[rowIdx], a);
+    updateAssignment1(row, numColumns);
+    for (int i = 0; i < reduceItems.length; i++)
+      updateAssignment2(i);
+    updateAssignmentComplete(rowToVar[rowIdx]);
 
-    Logger.getLogger("Solver").log(Level.FINE,
-        "updateAssignment (" + var2str(rowToVar[rowIdx]) + "): " + a);
+    if (logger.isLoggable(Level.FINE))
+      logger.log(Level.FINE, "updateAssignment (" + var2str(rowToVar[rowIdx]) + ")");
   }
 
   /**
@@ -349,41 +464,118 @@ public class DeviceSolver extends AbstractSolver {
    * workgroup is stored in the output buffer (See {@link #memOutput}).
    * 
    * @param numItems the number of items to be reduced
-   * @return the number of items in the output to be reduced
    */
-  private int updateAssignment1(final Buffer row, final int numItems) {
-    final int kernelId = kernels.get("update_assignment_1");
-    final long global[] = new long[] {numColumns, 1, 1};
-    final long local[] = new long[] {workgroupSize, 1, 1};
+  private void updateAssignment1(final Buffer row, final int numItems) {
+    final int kernelId = kernels[UPDATE_ASSIGNMENT_1];
     mgr.setArgumentScalar(groupId, kernelId, 0, numItems);
     mgr.setArgument(groupId, kernelId, 1, row);
-    mgr.runKernel(groupId, kernelId, global, local);
-    return DeviceSolver.numWorkgroups(numItems, workgroupSize);
+    mgr.runKernel(groupId, kernelId, globalColumns, localGroup);
   }
 
   /**
-   * Repeatedly applies the parallel reduction step.
+   * Applies step <code>i</code> of the parallel reduction (See {@link #reduceItems}).
    */
-  private int updateAssignment2(final int numItems) {
-    assert numItems > workgroupSize;
-    final int kernelId = kernels.get("update_assignment_2");
-    final long global[] = new long[] {numItems, 1, 1};
-    final long local[] = new long[] {workgroupSize, 1, 1};
-    mgr.setArgumentScalar(groupId, kernelId, 0, numItems);
-    mgr.runKernel(groupId, kernelId, global, local);
-    return DeviceSolver.numWorkgroups(numItems, workgroupSize);
+  private void updateAssignment2(final int i) {
+    final int kernelId = kernels[UPDATE_ASSIGNMENT_2];
+    mgr.setArgumentScalar(groupId, kernelId, 0, reduceItems[i]);
+    mgr.runKernel(groupId, kernelId, reduceGlobal[i], localGroup);
   }
 
   /**
-   * Launches one workgroup to complete the reduction.
+   * Launches one workgroup to complete the reduction and store the result as the assignment of
+   * variable <code>var</code>.
    */
-  private void updateAssignmentComplete(final int numItems) {
-    assert numItems <= workgroupSize;
-    final int kernelId = kernels.get("update_assignment_complete");
-    final long global[] = new long[] {numItems, 1, 1};
-    final long local[] = new long[] {numItems, 1, 1};
-    mgr.setArgumentScalar(groupId, kernelId, 0, numItems);
-    mgr.runKernel(groupId, kernelId, global, local);
+  private void updateAssignmentComplete(final int var) {
+    final int kernelId = kernels[UPDATE_ASSIGNMENT_COMPLETE];
+    mgr.setArgumentScalar(groupId, kernelId, 0, (int) completeDims[0]);
+    mgr.setArgumentScalar(groupId, kernelId, 1, var);
+    mgr.runKernel(groupId, kernelId, completeDims, completeDims);
+  }
+
+  /**
+   * Once the device holds the tableau, a row added by <code>addConstraint</code> is copied to the
+   * device and the kernels that depend on the number of rows are updated.
+   */
+  @Override
+  protected void rowAdded(final int row) {
+    if (!prepared)
+      return;
+    final int offset = row * numColumns;
+    for (int j = 0; j < numColumns; j++)
+      memTableau.asFloatMemory().set(offset + j, Float.intBitsToFloat(tableauBits[offset + j]));
+    mgr.setArgumentScalar(groupId, kernels[PIVOT_UPDATE_INNER], 2, numRows);
+    mgr.setArgumentScalar(groupId, kernels[PIVOT_UPDATE_COLUMN], 1, numRows);
+    globalInner = new long[] {numRows, numColumns, 1};
+    globalRows = new long[] {numRows, 1, 1};
+  }
+
+  /**
+   * {@inheritDoc} The tableau is copied to the device again by the next call to
+   * {@link #preSolve()}.
+   */
+  @Override
+  public void reset() {
+    prepared = false;
+    hostCurrent = true;
+    super.reset();
+  }
+
+  /**
+   * {@inheritDoc} The row is stored in the host array, from which {@link #rowAdded(int)} or
+   * {@link #preSolve()} copies it to the device.
+   */
+  @Override
+  protected void setRow(final int row, final float[] values, final int offset) {
+    for (int j = 0, k = row * numColumns; j < numColumns; j++, k++)
+      tableauBits[k] = Float.floatToRawIntBits(values[offset + j]);
+  }
+
+  /** {@inheritDoc} The whole tableau is read back from the device in one transfer. */
+  @Override
+  protected void getRow(final int row, final float[] dest, final int offset) {
+    download();
+    for (int j = 0, k = row * numColumns; j < numColumns; j++, k++)
+      dest[offset + j] = Float.intBitsToFloat(tableauBits[k]);
+  }
+
+  /**
+   * {@inheritDoc} A refactorization writes a dense tableau, which {@link #basisChanged()} stores
+   * in the host array and then releases.
+   */
+  @Override
+  protected float[] hostTableau() {
+    if (tableau.length == 0)
+      tableau = new float[maxNumRows * numColumns];
+    return tableau;
+  }
+
+  /**
+   * {@inheritDoc} The host tableau is authoritative after a restore or a refactorization, so once
+   * the device holds the tableau, it is copied to the device again along with the maps.
+   */
+  @Override
+  protected void basisChanged() {
+    if (tableau.length > 0) {
+      for (int i = 0; i < numRows; i++)
+        setRow(i, tableau, i * numColumns);
+      tableau = NO_TABLEAU;
+      hostCurrent = true;
+    }
+    memColToVar.copyHtoD();
+    memVarToTableau.copyHtoD();
+    if (prepared)
+      upload();
+  }
+
+  /**
+   * {@inheritDoc} The device holds the assignments, so they are read back into a host array in one
+   * transfer, and the view holds them as of this call.
+   */
+  @Override
+  public FloatBuffer solutionView() {
+    solutionInto(hostSolution);
+    hostSolutionView.clear();
+    return hostSolutionView;
   }
 
   @Override
@@ -394,6 +586,8 @@ public class DeviceSolver extends AbstractSolver {
 
   @Override
   protected float getTableauEntry(int row, int col) {
+    if (hostCurrent)
+      return Float.intBitsToFloat(tableauBits[row * numColumns + col]);
     return memTableau.asFloatMemory().get(row * numColumns + col);
   }
 
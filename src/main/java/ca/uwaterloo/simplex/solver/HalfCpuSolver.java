@@ -0,0 +1,357 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.util.logging.Level;
+
+/**
+ * A CPU solver that stores the tableau as 16-bit floating-point values. Dense pivots stream the
+ * whole tableau through memory, so halving the size of each coefficient halves the traffic of
+ * every pivot. Every coefficient is converted to a <code>float</code> when it is read and all of
+ * the arithmetic is done in <code>float</code>, as in {@link CpuSolver}, so only the stored values
+ * are rounded.
+ *
+ * <p>
+ * Since the rounding errors of a 16-bit tableau grow quickly, residual checks (see
+ * {@link #setResidualCheck(int, float)}) are enabled by default. When a check fails, the tableau
+ * is rebuilt from the original constraints in full precision and the solver is <i>promoted</i>:
+ * from then on it behaves exactly like a {@link CpuSolver}. The solver is also promoted, in the
+ * same way, before a pivot that could produce a value outside the range of the format. The
+ * original constraints are recorded in full precision, before they are converted to 16 bits.
+ * </p>
+ *
+ * <p>
+ * Until it is promoted, the solver keeps no host tableau: added and restored rows are converted
+ * as they are stored, and the 4-byte host tableau is only allocated by a promotion (and released
+ * by a reset). A tableau thus takes 2 bytes per entry, plus the 4 bytes of the original
+ * constraints while residual checks are enabled, against the 4 (or 8) bytes of a
+ * <code>CpuSolver</code>. The conversions are not free: on a 2000x2000 dense tableau, a bfloat16
+ * pivot takes about as long as a <code>CpuSolver</code> pivot, and an fp16 pivot about twice as
+ * long.
+ * </p>
+ *
+ * <p>
+ * The sparse representation of <code>CpuSolver</code> is not used while the solver is not
+ * promoted.
+ * </p>
+ */
+public final class HalfCpuSolver extends CpuSolver {
+
+  /** A 16-bit floating-point format. The conversions round to the nearest value, ties to even. */
+  public enum Format {
+
+    /** IEEE 754 binary16: 10 bits of mantissa, with values up to 65504. */
+    FP16(65504.0f) {
+      @Override
+      public short encode(final float value) {
+        return floatToFp16(value);
+      }
+
+      @Override
+      public float decode(final short value) {
+        return FP16_VALUES[value & 0xffff];
+      }
+    },
+
+    /** bfloat16: the upper half of a float, with 7 bits of mantissa and the range of a float. */
+    BFLOAT16(Float.MAX_VALUE) {
+      @Override
+      public short encode(final float value) {
+        return floatToBfloat16(value);
+      }
+
+      @Override
+      public float decode(final short value) {
+        return Float.intBitsToFloat((value & 0xffff) << 16);
+      }
+    };
+
+    private final float max;
+
+    private Format(final float max) {
+      this.max = max;
+    }
+
+    /** Returns the largest finite value of the format. */
+    public float max() {
+      return max;
+    }
+
+    /** Returns the 16-bit value nearest to <code>value</code>. */
+    public abstract short encode(float value);
+
+    /** Returns the exact value of a 16-bit value. */
+    public abstract float decode(short value);
+
+  }
+
+  /** The value of every fp16 bit pattern, which is cheaper to look up than to compute. */
+  private final static float[] FP16_VALUES = new float[1 << 16];
+
+  static {
+    for (int bits = 0; bits < FP16_VALUES.length; bits++) {
+      final int sign = (bits & 0x8000) << 16;
+      final int exp = (bits >>> 10) & 0x1f;
+      final int mant = bits & 0x3ff;
+      if (exp == 0x1f) {
+        FP16_VALUES[bits] = Float.intBitsToFloat(sign | 0x7f800000 | (mant << 13));
+      } else if (exp == 0) {
+        final float subnormal = mant * 0x1p-24f;
+        FP16_VALUES[bits] = sign != 0 ? -subnormal : subnormal;
+      } else {
+        FP16_VALUES[bits] = Float.intBitsToFloat(sign | ((exp + 112) << 23) | (mant << 13));
+      }
+    }
+  }
+
+  /** Rounds a float to the nearest fp16 value. */
+  private static short floatToFp16(final float value) {
+    final int bits = Float.floatToRawIntBits(value);
+    final int sign = (bits >>> 16) & 0x8000;
+    final int abs = bits & 0x7fffffff;
+    if (abs >= 0x38800000 && abs < 0x477ff000) {
+      // Normal results: round the mantissa to 10 bits, carrying into the exponent if needed
+      final int rounded = abs + 0xfff + ((abs >>> 13) & 1);
+      return (short) (sign | ((rounded - 0x38000000) >>> 13));
+    }
+    final int exp = abs >>> 23;
+    if (exp == 0xff)
+      return (short) (sign | 0x7c00 | ((abs & 0x7fffff) != 0 ? 0x200 : 0));
+    if (abs >= 0x477ff000)
+      return (short) (sign | 0x7c00);
+    // Subnormal results, or too small to be represented
+    final int e = exp - 112;
+    if (e < -10)
+      return (short) sign;
+    final int mant = (abs & 0x7fffff) | 0x800000;
+    final int shift = 14 - e;
+    int half = mant >>> shift;
+    final int rem = mant & ((1 << shift) - 1);
+    final int mid = 1 << (shift - 1);
+    if (rem > mid || (rem == mid && (half & 1) != 0))
+      half++;
+    return (short) (sign | half);
+  }
+
+  /** Rounds a float to the nearest bfloat16 value. */
+  private static short floatToBfloat16(final float value) {
+    final int bits = Float.floatToRawIntBits(value);
+    if ((bits & 0x7fffffff) > 0x7f800000)
+      return (short) ((bits >>> 16) | 0x40);
+    return (short) ((bits + 0x7fff + ((bits >>> 16) & 1)) >>> 16);
+  }
+
+  /** The number of pivots between two residual checks, unless changed. */
+  public final static int DEFAULT_RESIDUAL_INTERVAL = 32;
+
+  /** The largest relative residual tolerated before the solver is promoted, unless changed. */
+  public final static float DEFAULT_RESIDUAL_TOLERANCE = 1e-4f;
+
+  private final static float[] NO_TABLEAU = new float[0];
+
+  private final Format format;
+  private final boolean bfloat;
+
+  /** The 16-bit tableau, used until the solver is promoted. */
+  private final short[] half;
+
+  private boolean promoted = false;
+
+  /** An upper bound of the magnitude of the values in {@link #half}. */
+  private float maxMagnitude = 0.0f;
+
+  /** The pivot row, decoded once per pivot. */
+  private final float[] pivotRow;
+
+  HalfCpuSolver(final int maxNumBasic, final int numNonbasic, final Format format) {
+    super(maxNumBasic, numNonbasic, NO_TABLEAU);
+    this.format = format;
+    bfloat = format == Format.BFLOAT16;
+    half = new short[maxNumBasic * numNonbasic];
+    pivotRow = new float[numNonbasic];
+    setSparseThreshold(0.0f);
+    setResidualCheck(DEFAULT_RESIDUAL_INTERVAL, DEFAULT_RESIDUAL_TOLERANCE);
+  }
+
+  /** Returns a solver that stores its tableau in the given format. */
+  public static HalfCpuSolver create(final int maxNumBasic, final int numNonbasic,
+      final Format format) {
+    return new HalfCpuSolver(maxNumBasic, numNonbasic, format);
+  }
+
+  /** Returns the format of the tableau. */
+  public Format format() {
+    return format;
+  }
+
+  /** Returns <code>true</code> if the solver has switched to a full-precision tableau. */
+  public boolean isPromoted() {
+    return promoted;
+  }
+
+  /*
+   * The conversions of the format, which the hot loops call directly rather than through the enum.
+   */
+  private float decode(final short value) {
+    return bfloat ? Float.intBitsToFloat((value & 0xffff) << 16) : FP16_VALUES[value & 0xffff];
+  }
+
+  private short encode(final float value) {
+    return bfloat ? floatToBfloat16(value) : floatToFp16(value);
+  }
+
+  /**
+   * Switches to the host tableau, rebuilt from the original constraints if residual checks are
+   * enabled, and holding the current 16-bit values otherwise.
+   */
+  private void promote() {
+    if (rebuildTableau())
+      return;
+    final float[] tableau = hostTableau();
+    for (int i = 0, n = numRows * numColumns; i < n; i++)
+      tableau[i] = decode(half[i]);
+    promoted = true;
+    logger.log(Level.FINE, "HalfCpuSolver: promoted to full precision");
+  }
+
+  /** {@inheritDoc} Until the solver is promoted, the row is converted to 16 bits. */
+  @Override
+  protected void setRow(final int row, final float[] values, final int offset) {
+    if (promoted) {
+      super.setRow(row, values, offset);
+      return;
+    }
+    for (int j = 0, idx = row * numColumns; j < numColumns; j++, idx++) {
+      final float value = values[offset + j];
+      half[idx] = encode(value);
+      maxMagnitude = Math.max(maxMagnitude, Math.abs(value));
+    }
+  }
+
+  /** {@inheritDoc} The host tableau is allocated on the first promotion. */
+  @Override
+  protected float[] hostTableau() {
+    if (tableau.length == 0)
+      tableau = new float[maxNumRows * numColumns];
+    return tableau;
+  }
+
+  /**
+   * Performs the pivot of {@link CpuSolver#pivot(int, int)}, converting each value as it is read
+   * and written. If the pivot could overflow the format, the solver is promoted first.
+   */
+  @Override
+  protected void pivot(final int basicIdx, final int nonbasicIdx) {
+    if (promoted) {
+      super.pivot(basicIdx, nonbasicIdx);
+      return;
+    }
+    final int row = varToTableau[basicIdx];
+    final int col = varToTableau[nonbasicIdx];
+    final int rowOffset = row * numColumns;
+    final float alpha = decode(half[rowOffset + col]);
+
+    // Bound the magnitude of the results before overwriting anything
+    float rowMax = 0.0f;
+    for (int j = 0; j < numColumns; j++) {
+      pivotRow[j] = decode(half[rowOffset + j]);
+      rowMax = Math.max(rowMax, Math.abs(pivotRow[j]));
+    }
+    float colMax = 0.0f;
+    for (int i = 0; i < numRows; i++)
+      colMax = Math.max(colMax, Math.abs(decode(half[i * numColumns + col])));
+    final float a = Math.abs(alpha);
+    final float edge = Math.max(rowMax, Math.max(colMax, 1.0f)) / a;
+    float bound = Math.max(maxMagnitude + rowMax * colMax / a, edge);
+    if (!(bound <= format.max())) {
+      // The running bound only grows, so measure the tableau before giving up on the format
+      maxMagnitude = 0.0f;
+      for (int i = 0, size = numRows * numColumns; i < size; i++)
+        maxMagnitude = Math.max(maxMagnitude, Math.abs(decode(half[i])));
+      bound = Math.max(maxMagnitude + rowMax * colMax / a, edge);
+      if (!(bound <= format.max())) {
+        // findSuitable() has already moved the broken variable to its bound, which rebuilding the
+        // tableau would undo by recomputing the basic variables
+        final float assignment = bounds.getAssignment(basicIdx);
+        promote();
+        bounds.setAssignment(basicIdx, assignment);
+        super.pivot(basicIdx, nonbasicIdx);
+        return;
+      }
+    }
+
+    final short[] half = this.half;
+    final float[] pivotRow = this.pivotRow;
+    final int n = numColumns;
+    for (int i = 0; i < numRows; i++) {
+      if (i == row)
+        continue;
+      final int offset = i * n;
+      final float gamma = decode(half[offset + col]);
+      if (gamma == 0.0f)
+        continue;
+      // The pivot column is overwritten below, so it need not be skipped. The quotient is taken
+      // once per row, which rounds differently from CpuSolver by far less than the format does.
+      final float factor = gamma / alpha;
+      if (bfloat) {
+        // Arithmetic yields only quiet NaNs, which round correctly without the NaN check
+        for (int j = 0; j < n; j++) {
+          final int bits = Float.floatToRawIntBits(
+              Float.intBitsToFloat(half[offset + j] << 16) - pivotRow[j] * factor);
+          half[offset + j] = (short) ((bits + 0x7fff + ((bits >>> 16) & 1)) >>> 16);
+        }
+      } else {
+        for (int j = 0; j < n; j++)
+          half[offset + j] = floatToFp16(
+              FP16_VALUES[half[offset + j] & 0xffff] - pivotRow[j] * factor);
+      }
+      half[offset + col] = encode(factor);
+    }
+    for (int j = 0; j < numColumns; j++)
+      half[rowOffset + j] = encode(-pivotRow[j] / alpha);
+    half[rowOffset + col] = encode(1.0f / alpha);
+    maxMagnitude = bound;
+
+    swap(basicIdx, nonbasicIdx);
+  }
+
+  @Override
+  protected void updateAssignment() {
+    if (promoted) {
+      super.updateAssignment();
+      return;
+    }
+    for (int i = 0; i < numRows; i++) {
+      float accum = 0.0f;
+      for (int j = 0, offset = i * numColumns; j < numColumns; j++)
+        accum += bounds.getAssignment(colToVar[j]) * decode(half[offset + j]);
+      bounds.setAssignment(rowToVar[i], accum);
+    }
+  }
+
+  @Override
+  protected float getTableauEntry(final int row, final int col) {
+    if (promoted)
+      return super.getTableauEntry(row, col);
+    return decode(half[row * numColumns + col]);
+  }
+
+  /**
+   * {@inheritDoc} A reset solver stores its tableau in 16 bits again, and releases its host
+   * tableau.
+   */
+  @Override
+  public void reset() {
+    promoted = false;
+    maxMagnitude = 0.0f;
+    tableau = NO_TABLEAU;
+    super.reset();
+  }
+
+  /** The rebuilt tableau is kept in full precision, which promotes the solver. */
+  @Override
+  protected void tableauReplaced() {
+    promoted = true;
+    logger.log(Level.FINE, "HalfCpuSolver: promoted to a tableau rebuilt in full precision");
+    super.tableauReplaced();
+  }
+
+}
@@ -0,0 +1,31 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.util.stream.IntStream;
+
+/**
+ * A multi-threaded variant of the <code>CpuSolver</code>. The row-wise loops of the pivot and
+ * updateAssignment operations are split across the common fork/join pool, while checkBounds and
+ * findSuitable remain sequential since they stop at the first (smallest) candidate.
+ *
+ * <p>
+ * Each row is still updated by exactly one thread using the same arithmetic as the sequential
+ * solver, so both solvers produce identical tableaux and assignments.
+ * </p>
+ */
+public class ParallelCpuSolver extends CpuSolver {
+
+  ParallelCpuSolver(final int maxNumBasic, final int numNonbasic) {
+    super(maxNumBasic, numNonbasic);
+  }
+
+  @Override
+  protected void updateInner(final float alpha, final int row, final int col) {
+    IntStream.range(0, numRows).parallel().forEach(i -> updateInnerRow(alpha, row, col, i));
+  }
+
+  @Override
+  protected void updateAssignment() {
+    IntStream.range(0, numRows).parallel().forEach(this::updateAssignmentRow);
+  }
+
+}
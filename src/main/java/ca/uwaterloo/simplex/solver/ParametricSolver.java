@@ -0,0 +1,212 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Solves one constraint matrix under many different sets of bounds. The matrix is loaded once
+ * into an immutable base tableau, which is shared by any number of {@link View}s. A view is a
+ * solver whose rows refer to the base tableau until the first pivot that changes them, at which
+ * point only the changed row is copied. Since a pivot leaves every row with a zero in the pivot
+ * column untouched, a view of a sparse matrix typically copies a small fraction of the rows, and
+ * solving <code>N</code> bound sets costs one tableau plus the copied rows instead of
+ * <code>N</code> tableaus.
+ *
+ * <p>
+ * Views may be used concurrently, each by one thread at a time. The copied rows of a view are
+ * kept when it is {@link View#reset() reset}, so that a view solving one bound set after another
+ * stops allocating after the first.
+ * </p>
+ */
+public final class ParametricSolver {
+
+  private final int numRows;
+  private final int numColumns;
+  private final float[][] base;
+  private final float[] lower;
+  private final float[] upper;
+
+  /**
+   * Loads the constraints of a problem into the base tableau. The bounds of the problem become
+   * the default bounds of every view. Later changes to the problem do not affect this solver.
+   */
+  public ParametricSolver(final Problem problem) {
+    numRows = problem.numRows();
+    numColumns = problem.numColumns();
+    base = new float[numRows][numColumns];
+    for (int i = 0; i < numRows; i++)
+      for (int j = 0; j < numColumns; j++)
+        base[i][j] = problem.getCoefficient(i, j);
+    lower = new float[problem.numVars()];
+    upper = new float[problem.numVars()];
+    for (int i = 0; i < lower.length; i++) {
+      lower[i] = problem.getLowerBound(i);
+      upper[i] = problem.getUpperBound(i);
+    }
+  }
+
+  /** Returns the number of variables, including the slack variables. */
+  public int numVars() {
+    return lower.length;
+  }
+
+  /**
+   * Returns a new view of the base tableau with the default bounds.
+   */
+  public View view() {
+    return new View(this);
+  }
+
+  /**
+   * Solves the matrix under each set of bounds in parallel, using one view per worker thread.
+   *
+   * @param lowers The lower bounds of every variable, one array of length {@link #numVars()} per
+   *        bound set.
+   * @param uppers The upper bounds, in the same layout as <code>lowers</code>.
+   * @return the results, where the index of each result is the position of its bound set
+   */
+  public Result[] solveAll(final float[][] lowers, final float[][] uppers) {
+    if (lowers.length != uppers.length)
+      throw new RuntimeException("Invalid number of bound sets.");
+    final Result[] results = new Result[lowers.length];
+    final ThreadLocal<View> views = ThreadLocal.withInitial(this::view);
+    IntStream.range(0, lowers.length).parallel().forEach(k -> {
+      final View view = views.get();
+      view.reset();
+      if (lowers[k].length != lower.length || uppers[k].length != upper.length)
+        throw new RuntimeException("Invalid bound set size.");
+      for (int i = 0; i < lower.length; i++)
+        view.setBounds(i, lowers[k][i], uppers[k][i]);
+      if (view.solve())
+        results[k] = new Result(k, true, view.solutionInto(new float[numColumns]));
+      else
+        results[k] = new Result(k, false, null);
+    });
+    return results;
+  }
+
+  /**
+   * A copy-on-write solver over the base tableau of a {@link ParametricSolver}. The constraints
+   * are fixed; only the bounds may be changed.
+   */
+  public static final class View extends CpuSolver {
+
+    private final ParametricSolver parent;
+
+    /** The current rows, each of which is either a base row or the copy of this view. */
+    private final float[][] rows;
+
+    /** The copy of each row, allocated on the first write and reused after a reset. */
+    private final float[][] copies;
+
+    private View(final ParametricSolver parent) {
+      super(parent.numRows, parent.numColumns, new float[0]);
+      this.parent = parent;
+      rows = parent.base.clone();
+      copies = new float[parent.numRows][];
+      numRows = parent.numRows;
+      applyDefaultBounds();
+    }
+
+    private void applyDefaultBounds() {
+      for (int i = 0; i < parent.lower.length; i++)
+        bounds.setBounds(i, parent.lower[i], parent.upper[i]);
+    }
+
+    /** Returns the number of rows that this view has copied from the base tableau. */
+    public int numCopiedRows() {
+      int copied = 0;
+      for (int i = 0; i < numRows; i++)
+        if (rows[i] != parent.base[i])
+          copied++;
+      return copied;
+    }
+
+    /** Returns row <code>i</code>, copying it from the base tableau if it has not been yet. */
+    private float[] writable(final int i) {
+      float[] r = rows[i];
+      if (r == parent.base[i]) {
+        if (copies[i] == null)
+          copies[i] = new float[numColumns];
+        System.arraycopy(r, 0, copies[i], 0, numColumns);
+        rows[i] = r = copies[i];
+      }
+      return r;
+    }
+
+    /**
+     * Restores the view to the base tableau and the default bounds, so that it can solve another
+     * bound set.
+     */
+    @Override
+    public void reset() {
+      super.reset();
+      numRows = parent.numRows;
+      System.arraycopy(parent.base, 0, rows, 0, numRows);
+      applyDefaultBounds();
+    }
+
+    /**
+     * @throws RuntimeException Always, since the matrix of a view is fixed.
+     */
+    @Override
+    public void addConstraint(final List<Float> cs) {
+      throw new RuntimeException("The matrix of a parametric solver is fixed.");
+    }
+
+    /** Views have no host tableau to rebuild, so residual checks are not available. */
+    @Override
+    public void setResidualCheck(final int interval, final float tolerance) {
+      throw new RuntimeException("Residual checks are not available for parametric views.");
+    }
+
+    /**
+     * Performs the same arithmetic as {@link CpuSolver#pivot(int, int)}, copying each row on its
+     * first write.
+     */
+    @Override
+    protected void pivot(final int basicIdx, final int nonbasicIdx) {
+      final int row = varToTableau[basicIdx];
+      final int col = varToTableau[nonbasicIdx];
+      final float[] pivotRow = writable(row);
+      final float alpha = pivotRow[col];
+
+      for (int i = 0; i < numRows; i++) {
+        if (i == row)
+          continue;
+        final float gamma = rows[i][col];
+        if (gamma == 0.0f)
+          continue;
+        final float[] r = writable(i);
+        for (int j = 0; j < numColumns; j++) {
+          if (j != col)
+            r[j] = r[j] - (pivotRow[j] * gamma) / alpha;
+        }
+        r[col] = gamma / alpha;
+      }
+      for (int j = 0; j < numColumns; j++)
+        pivotRow[j] = -pivotRow[j] / alpha;
+      pivotRow[col] = 1.0f / alpha;
+
+      swap(basicIdx, nonbasicIdx);
+    }
+
+    @Override
+    protected void updateAssignment() {
+      for (int i = 0; i < numRows; i++) {
+        final float[] r = rows[i];
+        float accum = 0.0f;
+        for (int j = 0; j < numColumns; j++)
+          accum += bounds.getAssignment(colToVar[j]) * r[j];
+        bounds.setAssignment(rowToVar[i], accum);
+      }
+    }
+
+    @Override
+    protected float getTableauEntry(final int row, final int col) {
+      return rows[row][col];
+    }
+
+  }
+
+}
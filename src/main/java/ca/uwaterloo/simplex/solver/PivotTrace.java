@@ -0,0 +1,253 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The sequence of pivots performed by one call to <code>solve()</code>, together with the state of
+ * the solver before the first pivot, so that the pivots of an instance can be replayed on any
+ * backend without the selection of the broken and suitable variables (see
+ * {@link AbstractSolver#recordTrace(Path)} and {@link #replay(AbstractSolver)}). Besides the two
+ * variables, each pivot records the assignment that <code>findSuitable()</code> gave the broken
+ * variable, which becomes nonbasic.
+ *
+ * <p>
+ * Only the pivots are recorded. If residual checks (see
+ * {@link AbstractSolver#setResidualCheck(int, float)}) rebuild the tableau during the recorded
+ * solve, the replay continues from its own tableau instead, so its assignments may differ from
+ * those of the recorded solve in the last digits; the pivots themselves are the same.
+ * </p>
+ *
+ * <p>
+ * A trace is a little-endian binary file with the following layout:
+ * </p>
+ *
+ * <pre>
+ * int   magic, version
+ * ...   checkpoint             (the state before the first pivot, see SolverCheckpoint)
+ * int   numPivots
+ * (int brokenIdx, int suitableIdx, float assignment)[numPivots]
+ * </pre>
+ */
+public final class PivotTrace {
+
+  private final static int MAGIC = 0x50545243; // "PTRC"
+  private final static int VERSION = 1;
+  private final static int HEADER_BYTES = 2 * Integer.BYTES;
+
+  /** The number of values recorded per pivot. */
+  private final static int PIVOT_VALUES = 3;
+
+  private final Path path;
+  private final int maxNumRows;
+  private final int numColumns;
+  private final int numPivots;
+
+  /** The values of each pivot: <code>(brokenIdx, suitableIdx, assignment)</code>. */
+  private final int[] pivots;
+
+  private PivotTrace(final Path path, final int maxNumRows, final int numColumns,
+      final int[] pivots) {
+    this.path = path;
+    this.maxNumRows = maxNumRows;
+    this.numColumns = numColumns;
+    this.numPivots = pivots.length / PIVOT_VALUES;
+    this.pivots = pivots;
+  }
+
+  /**
+   * Reads a trace written by a recording solver.
+   *
+   * @throws RuntimeException If the file is not a complete trace.
+   */
+  public static PivotTrace read(final Path path) throws IOException {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (ch.size() < HEADER_BYTES)
+        throw new RuntimeException("Truncated pivot trace.");
+      final ByteBuffer header = map(ch, 0, HEADER_BYTES);
+      if (header.getInt(0) != MAGIC)
+        throw new RuntimeException("Not a pivot trace.");
+      if (header.getInt(4) != VERSION)
+        throw new RuntimeException("Unsupported pivot trace version.");
+      final ByteBuffer checkpoint = SolverCheckpoint.header(ch, HEADER_BYTES);
+      final int maxNumRows = checkpoint.getInt(8);
+      final int numColumns = checkpoint.getInt(12);
+      final long end = SolverCheckpoint.end(ch, HEADER_BYTES);
+      if (ch.size() < end + Integer.BYTES)
+        throw new RuntimeException("Truncated pivot trace.");
+      final int numPivots = map(ch, end, Integer.BYTES).getInt(0);
+      final long pivotBytes = (long) PIVOT_VALUES * numPivots * Integer.BYTES;
+      if (numPivots < 0 || ch.size() != end + Integer.BYTES + pivotBytes)
+        throw new RuntimeException("Truncated pivot trace.");
+      final int[] pivots = new int[PIVOT_VALUES * numPivots];
+      map(ch, end + Integer.BYTES, pivotBytes).asIntBuffer().get(pivots);
+      return new PivotTrace(path, maxNumRows, numColumns, pivots);
+    }
+  }
+
+  /** Returns the maximum number of rows of the recorded solver. */
+  public int maxNumRows() {
+    return maxNumRows;
+  }
+
+  /** Returns the number of columns of the recorded solver. */
+  public int numColumns() {
+    return numColumns;
+  }
+
+  /** Returns the number of recorded pivots. */
+  public int numPivots() {
+    return numPivots;
+  }
+
+  /** Returns the broken (basic) variable of pivot <code>k</code>. */
+  public int brokenIdx(final int k) {
+    return pivots[PIVOT_VALUES * k];
+  }
+
+  /** Returns the suitable (nonbasic) variable of pivot <code>k</code>. */
+  public int suitableIdx(final int k) {
+    return pivots[PIVOT_VALUES * k + 1];
+  }
+
+  /** Returns the assignment of the broken variable of pivot <code>k</code>, before the pivot. */
+  public float assignment(final int k) {
+    return Float.intBitsToFloat(pivots[PIVOT_VALUES * k + 2]);
+  }
+
+  /**
+   * Restores the state before the first pivot into a solver with the dimensions of the recorded
+   * one, and prepares it with <code>preSolve()</code>. A device solver that was already prepared
+   * receives the restored tableau as well.
+   */
+  public void restore(final AbstractSolver solver) throws IOException {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+      SolverCheckpoint.restore(ch, HEADER_BYTES, solver);
+    }
+    solver.preSolve();
+  }
+
+  /**
+   * Restores the initial state into the solver and performs the recorded pivots as the solving
+   * procedure did: the broken variable is given its recorded assignment, and each pivot is followed
+   * by <code>updateAssignment()</code>. Neither the bounds nor the residuals are checked, and
+   * refactorizations of the recorded solve are not repeated.
+   *
+   * @return The time spent in the pivots and updates, in nanoseconds.
+   * @throws RuntimeException If a recorded pivot does not swap a basic and a nonbasic variable of
+   *         the solver, which means that the trace was recorded from another problem.
+   */
+  public long replay(final AbstractSolver solver) throws IOException {
+    restore(solver);
+    final long start = System.nanoTime();
+    for (int k = 0; k < numPivots; k++) {
+      final int brokenIdx = brokenIdx(k);
+      final int suitableIdx = suitableIdx(k);
+      if (!isBasic(solver, brokenIdx) || !isNonBasic(solver, suitableIdx))
+        throw new RuntimeException("The pivot trace does not match the solver.");
+      solver.bounds.setAssignment(brokenIdx, assignment(k));
+      solver.pivot(brokenIdx, suitableIdx);
+      solver.updateAssignment();
+    }
+    return System.nanoTime() - start;
+  }
+
+  /*
+   * The basis is taken from the maps, which (unlike the flags of a device solver) are always kept
+   * on the host.
+   */
+  private static boolean isBasic(final AbstractSolver solver, final int var) {
+    return var >= 0 && var < solver.numVars && solver.varToTableau[var] < solver.numRows
+        && solver.rowToVar[solver.varToTableau[var]] == var;
+  }
+
+  private static boolean isNonBasic(final AbstractSolver solver, final int var) {
+    return var >= 0 && var < solver.numVars && solver.varToTableau[var] < solver.numColumns
+        && solver.colToVar[solver.varToTableau[var]] == var;
+  }
+
+  private static ByteBuffer map(final FileChannel ch, final long pos, final long size)
+      throws IOException {
+    return ch.map(FileChannel.MapMode.READ_ONLY, pos, size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Records the pivots of one call to <code>solve()</code>. The initial state is written when
+   * the recording begins, and the pivots are kept in a buffer that is allocated up front (and only
+   * grows if a solve needs more pivots), so that recording does not slow the pivots down.
+   */
+  static final class Recorder {
+
+    private final static int INITIAL_CAPACITY = 1 << 12;
+
+    private final Path path;
+    private int[] pivots = new int[PIVOT_VALUES * INITIAL_CAPACITY];
+    private int size = 0;
+    private FileChannel ch = null;
+
+    Recorder(final Path path) {
+      this.path = path;
+    }
+
+    /** Writes the header and the current state of the solver. */
+    void begin(final AbstractSolver solver) {
+      try {
+        ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        final ByteBuffer header =
+            ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining())
+          ch.write(header);
+        SolverCheckpoint.write(solver, ch);
+      } catch (final IOException e) {
+        close();
+        throw new RuntimeException("Unable to write the pivot trace.", e);
+      }
+    }
+
+    void add(final int brokenIdx, final int suitableIdx, final float assignment) {
+      if (size == pivots.length)
+        pivots = Arrays.copyOf(pivots, 2 * pivots.length);
+      pivots[size++] = brokenIdx;
+      pivots[size++] = suitableIdx;
+      pivots[size++] = Float.floatToRawIntBits(assignment);
+    }
+
+    /** Writes the pivots and closes the trace. */
+    void end() {
+      if (ch == null)
+        return;
+      try {
+        final ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES * (1 + size))
+            .order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(size / PIVOT_VALUES);
+        buf.asIntBuffer().put(pivots, 0, size);
+        buf.clear();
+        while (buf.hasRemaining())
+          ch.write(buf);
+      } catch (final IOException e) {
+        throw new RuntimeException("Unable to write the pivot trace.", e);
+      } finally {
+        close();
+      }
+    }
+
+    private void close() {
+      try {
+        if (ch != null)
+          ch.close();
+      } catch (final IOException e) {
+        // Nothing was lost that an incomplete trace would not already have lost
+      } finally {
+        ch = null;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,324 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ca.uwaterloo.shediac.KernelMgr.DeviceType;
+
+/**
+ * A solver that races several configurations against each other on separate threads and returns
+ * the answer of the first one to finish. The remaining configurations are cancelled.
+ *
+ * <p>
+ * A configuration combines a backend with a total ordering of the variables. Since the solving
+ * procedure always selects the smallest broken and suitable variables, a different ordering yields
+ * a different (but equally terminating) pivot sequence, and the number of pivots needed by each
+ * ordering can differ greatly on the same instance.
+ * </p>
+ *
+ * <p>
+ * Each configuration keeps its solver from one call to {@link #solve()} to the next, and resets
+ * it, so that a portfolio with a device configuration allocates device memory only once.
+ * </p>
+ */
+public final class PortfolioSolver implements Solver {
+
+  private final static Logger logger = Logger.getLogger("Solver");
+
+  /** A backend and a variable ordering to be raced in a portfolio. */
+  public static final class Configuration {
+    private final String name;
+    private final BiFunction<Integer, Integer, AbstractSolver> factory;
+    private final long seed;
+
+    private Configuration(final String name,
+        final BiFunction<Integer, Integer, AbstractSolver> factory, final long seed) {
+      this.name = name;
+      this.factory = factory;
+      this.seed = seed;
+    }
+
+    /** Uses the given backend with the natural ordering of the variables. */
+    public static Configuration natural(final String name,
+        final BiFunction<Integer, Integer, AbstractSolver> factory) {
+      return new Configuration(name, factory, 0);
+    }
+
+    /** Uses the given backend with the reverse of the natural ordering of the variables. */
+    public static Configuration reversed(final String name,
+        final BiFunction<Integer, Integer, AbstractSolver> factory) {
+      return new Configuration(name, factory, -1);
+    }
+
+    /** Uses the given backend with a random ordering of the variables. */
+    public static Configuration shuffled(final String name,
+        final BiFunction<Integer, Integer, AbstractSolver> factory, final long seed) {
+      if (seed == 0 || seed == -1)
+        throw new RuntimeException("Reserved seed.");
+      return new Configuration(name, factory, seed);
+    }
+
+    /**
+     * Returns the position of each of the first <code>n</code> indices in this ordering. Indices at
+     * or above <code>n</code> keep their position.
+     */
+    private int[] order(final int size, final int n) {
+      final List<Integer> order = new ArrayList<>();
+      for (int i = 0; i < n; i++)
+        order.add(i);
+      if (seed == -1)
+        Collections.reverse(order);
+      else if (seed != 0)
+        Collections.shuffle(order, new Random(seed));
+      final int[] result = new int[size];
+      for (int i = 0; i < size; i++)
+        result[i] = i < n ? order.get(i) : i;
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private final int maxNumBasic;
+  private final int numNonbasic;
+  private final List<Configuration> configurations;
+  /** The solver of each configuration, created by the first race; guarded by itself. */
+  private final AbstractSolver[] solvers;
+  private final List<List<Float>> constraints = new ArrayList<>();
+  private final List<Integer> boundIdx = new ArrayList<>();
+  private final List<float[]> boundVals = new ArrayList<>();
+  private float[] solution = null;
+  private String winner = null;
+
+  /**
+   * Creates a portfolio of the given configurations.
+   *
+   * @param maxNumBasic The maximum number of constraints.
+   * @param numNonbasic The number of variables.
+   * @param configurations The configurations to race; each one uses its own thread.
+   */
+  public PortfolioSolver(final int maxNumBasic, final int numNonbasic,
+      final List<Configuration> configurations) {
+    if (configurations.isEmpty())
+      throw new RuntimeException("A portfolio needs at least one configuration.");
+    this.maxNumBasic = maxNumBasic;
+    this.numNonbasic = numNonbasic;
+    this.configurations = new ArrayList<>(configurations);
+    this.solvers = new AbstractSolver[configurations.size()];
+  }
+
+  /**
+   * Returns a default portfolio of CPU configurations with the natural, reversed and shuffled
+   * variable orderings, with one configuration per available core.
+   */
+  public static PortfolioSolver create(final int maxNumBasic, final int numNonbasic) {
+    final List<Configuration> configs = new ArrayList<>();
+    final int cores = Math.max(2, Runtime.getRuntime().availableProcessors());
+    configs.add(Configuration.natural("cpu", CpuSolver::new));
+    configs.add(Configuration.reversed("cpu-reversed", CpuSolver::new));
+    for (int i = 2; i < cores; i++)
+      configs.add(Configuration.shuffled("cpu-shuffled-" + i, CpuSolver::new, i));
+    return new PortfolioSolver(maxNumBasic, numNonbasic, configs);
+  }
+
+  /**
+   * Returns the default portfolio extended with the specified device in its natural ordering.
+   */
+  public static PortfolioSolver create(final int maxNumBasic, final int numNonbasic,
+      final DeviceType type, final int platformId, final int deviceId) {
+    final List<Configuration> configs = create(maxNumBasic, numNonbasic).configurations;
+    configs.add(Configuration.natural("device", (m, n) -> new DeviceSolver(m, n, type,
+        platformId, deviceId, true)));
+    return new PortfolioSolver(maxNumBasic, numNonbasic, configs);
+  }
+
+  @Override
+  public void addConstraint(final List<Float> cs) {
+    if (cs.size() != numNonbasic)
+      throw new RuntimeException("Invalid constraint size.");
+    else if (constraints.size() >= maxNumBasic)
+      throw new RuntimeException("Unable to add more constraints.");
+    constraints.add(new ArrayList<>(cs));
+  }
+
+  @Override
+  public void setBounds(final int idx, final float lower, final float upper) {
+    boundIdx.add(idx);
+    boundVals.add(new float[] {lower, upper});
+  }
+
+  @Override
+  public List<Float> solution() {
+    final List<Float> s = new ArrayList<>();
+    if (solution != null)
+      for (final float x : solution)
+        s.add(x);
+    return s;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws RuntimeException If no configuration has found a solution.
+   */
+  @Override
+  public float[] solutionInto(final float[] dest) {
+    if (solution == null)
+      throw new RuntimeException("No solution has been found.");
+    if (dest.length < solution.length)
+      throw new RuntimeException("The solution array is too small.");
+    System.arraycopy(solution, 0, dest, 0, solution.length);
+    return dest;
+  }
+
+  /** Returns the name of the configuration that produced the last answer. */
+  public String winner() {
+    return winner;
+  }
+
+  /**
+   * Runs every configuration on its own thread and returns the first answer. If a configuration
+   * fails (for instance, because its device is unavailable), the others keep racing; an exception
+   * is only thrown when all of them fail. The losers are cancelled, and this method returns once
+   * they have stopped, so that their solvers can be reused by the next race.
+   */
+  @Override
+  public boolean solve() {
+    final int n = configurations.size();
+    final ExecutorService executor = Executors.newFixedThreadPool(n, r -> {
+      final Thread t = new Thread(r, "PortfolioSolver");
+      t.setDaemon(true);
+      return t;
+    });
+    final CompletionService<Boolean> completion = new ExecutorCompletionService<>(executor);
+    final boolean[] over = new boolean[1];
+    final int[][] columns = new int[n][];
+    final List<Future<Boolean>> futures = new ArrayList<>();
+    try {
+      for (int k = 0; k < n; k++) {
+        final int c = k;
+        futures.add(completion.submit(() -> {
+          columns[c] = configurations.get(c).order(numNonbasic, numNonbasic);
+          final AbstractSolver solver = solverOf(c, over);
+          load(configurations.get(c), columns[c], solver);
+          solver.preSolve();
+          return solver.solve();
+        }));
+      }
+      RuntimeException failure = null;
+      for (int k = 0; k < n; k++) {
+        final Future<Boolean> f = completion.take();
+        final int c = futures.indexOf(f);
+        try {
+          final boolean result = f.get();
+          winner = configurations.get(c).toString();
+          solution = new float[numNonbasic];
+          final List<Float> s = solvers[c].solution();
+          for (int j = 0; j < numNonbasic; j++)
+            solution[j] = s.get(columns[c][j]);
+          logger.log(Level.FINE, "PortfolioSolver: " + winner + " finished first");
+          return result;
+        } catch (final ExecutionException e) {
+          logger.log(Level.FINE, "PortfolioSolver: " + configurations.get(c) + " failed",
+              e.getCause());
+          failure = new RuntimeException("All configurations failed.", e.getCause());
+        }
+      }
+      throw failure;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException();
+    } finally {
+      // Stop the losers, which notice the cancellation at their next step
+      synchronized (solvers) {
+        over[0] = true;
+        for (final AbstractSolver s : solvers)
+          if (s != null)
+            s.cancel();
+      }
+      for (final Future<Boolean> f : futures)
+        f.cancel(true);
+      executor.shutdownNow();
+      awaitTermination(executor);
+    }
+  }
+
+  /**
+   * Returns the solver of configuration <code>c</code>, created on first use and reset otherwise.
+   * If the race is already over, the solver is cancelled before it is returned.
+   */
+  private AbstractSolver solverOf(final int c, final boolean[] over) {
+    AbstractSolver solver;
+    synchronized (solvers) {
+      solver = solvers[c];
+    }
+    if (solver == null)
+      solver = configurations.get(c).factory.apply(maxNumBasic, numNonbasic);
+    else
+      solver.reset();
+    synchronized (solvers) {
+      solvers[c] = solver;
+      if (over[0])
+        solver.cancel();
+    }
+    return solver;
+  }
+
+  /** Waits for the threads of a race to stop, keeping the interrupt status of the caller. */
+  private static void awaitTermination(final ExecutorService executor) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        if (executor.awaitTermination(1, TimeUnit.SECONDS))
+          break;
+      } catch (final InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted)
+      Thread.currentThread().interrupt();
+  }
+
+  /**
+   * Loads the constraints and bounds into the solver of a configuration, permuting the variables
+   * into the configuration's ordering. Original variable <code>j</code> becomes column
+   * <code>columns[j]</code>, and the slack variable of constraint <code>i</code> is moved to
+   * row <code>rows[i]</code>.
+   */
+  private void load(final Configuration config, final int[] columns,
+      final AbstractSolver solver) {
+    final int[] rows = config.order(maxNumBasic, constraints.size());
+    final List<List<Float>> permuted = new ArrayList<>(constraints);
+    for (int i = 0; i < constraints.size(); i++) {
+      final List<Float> cs = constraints.get(i);
+      final List<Float> row = new ArrayList<>(cs);
+      for (int j = 0; j < numNonbasic; j++)
+        row.set(columns[j], cs.get(j));
+      permuted.set(rows[i], row);
+    }
+    for (final List<Float> row : permuted)
+      solver.addConstraint(row);
+    for (int k = 0; k < boundIdx.size(); k++) {
+      final int idx = boundIdx.get(k);
+      final int var = idx < numNonbasic ? columns[idx] : numNonbasic + rows[idx - numNonbasic];
+      solver.setBounds(var, boundVals.get(k)[0], boundVals.get(k)[1]);
+    }
+  }
+
+}
@@ -0,0 +1,214 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A self-contained description of a problem: the coefficients of its constraints and the bounds
+ * of all of its variables. Variables <code>0 .. numColumns-1</code> are the original variables and
+ * variable <code>numColumns + i</code> is the slack variable of constraint <code>i</code>, as in
+ * the solvers.
+ *
+ * <p>
+ * Unlike a solver, a problem can be created, stored and passed between threads cheaply, and then
+ * loaded into any solver with {@link #load(Solver)}.
+ * </p>
+ *
+ * <p>
+ * Problems are stored and exchanged in a big-endian binary format, written by
+ * {@link #write(DataOutput)}:
+ * </p>
+ *
+ * <pre>
+ * int   magic, version, numRows, numColumns
+ * float coefficients[numRows * numColumns]   (row-major)
+ * float lower[numRows + numColumns], upper[numRows + numColumns]
+ * </pre>
+ */
+public final class Problem {
+
+  private final static int MAGIC = 0x50524F42; // "PROB"
+  private final static int VERSION = 1;
+
+  /** The largest number of coefficients accepted by {@link #read(DataInput)}. */
+  public final static int MAX_COEFFICIENTS = 1 << 24;
+
+  private final int numRows;
+  private final int numColumns;
+  private final float[] coefficients;
+  private final float[] lower;
+  private final float[] upper;
+
+  /**
+   * Creates a problem with <code>numRows</code> constraints over <code>numColumns</code>
+   * variables. All coefficients are zero, and every variable has a lower bound of zero and no
+   * upper bound.
+   */
+  public Problem(final int numRows, final int numColumns) {
+    this.numRows = numRows;
+    this.numColumns = numColumns;
+    coefficients = new float[numRows * numColumns];
+    lower = new float[numRows + numColumns];
+    upper = new float[numRows + numColumns];
+    for (int i = 0; i < upper.length; i++)
+      upper[i] = Solver.NO_BOUND;
+  }
+
+  /** Returns the number of constraints. */
+  public int numRows() {
+    return numRows;
+  }
+
+  /** Returns the number of (original) variables. */
+  public int numColumns() {
+    return numColumns;
+  }
+
+  /** Returns the number of variables, including the slack variables. */
+  public int numVars() {
+    return numRows + numColumns;
+  }
+
+  /** Sets the coefficient of variable <code>col</code> in constraint <code>row</code>. */
+  public void setCoefficient(final int row, final int col, final float val) {
+    coefficients[row * numColumns + col] = val;
+  }
+
+  /** Returns the coefficient of variable <code>col</code> in constraint <code>row</code>. */
+  public float getCoefficient(final int row, final int col) {
+    return coefficients[row * numColumns + col];
+  }
+
+  /** Sets the lower and upper bounds of variable <code>idx</code>. */
+  public void setBounds(final int idx, final float lower, final float upper) {
+    this.lower[idx] = lower;
+    this.upper[idx] = upper;
+  }
+
+  /** Returns the lower bound of variable <code>idx</code>. */
+  public float getLowerBound(final int idx) {
+    return lower[idx];
+  }
+
+  /** Returns the upper bound of variable <code>idx</code>. */
+  public float getUpperBound(final int idx) {
+    return upper[idx];
+  }
+
+  /**
+   * Adds the constraints and sets the bounds of this problem on a solver, which must have room for
+   * <code>numRows()</code> constraints over <code>numColumns()</code> variables.
+   */
+  public void load(final Solver solver) {
+    if (solver instanceof AbstractSolver && ((AbstractSolver) solver).numRows == 0) {
+      loadInto((AbstractSolver) solver);
+      return;
+    }
+    final List<Float> cs = new ArrayList<>(numColumns);
+    for (int i = 0; i < numRows; i++) {
+      cs.clear();
+      for (int j = 0, offset = i * numColumns; j < numColumns; j++)
+        cs.add(coefficients[offset + j]);
+      solver.addConstraint(cs);
+    }
+    for (int i = 0; i < lower.length; i++)
+      solver.setBounds(i, lower[i], upper[i]);
+  }
+
+  /**
+   * Loads this problem into a solver that has no constraints, such as a newly created or reset
+   * one, by copying the coefficients straight into its tableau. Unlike {@link #load(Solver)}, this
+   * does not box the coefficients.
+   */
+  void loadInto(final AbstractSolver solver) {
+    if (solver.numRows != 0)
+      throw new RuntimeException("The solver already has constraints.");
+    else if (solver.numColumns != numColumns || solver.maxNumRows < numRows)
+      throw new RuntimeException("Invalid problem size.");
+    for (int i = 0; i < numRows; i++)
+      solver.setRow(i, coefficients, i * numColumns);
+    solver.numRows = numRows;
+    for (int i = 0; i < numRows; i++) {
+      // As in addConstraint(), the slack variable starts at the value of its row
+      float assignment = 0.0f;
+      for (int j = 0, offset = i * numColumns; j < numColumns; j++)
+        assignment += solver.bounds.getAssignment(j) * coefficients[offset + j];
+      solver.bounds.setAssignment(numColumns + i, assignment);
+      solver.recordOriginal(i, coefficients, i * numColumns);
+      solver.rowAdded(i);
+    }
+    for (int i = 0; i < lower.length; i++)
+      solver.setBounds(i, lower[i], upper[i]);
+  }
+
+  /**
+   * Writes this problem in the binary format described above.
+   */
+  public void write(final DataOutput out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(numRows);
+    out.writeInt(numColumns);
+    for (final float coeff : coefficients)
+      out.writeFloat(coeff);
+    for (final float bound : lower)
+      out.writeFloat(bound);
+    for (final float bound : upper)
+      out.writeFloat(bound);
+  }
+
+  /**
+   * Reads a problem written by {@link #write(DataOutput)}, with at most
+   * {@link #MAX_COEFFICIENTS} coefficients.
+   *
+   * @throws EOFException If the input ends before the problem starts.
+   * @throws RuntimeException If the input is not a problem, is too large, or ends within the
+   *         problem.
+   */
+  public static Problem read(final DataInput in) throws IOException {
+    return read(in, MAX_COEFFICIENTS);
+  }
+
+  /**
+   * Reads a problem written by {@link #write(DataOutput)}, with at most
+   * <code>maxCoefficients</code> coefficients.
+   *
+   * @throws EOFException If the input ends before the problem starts.
+   * @throws RuntimeException If the input is not a problem, is too large, or ends within the
+   *         problem.
+   */
+  public static Problem read(final DataInput in, final int maxCoefficients) throws IOException {
+    if (in.readInt() != MAGIC)
+      throw new RuntimeException("Not a problem.");
+    try {
+      if (in.readInt() != VERSION)
+        throw new RuntimeException("Unsupported problem version.");
+      final int numRows = in.readInt();
+      final int numColumns = in.readInt();
+      if (numRows < 0 || numColumns < 0)
+        throw new RuntimeException("Invalid problem size.");
+      try {
+        if (Math.multiplyExact(numRows, numColumns) > maxCoefficients
+            || Math.addExact(numRows, numColumns) > maxCoefficients)
+          throw new RuntimeException("The problem is too large.");
+      } catch (final ArithmeticException e) {
+        throw new RuntimeException("The problem is too large.", e);
+      }
+      final Problem problem = new Problem(numRows, numColumns);
+      for (int i = 0; i < problem.coefficients.length; i++)
+        problem.coefficients[i] = in.readFloat();
+      for (int i = 0; i < problem.lower.length; i++)
+        problem.lower[i] = in.readFloat();
+      for (int i = 0; i < problem.upper.length; i++)
+        problem.upper[i] = in.readFloat();
+      return problem;
+    } catch (final EOFException e) {
+      throw new RuntimeException("The problem is truncated.", e);
+    }
+  }
+
+}
@@ -0,0 +1,135 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The outcome of solving a {@link Problem}: whether it is satisfiable and, if so, the assignment
+ * of its (original) variables.
+ *
+ * <p>
+ * Like problems, results are exchanged in a big-endian binary format, written by
+ * {@link #write(DataOutput)}. The solution is empty unless the problem is satisfiable:
+ * </p>
+ *
+ * <pre>
+ * int   magic, version
+ * long  index
+ * byte  status   (0 UNSAT, 1 SAT, 2 UNKNOWN)
+ * int   length
+ * float solution[length]
+ * </pre>
+ *
+ * <p>
+ * A result is unknown if the solver gave up before reaching a verdict, for instance because it
+ * reached the limits of the solve (see {@link AbstractSolver#setLimits(long, long)}).
+ * </p>
+ */
+public final class Result {
+
+  private final static int MAGIC = 0x52534C54; // "RSLT"
+  private final static int VERSION = 2;
+
+  private final static byte UNSAT = 0;
+  private final static byte SAT = 1;
+  private final static byte UNKNOWN = 2;
+
+  private final long index;
+  private final byte status;
+  private final float[] solution;
+
+  /**
+   * @param index The position of the problem in the sequence it was submitted in.
+   * @param sat Whether the problem is satisfiable.
+   * @param solution The assignment of the original variables, or <code>null</code> if UNSAT.
+   */
+  public Result(final long index, final boolean sat, final float[] solution) {
+    this(index, sat ? SAT : UNSAT, solution);
+  }
+
+  private Result(final long index, final byte status, final float[] solution) {
+    this.index = index;
+    this.status = status;
+    this.solution = solution;
+  }
+
+  /** Returns the result of a problem for which no verdict was reached. */
+  public static Result unknown(final long index) {
+    return new Result(index, UNKNOWN, null);
+  }
+
+  /** Returns the position of the problem in the sequence it was submitted in. */
+  public long index() {
+    return index;
+  }
+
+  /** Returns <code>true</code> if the problem is satisfiable. */
+  public boolean isSat() {
+    return status == SAT;
+  }
+
+  /** Returns <code>true</code> if no verdict was reached, so the problem may be either. */
+  public boolean isUnknown() {
+    return status == UNKNOWN;
+  }
+
+  /**
+   * Returns the assignment of the original variables, or <code>null</code> unless the problem is
+   * satisfiable. The array is not copied.
+   */
+  public float[] solution() {
+    return solution;
+  }
+
+  /**
+   * Writes this result in the binary format described above.
+   */
+  public void write(final DataOutput out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(index);
+    out.writeByte(status);
+    if (solution == null) {
+      out.writeInt(0);
+      return;
+    }
+    out.writeInt(solution.length);
+    for (final float x : solution)
+      out.writeFloat(x);
+  }
+
+  /**
+   * Reads a result written by {@link #write(DataOutput)}.
+   *
+   * @throws RuntimeException If the input is not a result.
+   */
+  public static Result read(final DataInput in) throws IOException {
+    if (in.readInt() != MAGIC)
+      throw new RuntimeException("Not a result.");
+    if (in.readInt() != VERSION)
+      throw new RuntimeException("Unsupported result version.");
+    final long index = in.readLong();
+    final byte status = in.readByte();
+    if (status != UNSAT && status != SAT && status != UNKNOWN)
+      throw new RuntimeException("Invalid result status.");
+    final int length = in.readInt();
+    if (length < 0 || (status != SAT && length != 0))
+      throw new RuntimeException("Invalid result size.");
+    final float[] solution = status == SAT ? new float[length] : null;
+    for (int j = 0; j < length; j++)
+      solution[j] = in.readFloat();
+    return new Result(index, status, solution);
+  }
+
+  @Override
+  public String toString() {
+    return "Result [index=" + index + ", " + statusName() + "]";
+  }
+
+  /** Returns the name of the status: SAT, UNSAT or UNKNOWN. */
+  public String statusName() {
+    return status == SAT ? "SAT" : status == UNSAT ? "UNSAT" : "UNKNOWN";
+  }
+
+}
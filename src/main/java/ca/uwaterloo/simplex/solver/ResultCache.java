@@ -0,0 +1,153 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded cache of solver results, keyed by the problem that produced them. When the cache
+ * is full, the least recently used result is evicted. A cache may be shared by any number of
+ * {@link CachingSolver}s on any number of threads.
+ */
+public final class ResultCache {
+
+  /**
+   * The canonical form of a problem: its dimensions, the coefficients of its constraints in the
+   * order they were added, and the bounds of the variables they use. Negative zeros are stored as
+   * positive zeros so that equal problems have equal keys. The hash is computed once, but keys are
+   * compared in full, so a hash collision can never return the result of a different problem.
+   */
+  static final class Key {
+    private final int numRows;
+    private final int numColumns;
+    private final float[] coefficients;
+    private final float[] lower;
+    private final float[] upper;
+    private final int hash;
+
+    Key(final int numRows, final int numColumns, final float[] coefficients, final float[] lower,
+        final float[] upper) {
+      this.numRows = numRows;
+      this.numColumns = numColumns;
+      this.coefficients = canonical(coefficients, numRows * numColumns);
+      this.lower = canonical(lower, numRows + numColumns);
+      this.upper = canonical(upper, numRows + numColumns);
+      int h = 31 * numRows + numColumns;
+      h = 31 * h + Arrays.hashCode(this.coefficients);
+      h = 31 * h + Arrays.hashCode(this.lower);
+      hash = 31 * h + Arrays.hashCode(this.upper);
+    }
+
+    private static float[] canonical(final float[] values, final int length) {
+      final float[] copy = Arrays.copyOf(values, length);
+      for (int i = 0; i < length; i++)
+        if (copy[i] == 0.0f)
+          copy[i] = 0.0f;
+      return copy;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof Key))
+        return false;
+      final Key other = (Key) obj;
+      return hash == other.hash && numRows == other.numRows && numColumns == other.numColumns
+          && Arrays.equals(coefficients, other.coefficients) && Arrays.equals(lower, other.lower)
+          && Arrays.equals(upper, other.upper);
+    }
+  }
+
+  private final int capacity;
+  private final LinkedHashMap<Key, Result> results;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * @param capacity The maximum number of results to keep.
+   */
+  public ResultCache(final int capacity) {
+    if (capacity < 1)
+      throw new RuntimeException("Invalid cache capacity.");
+    this.capacity = capacity;
+    results = new LinkedHashMap<Key, Result>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Key, Result> eldest) {
+        if (size() <= ResultCache.this.capacity)
+          return false;
+        evictions.increment();
+        return true;
+      }
+    };
+  }
+
+  /** Returns the cached result of a problem, or <code>null</code> if there is none. */
+  Result get(final Key key) {
+    final Result result;
+    synchronized (results) {
+      result = results.get(key);
+    }
+    if (result == null)
+      misses.increment();
+    else
+      hits.increment();
+    return result;
+  }
+
+  void put(final Key key, final Result result) {
+    synchronized (results) {
+      results.put(key, result);
+    }
+  }
+
+  /** Removes every result. The statistics are kept. */
+  public void clear() {
+    synchronized (results) {
+      results.clear();
+    }
+  }
+
+  /** Returns the number of cached results. */
+  public int size() {
+    synchronized (results) {
+      return results.size();
+    }
+  }
+
+  /** Returns the maximum number of cached results. */
+  public int capacity() {
+    return capacity;
+  }
+
+  /** Returns the number of lookups that found a result. */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /** Returns the number of lookups that did not find a result. */
+  public long misses() {
+    return misses.sum();
+  }
+
+  /** Returns the number of results that were evicted to make room for others. */
+  public long evictions() {
+    return evictions.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "ResultCache [size=" + size() + ", hits=" + hits() + ", misses=" + misses()
+        + ", evictions=" + evictions() + "]";
+  }
+
+}
@@ -16,23 +16,50 @@ public interface Solver {
   final static float EPSILON = 0.000001f;
   final static int NO_BOUND = -1;
 
+  /**
+   * Creates a solver on the {@link SolverDispatcher.Backend#CPU} backend.
+   */
   static AbstractSolver create(final int maxNumBasic, final int numNonbasic) {
-    return new CpuSolver(maxNumBasic, numNonbasic);
+    return SolverDispatcher.newSolver(SolverDispatcher.Backend.CPU, maxNumBasic, numNonbasic, null,
+        0, 0, true);
   }
-  
+
+  /**
+   * Creates a solver on the backend that {@link SolverDispatcher#getDefault()} expects to be
+   * fastest for a problem of the given dimensions and density. Unless a device is configured (see
+   * {@link SolverDispatcher}), the backend is one of the CPU backends.
+   *
+   * <p>
+   * The first call calibrates the backends, which takes a fraction of a second. The results are
+   * kept in memory, and in a file if one is configured.
+   * </p>
+   */
+  static AbstractSolver create(final int maxNumBasic, final int numNonbasic, final float density) {
+    return SolverDispatcher.getDefault().create(maxNumBasic, numNonbasic, density);
+  }
+
   static AbstractSolver create(final int maxNumBasic, final int numNonbasic, final DeviceType type, final int platformId, final int deviceId, final boolean enableExceptions) {
     switch (type) {
-      case CUDA: {
-        return new DeviceSolver(maxNumBasic, numNonbasic, type, platformId, deviceId, enableExceptions);
-      }
-      case OpenCL: {
-        return new DeviceSolver(maxNumBasic, numNonbasic, type, platformId, deviceId, enableExceptions);
-      }
+      case CUDA:
+      case OpenCL:
+        return SolverDispatcher.newSolver(SolverDispatcher.Backend.DEVICE, maxNumBasic,
+            numNonbasic, type, platformId, deviceId, enableExceptions);
       default:
         throw new RuntimeException("Unsupported device type.");
     }
   }
 
+  /**
+   * Creates a device solver that keeps the tableau in a sparse format, for problems whose dense
+   * tableau would not fit on the device (see {@link SparseDeviceSolver}).
+   */
+  static AbstractSolver createSparse(final int maxNumBasic, final int numNonbasic,
+      final DeviceType type, final int platformId, final int deviceId,
+      final boolean enableExceptions) {
+    return new SparseDeviceSolver(maxNumBasic, numNonbasic, type, platformId, deviceId,
+        enableExceptions);
+  }
+
   /**
    * Adds a linear constraint to the formula to be solved.
    * 
@@ -64,6 +91,23 @@ public interface Solver {
    */
   List<Float> solution();
 
+  /**
+   * Copies the solution into <code>dest</code>, which must have room for a value of every
+   * (original) variable, and returns it. Unlike {@link #solution()}, this does not box the values.
+   *
+   * @param dest The array that receives the solution.
+   * @return <code>dest</code>.
+   * @throws RuntimeException If <code>dest</code> is too small.
+   */
+  default float[] solutionInto(final float[] dest) {
+    final List<Float> s = solution();
+    if (dest.length < s.size())
+      throw new RuntimeException("The solution array is too small.");
+    for (int i = 0; i < s.size(); i++)
+      dest[i] = s.get(i);
+    return dest;
+  }
+
   /**
    * Runs the solving procedure.
    * 
@@ -0,0 +1,255 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import ca.uwaterloo.simplex.bounds.Bounds;
+
+/**
+ * Saves and restores the complete state of a solver, so that a solved or partially solved problem
+ * can be resumed (or shipped to another process) without redoing its pivots.
+ *
+ * <p>
+ * A checkpoint is a little-endian binary file with the following layout, where <code>m</code> is
+ * the maximum number of rows, <code>n</code> the number of columns, <code>r</code> the number of
+ * rows in use and <code>v = m + n</code> the number of variables:
+ * </p>
+ *
+ * <pre>
+ * int   magic, version, m, n, r
+ * float tableau[r * n]      (row-major)
+ * int   colToVar[n], rowToVar[m], varToTableau[v]
+ * float lower[v], upper[v], assigns[v]
+ * byte  flags[v]
+ * </pre>
+ *
+ * <p>
+ * Checkpoints are written through a <code>FileChannel</code> with a fixed-size buffer and read back
+ * by memory-mapping the file. The tableau is read from the solver a row at a time (see
+ * {@link AbstractSolver#getRow(int, float[], int)}), so that a device solver transfers it in bulk.
+ * A restored basis is checked before it is installed.
+ * </p>
+ */
+public final class SolverCheckpoint {
+
+  private final static int MAGIC = 0x5053434B; // "PSCK"
+  private final static int VERSION = 1;
+  private final static int HEADER_BYTES = 5 * Integer.BYTES;
+  private final static int BUFFER_SIZE = 1 << 20;
+
+  /** The largest region that is mapped at once. */
+  private final static int MAX_MAPPING = 1 << 28;
+
+  private SolverCheckpoint() {}
+
+  /**
+   * Writes the state of the solver to the specified file, replacing its contents.
+   */
+  public static void write(final AbstractSolver solver, final Path path) throws IOException {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      write(solver, ch);
+    }
+  }
+
+  /**
+   * Writes the state of the solver at the current position of the channel, so that a checkpoint
+   * can be embedded in another file (see {@link PivotTrace}).
+   */
+  static void write(final AbstractSolver solver, final FileChannel ch) throws IOException {
+    final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    final Bounds bounds = solver.bounds;
+    final int numVars = solver.numVars;
+
+    buf.putInt(MAGIC).putInt(VERSION);
+    buf.putInt(solver.maxNumRows).putInt(solver.numColumns).putInt(solver.numRows);
+    final float[] row = new float[solver.numColumns];
+    for (int i = 0; i < solver.numRows; i++) {
+      solver.getRow(i, row, 0);
+      for (final float val : row)
+        ensure(ch, buf, Float.BYTES).putFloat(val);
+    }
+    for (final int var : solver.colToVar)
+      ensure(ch, buf, Integer.BYTES).putInt(var);
+    for (final int var : solver.rowToVar)
+      ensure(ch, buf, Integer.BYTES).putInt(var);
+    for (final int idx : solver.varToTableau)
+      ensure(ch, buf, Integer.BYTES).putInt(idx);
+    for (int i = 0; i < numVars; i++)
+      ensure(ch, buf, Float.BYTES).putFloat(bounds.getLowerBound(i));
+    for (int i = 0; i < numVars; i++)
+      ensure(ch, buf, Float.BYTES).putFloat(bounds.getUpperBound(i));
+    for (int i = 0; i < numVars; i++)
+      ensure(ch, buf, Float.BYTES).putFloat(bounds.getAssignment(i));
+    for (int i = 0; i < numVars; i++)
+      ensure(ch, buf, 1).put(bounds.isBasic(i) ? Bounds.BASIC : Bounds.NON_BASIC);
+    flush(ch, buf);
+  }
+
+  /**
+   * Restores a checkpoint into a new <code>CpuSolver</code>.
+   */
+  public static AbstractSolver restore(final Path path) throws IOException {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+      final ByteBuffer header = header(ch, 0);
+      final AbstractSolver solver = new CpuSolver(header.getInt(8), header.getInt(12));
+      restore(ch, 0, solver);
+      return solver;
+    }
+  }
+
+  /**
+   * Restores a checkpoint into an existing solver, which must have the same dimensions as the
+   * solver that was saved. A device solver that already holds a tableau receives the restored one
+   * at once; otherwise, <code>preSolve()</code> copies it to the device as usual.
+   */
+  public static void restore(final Path path, final AbstractSolver solver) throws IOException {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+      restore(ch, 0, solver);
+    }
+  }
+
+  /**
+   * Restores the checkpoint that starts at <code>offset</code> and returns the position of its
+   * end. A checkpoint at the start of a file must fill the file, while an embedded one can be
+   * followed by other data.
+   *
+   * @throws RuntimeException If the checkpoint is truncated, does not match the solver, or holds
+   *         maps that do not describe a basis.
+   */
+  static long restore(final FileChannel ch, final long offset, final AbstractSolver solver)
+      throws IOException {
+    final ByteBuffer header = header(ch, offset);
+    final int maxNumRows = header.getInt(8);
+    final int numColumns = header.getInt(12);
+    final int numRows = header.getInt(16);
+    if (maxNumRows != solver.maxNumRows || numColumns != solver.numColumns || numRows < 0
+        || numRows > maxNumRows)
+      throw new RuntimeException("Checkpoint dimensions do not match the solver.");
+    final int numVars = solver.numVars;
+    final long expected = size(maxNumRows, numColumns, numRows);
+    if (offset == 0 ? ch.size() != expected : ch.size() < offset + expected)
+      throw new RuntimeException("Truncated checkpoint.");
+
+    // Check the maps before anything is installed
+    final long rowBytes = (long) numColumns * Float.BYTES;
+    final ByteBuffer maps = map(ch, offset + HEADER_BYTES + numRows * rowBytes,
+        (long) (numColumns + maxNumRows + numVars) * Integer.BYTES);
+    final int[] colToVar = new int[numColumns];
+    final int[] rowToVar = new int[maxNumRows];
+    final int[] varToTableau = new int[numVars];
+    maps.asIntBuffer().get(colToVar);
+    maps.position(maps.position() + numColumns * Integer.BYTES);
+    maps.asIntBuffer().get(rowToVar);
+    maps.position(maps.position() + maxNumRows * Integer.BYTES);
+    maps.asIntBuffer().get(varToTableau);
+    checkBasis(colToVar, rowToVar, varToTableau);
+
+    // Map the tableau in blocks of whole rows
+    long pos = offset + HEADER_BYTES;
+    final int rowsPerMapping = (int) Math.max(1, MAX_MAPPING / Math.max(1, rowBytes));
+    final float[] row = new float[numColumns];
+    for (int i = 0; i < numRows; i += rowsPerMapping) {
+      final int rows = Math.min(rowsPerMapping, numRows - i);
+      final FloatBuffer map = map(ch, pos, rows * rowBytes).asFloatBuffer();
+      for (int r = 0; r < rows; r++) {
+        map.get(row);
+        solver.setRow(i + r, row, 0);
+      }
+      pos += rows * rowBytes;
+    }
+    if (solver.tableau.length > 0)
+      Arrays.fill(solver.tableau, numRows * numColumns, solver.tableau.length, 0.0f);
+    solver.numRows = numRows;
+
+    // Install the maps, and map the remaining sections at once
+    System.arraycopy(colToVar, 0, solver.colToVar, 0, numColumns);
+    System.arraycopy(rowToVar, 0, solver.rowToVar, 0, maxNumRows);
+    System.arraycopy(varToTableau, 0, solver.varToTableau, 0, numVars);
+    pos += (long) (numColumns + maxNumRows + numVars) * Integer.BYTES;
+    final ByteBuffer map = map(ch, pos, offset + expected - pos);
+    final Bounds bounds = solver.bounds;
+    for (int i = 0; i < numVars; i++)
+      bounds.setLowerBound(i, map.getFloat());
+    for (int i = 0; i < numVars; i++)
+      bounds.setUpperBound(i, map.getFloat());
+    for (int i = 0; i < numVars; i++)
+      bounds.setAssignment(i, map.getFloat());
+    for (int i = 0; i < numVars; i++)
+      bounds.setFlag(i, map.get());
+    solver.basisChanged();
+    return offset + expected;
+  }
+
+  /**
+   * Checks that the columns and rows hold every variable once, and that
+   * <code>varToTableau</code> gives the position of each variable in them.
+   */
+  private static void checkBasis(final int[] colToVar, final int[] rowToVar,
+      final int[] varToTableau) {
+    final boolean[] seen = new boolean[varToTableau.length];
+    for (int k = 0; k < colToVar.length + rowToVar.length; k++) {
+      final int pos = k < colToVar.length ? k : k - colToVar.length;
+      final int var = k < colToVar.length ? colToVar[pos] : rowToVar[pos];
+      if (var < 0 || var >= seen.length || seen[var] || varToTableau[var] != pos)
+        throw new RuntimeException("Invalid checkpoint basis.");
+      seen[var] = true;
+    }
+  }
+
+  /** Returns the number of bytes of a checkpoint of the given dimensions. */
+  private static long size(final int maxNumRows, final int numColumns, final int numRows) {
+    final long numVars = (long) maxNumRows + numColumns;
+    return HEADER_BYTES + (long) numRows * numColumns * Float.BYTES
+        + (numColumns + maxNumRows + numVars) * Integer.BYTES + 3L * numVars * Float.BYTES
+        + numVars;
+  }
+
+  /** Returns the position of the end of the checkpoint that starts at <code>offset</code>. */
+  static long end(final FileChannel ch, final long offset) throws IOException {
+    final ByteBuffer header = header(ch, offset);
+    return offset + size(header.getInt(8), header.getInt(12), header.getInt(16));
+  }
+
+  /** Maps and checks the header of the checkpoint that starts at <code>offset</code>. */
+  static ByteBuffer header(final FileChannel ch, final long offset) throws IOException {
+    if (ch.size() < offset + HEADER_BYTES)
+      throw new RuntimeException("Truncated checkpoint.");
+    final ByteBuffer header = map(ch, offset, HEADER_BYTES);
+    if (header.getInt(0) != MAGIC)
+      throw new RuntimeException("Not a solver checkpoint.");
+    if (header.getInt(4) != VERSION)
+      throw new RuntimeException("Unsupported checkpoint version.");
+    return header;
+  }
+
+  private static MappedByteBuffer map(final FileChannel ch, final long pos, final long size)
+      throws IOException {
+    final MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, pos, size);
+    map.order(ByteOrder.LITTLE_ENDIAN);
+    return map;
+  }
+
+  /** Makes room for <code>bytes</code> more bytes in the buffer, writing it out if needed. */
+  private static ByteBuffer ensure(final FileChannel ch, final ByteBuffer buf, final int bytes)
+      throws IOException {
+    if (buf.remaining() < bytes)
+      flush(ch, buf);
+    return buf;
+  }
+
+  private static void flush(final FileChannel ch, final ByteBuffer buf) throws IOException {
+    buf.flip();
+    while (buf.hasRemaining())
+      ch.write(buf);
+    buf.clear();
+  }
+
+}
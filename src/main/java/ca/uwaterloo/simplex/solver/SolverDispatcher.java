@@ -0,0 +1,456 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ca.uwaterloo.shediac.KernelMgr.DeviceType;
+
+/**
+ * Selects the backend that is expected to solve a problem fastest. The choice is driven by a
+ * simple cost model, in which every solver step costs a fixed overhead (kernel launches, transfers,
+ * fork/join) plus a cost per tableau entry that the step touches. The two coefficients of each
+ * backend are measured by a short calibration run, and may be cached in a properties file, so that
+ * only the first run on a machine pays for the calibration.
+ *
+ * <p>
+ * The dispatcher also calibrates the density under which <code>CpuSolver</code> switches to sparse
+ * rows, and sets it as the default of new solvers unless the <code>peticodiac.sparseThreshold</code>
+ * system property is set.
+ * </p>
+ *
+ * <p>
+ * By default the results are kept in memory only. A file is used once it is given with
+ * {@link #setCalibrationCache(Path)} or the <code>peticodiac.calibration</code> system property,
+ * for instance <code>~/.peticodiac4j/calibration.properties</code>. A cache that cannot be read or
+ * written is ignored.
+ * </p>
+ *
+ * <p>
+ * The default dispatcher only chooses between the CPU backends, unless a device is given with the
+ * <code>peticodiac.device</code> system property, as <code>type:platform:device</code> (for
+ * instance <code>CUDA:0:0</code>). Other dispatchers may consider a device with
+ * {@link #withDevice(DeviceType, int, int)}. A device that cannot be initialized is recorded as
+ * such in the cache, and is not tried again.
+ * </p>
+ *
+ * <p>
+ * Device memory cannot be freed before the end of the process, so each backend is calibrated on a
+ * single solver, whose size is that of the largest calibration problem.
+ * </p>
+ */
+public final class SolverDispatcher {
+
+  /** The backends that the dispatcher can choose from. */
+  public enum Backend {
+    CPU, PARALLEL_CPU, DEVICE
+  }
+
+  /** The per-step cost of a backend, in nanoseconds. */
+  public static final class CostModel {
+    final double overhead;
+    final double perEntry;
+
+    /**
+     * @param overhead The fixed cost of a step, in nanoseconds.
+     * @param perEntry The cost of each tableau entry touched by a step, in nanoseconds.
+     */
+    public CostModel(final double overhead, final double perEntry) {
+      this.overhead = Math.max(0.0, overhead);
+      this.perEntry = Math.max(0.0, perEntry);
+    }
+
+    double estimate(final double entries) {
+      return overhead + perEntry * entries;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%.1f ns + %.3f ns/entry", overhead, perEntry);
+    }
+  }
+
+  private final static Logger logger = Logger.getLogger("Solver");
+
+  /** Numbers of rows used to fit the cost models, on a tableau of LARGE columns. */
+  private final static int SMALL = 8;
+  private final static int LARGE = 128;
+  private final static int CALIBRATION_STEPS = 64;
+  private final static int CALIBRATION_RUNS = 5;
+
+  /** Densities at which the dense and sparse representations are compared, in ascending order. */
+  private final static float[] SPARSE_DENSITIES = {0.01f, 0.02f, 0.05f, 0.1f, 0.2f, 0.3f, 0.5f};
+  private final static String SPARSE_THRESHOLD_KEY = "cpu.sparseThreshold";
+
+  private final static String DEVICE_PROPERTY = "peticodiac.device";
+
+  private static SolverDispatcher defaultDispatcher = null;
+
+  /** The file of the calibration cache, or <code>null</code> if the cache is off. */
+  private static volatile Path cachePath = defaultCachePath();
+
+  private final Map<Backend, CostModel> models = new EnumMap<>(Backend.class);
+  private final DeviceType deviceType;
+  private final int platformId;
+  private final int deviceId;
+
+  private SolverDispatcher(final DeviceType deviceType, final int platformId,
+      final int deviceId) {
+    this.deviceType = deviceType;
+    this.platformId = platformId;
+    this.deviceId = deviceId;
+    final Properties cache = loadCache();
+    boolean dirty = false;
+    for (final Backend backend : Backend.values()) {
+      if (backend == Backend.DEVICE && deviceType == null)
+        continue;
+      if (backend == Backend.PARALLEL_CPU && Runtime.getRuntime().availableProcessors() < 2)
+        continue;
+      if ("false".equals(cache.getProperty(cacheKey(backend) + ".available")))
+        continue;
+      CostModel model = fromCache(cache, backend);
+      if (model == null) {
+        model = calibrate(backend);
+        if (model == null) {
+          cache.setProperty(cacheKey(backend) + ".available", "false");
+          dirty = true;
+          continue;
+        }
+        toCache(cache, backend, model);
+        dirty = true;
+      }
+      logger.log(Level.CONFIG, "SolverDispatcher: " + backend + " costs " + model);
+      models.put(backend, model);
+    }
+    if (System.getProperty("peticodiac.sparseThreshold") == null) {
+      float threshold;
+      try {
+        threshold = Float.parseFloat(cache.getProperty(SPARSE_THRESHOLD_KEY, ""));
+      } catch (final NumberFormatException e) {
+        threshold = calibrateSparseThreshold();
+        cache.setProperty(SPARSE_THRESHOLD_KEY, Float.toString(threshold));
+        dirty = true;
+      }
+      logger.log(Level.CONFIG, "SolverDispatcher: sparse threshold is " + threshold);
+      CpuSolver.setDefaultSparseThreshold(threshold);
+    }
+    if (dirty)
+      storeCache(cache);
+  }
+
+  /** Creates a dispatcher with the given cost models, without calibration. */
+  private SolverDispatcher(final Map<Backend, CostModel> models, final DeviceType deviceType,
+      final int platformId, final int deviceId) {
+    this.deviceType = deviceType;
+    this.platformId = platformId;
+    this.deviceId = deviceId;
+    this.models.putAll(models);
+  }
+
+  /**
+   * Sets the file in which calibration results are cached, or <code>null</code> to keep them in
+   * memory only. Only dispatchers created afterwards use the new cache.
+   */
+  public static void setCalibrationCache(final Path path) {
+    cachePath = path;
+  }
+
+  /**
+   * Returns the dispatcher that chooses between the CPU backends, and the device given by the
+   * <code>peticodiac.device</code> property if it is set (see above). The first call performs (or
+   * loads) the calibration.
+   */
+  public static synchronized SolverDispatcher getDefault() {
+    if (defaultDispatcher == null) {
+      final String device = System.getProperty(DEVICE_PROPERTY, "none");
+      if (device.equals("none")) {
+        defaultDispatcher = new SolverDispatcher(null, 0, 0);
+      } else {
+        final String[] parts = device.split(":");
+        try {
+          defaultDispatcher = new SolverDispatcher(DeviceType.valueOf(parts[0]),
+              parts.length > 1 ? Integer.parseInt(parts[1]) : 0,
+              parts.length > 2 ? Integer.parseInt(parts[2]) : 0);
+        } catch (final IllegalArgumentException e) {
+          throw new RuntimeException("Invalid " + DEVICE_PROPERTY + ": " + device, e);
+        }
+      }
+    }
+    return defaultDispatcher;
+  }
+
+  /**
+   * Returns a dispatcher that, in addition to the CPU backends, may choose the specified device. If
+   * the device cannot be initialized, only the CPU backends are considered.
+   */
+  public static SolverDispatcher withDevice(final DeviceType type, final int platformId,
+      final int deviceId) {
+    return new SolverDispatcher(type, platformId, deviceId);
+  }
+
+  /**
+   * Returns a dispatcher that chooses between the backends of the given cost models, without
+   * calibrating them. A device model requires a device.
+   *
+   * @param models The cost model of each backend to consider.
+   * @param type The device type, or <code>null</code> if there is no device.
+   */
+  public static SolverDispatcher withCostModels(final Map<Backend, CostModel> models,
+      final DeviceType type, final int platformId, final int deviceId) {
+    if (models.containsKey(Backend.DEVICE) && type == null)
+      throw new RuntimeException("No device configured.");
+    return new SolverDispatcher(models, type, platformId, deviceId);
+  }
+
+  /**
+   * Returns <code>true</code> if this dispatcher may choose the given backend, which for the device
+   * means that it could be initialized.
+   */
+  public boolean isAvailable(final Backend backend) {
+    return models.containsKey(backend);
+  }
+
+  /**
+   * Returns the backend with the lowest estimated cost per step for the given problem.
+   *
+   * @param maxNumBasic The number of constraints (rows).
+   * @param numNonbasic The number of variables (columns).
+   * @param density The fraction of nonzero coefficients in the constraints, in <code>(0, 1]</code>.
+   */
+  public Backend select(final int maxNumBasic, final int numNonbasic, final float density) {
+    Backend best = Backend.CPU;
+    double bestCost = Double.MAX_VALUE;
+    for (final Map.Entry<Backend, CostModel> e : models.entrySet()) {
+      final double cost = e.getValue().estimate(entries(e.getKey(), maxNumBasic, numNonbasic,
+          density));
+      if (cost < bestCost) {
+        best = e.getKey();
+        bestCost = cost;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Creates a solver using the backend returned by {@link #select(int, int, float)}.
+   */
+  public AbstractSolver create(final int maxNumBasic, final int numNonbasic, final float density) {
+    return create(select(maxNumBasic, numNonbasic, density), maxNumBasic, numNonbasic);
+  }
+
+  /**
+   * Creates a solver using the given backend. The device backend is only available if this
+   * dispatcher has a device that could be initialized.
+   */
+  public AbstractSolver create(final Backend backend, final int maxNumBasic,
+      final int numNonbasic) {
+    if (backend == Backend.DEVICE && !isAvailable(Backend.DEVICE))
+      throw new RuntimeException("No device configured.");
+    return newSolver(backend, maxNumBasic, numNonbasic, deviceType, platformId, deviceId, true);
+  }
+
+  /**
+   * Creates a solver on the given backend. Every solver of the factory methods of {@link Solver}
+   * is created here, whether its backend is chosen by the caller or by a dispatcher.
+   */
+  static AbstractSolver newSolver(final Backend backend, final int maxNumBasic,
+      final int numNonbasic, final DeviceType type, final int platformId, final int deviceId,
+      final boolean enableExceptions) {
+    switch (backend) {
+      case CPU:
+        return new CpuSolver(maxNumBasic, numNonbasic);
+      case PARALLEL_CPU:
+        return new ParallelCpuSolver(maxNumBasic, numNonbasic);
+      case DEVICE:
+        return new DeviceSolver(maxNumBasic, numNonbasic, type, platformId, deviceId,
+            enableExceptions);
+      default:
+        throw new RuntimeException("Unsupported backend.");
+    }
+  }
+
+  /**
+   * Returns the number of tableau entries touched by one step. On the CPU a pivot only touches the
+   * rows with a nonzero in the pivot column, whereas updateAssignment always reads every entry. The
+   * device kernels are dense and always touch every entry.
+   */
+  private static double entries(final Backend backend, final int rows, final int cols,
+      final float density) {
+    final double size = (double) rows * cols;
+    if (backend == Backend.DEVICE)
+      return size;
+    final double d = Math.min(1.0, Math.max(0.0, density));
+    return size * (1.0 + d) / 2.0;
+  }
+
+  /**
+   * Fits the cost model of a backend by timing steps on a tableau of LARGE columns with SMALL and
+   * with LARGE rows. A single solver is created and reset between runs.
+   *
+   * @return the cost model, or <code>null</code> if the backend is unavailable
+   */
+  private CostModel calibrate(final Backend backend) {
+    try {
+      final AbstractSolver solver =
+          newSolver(backend, LARGE, LARGE, deviceType, platformId, deviceId, true);
+      final Random rnd = new Random(SMALL * LARGE);
+      double small = Double.MAX_VALUE;
+      double large = Double.MAX_VALUE;
+      // Keep the fastest of several runs, which also serve to warm up the JIT
+      for (int run = 0; run < CALIBRATION_RUNS; run++) {
+        solver.reset();
+        small = Math.min(small, timeStep(solver, SMALL, 1.0f, rnd));
+        solver.reset();
+        large = Math.min(large, timeStep(solver, LARGE, 1.0f, rnd));
+      }
+      final double smallEntries = SMALL * LARGE;
+      final double largeEntries = LARGE * LARGE;
+      final double perEntry = (large - small) / (largeEntries - smallEntries);
+      return new CostModel(small - perEntry * smallEntries, perEntry);
+    } catch (final RuntimeException | LinkageError e) {
+      logger.log(Level.WARNING, "SolverDispatcher: " + backend + " is unavailable", e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the largest density at which sparse rows are faster than the dense array, or zero if
+   * they are never faster.
+   */
+  private static float calibrateSparseThreshold() {
+    final Random rnd = new Random(LARGE);
+    float threshold = 0.0f;
+    for (final float density : SPARSE_DENSITIES) {
+      double dense = Double.MAX_VALUE;
+      double sparse = Double.MAX_VALUE;
+      for (int run = 0; run < CALIBRATION_RUNS; run++) {
+        final CpuSolver denseSolver = new CpuSolver(LARGE, LARGE);
+        denseSolver.setSparseThreshold(0.0f);
+        dense = Math.min(dense, timeStep(denseSolver, LARGE, density, rnd));
+        final CpuSolver sparseSolver = new CpuSolver(LARGE, LARGE);
+        sparseSolver.setSparseThreshold(Float.MAX_VALUE);
+        sparse = Math.min(sparse, timeStep(sparseSolver, LARGE, density, rnd));
+      }
+      if (sparse >= dense)
+        break;
+      threshold = density;
+    }
+    return threshold;
+  }
+
+  /**
+   * Returns the average time in nanoseconds of a pivot followed by an updateAssignment on a random
+   * tableau of <code>rows</code> rows and all the columns of the solver, in which each entry is
+   * nonzero with the given probability. The time includes a final checkBounds, which waits for
+   * the kernels of a device solver to complete.
+   */
+  private static double timeStep(final AbstractSolver solver, final int rows, final float density,
+      final Random rnd) {
+    final int n = solver.numColumns;
+    final float[] values = new float[n];
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < n; j++) {
+        values[j] = density >= 1.0f || rnd.nextFloat() < density
+            ? (rnd.nextBoolean() ? 1.0f : -1.0f) * (0.5f + rnd.nextFloat()) : 0.0f;
+      }
+      solver.setRow(i, values, 0);
+    }
+    solver.numRows = rows;
+    solver.preSolve();
+    double time = -System.nanoTime();
+    for (int k = 0; k < CALIBRATION_STEPS; k++) {
+      final int row = k % rows;
+      int col = (k * 7 + 3) % n;
+      // Pivot on a nonzero entry of the row, if it has one (a dense tableau is not searched, since
+      // each entry read from a device is a transfer)
+      if (density < 1.0f) {
+        for (int j = 0; j < n && solver.getTableauEntry(row, col) == 0.0f; j++)
+          col = (col + 1) % n;
+        if (solver.getTableauEntry(row, col) == 0.0f)
+          continue;
+      }
+      solver.pivot(solver.rowToVar[row], solver.colToVar[col]);
+      solver.updateAssignment();
+    }
+    solver.checkBounds();
+    time += System.nanoTime();
+    return time / CALIBRATION_STEPS;
+  }
+
+  private String cacheKey(final Backend backend) {
+    if (backend == Backend.DEVICE)
+      return "device." + deviceType + "." + platformId + "." + deviceId;
+    return backend.name().toLowerCase();
+  }
+
+  private CostModel fromCache(final Properties cache, final Backend backend) {
+    final String key = cacheKey(backend);
+    final String overhead = cache.getProperty(key + ".overhead");
+    final String perEntry = cache.getProperty(key + ".perEntry");
+    if (overhead == null || perEntry == null)
+      return null;
+    try {
+      return new CostModel(Double.parseDouble(overhead), Double.parseDouble(perEntry));
+    } catch (final NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private void toCache(final Properties cache, final Backend backend, final CostModel model) {
+    final String key = cacheKey(backend);
+    cache.setProperty(key + ".overhead", Double.toString(model.overhead));
+    cache.setProperty(key + ".perEntry", Double.toString(model.perEntry));
+  }
+
+  private static Path defaultCachePath() {
+    final String path = System.getProperty("peticodiac.calibration", "none");
+    return path.equals("none") ? null : Paths.get(path);
+  }
+
+  /**
+   * Loads the cached calibration results. The cache is discarded when it was produced on a machine
+   * with a different number of processors.
+   */
+  private static Properties loadCache() {
+    final Properties cache = new Properties();
+    final Path path = cachePath;
+    if (path != null && Files.isReadable(path)) {
+      try (InputStream in = Files.newInputStream(path)) {
+        cache.load(in);
+      } catch (final IOException e) {
+        logger.log(Level.FINE, "SolverDispatcher: unable to read " + path, e);
+      }
+    }
+    final String cpus = Integer.toString(Runtime.getRuntime().availableProcessors());
+    if (!cpus.equals(cache.getProperty("processors"))) {
+      cache.clear();
+      cache.setProperty("processors", cpus);
+    }
+    return cache;
+  }
+
+  private static void storeCache(final Properties cache) {
+    final Path path = cachePath;
+    if (path == null)
+      return;
+    try {
+      if (path.getParent() != null)
+        Files.createDirectories(path.getParent());
+      try (OutputStream out = Files.newOutputStream(path)) {
+        cache.store(out, "peticodiac4J solver calibration");
+      }
+    } catch (final IOException e) {
+      logger.log(Level.FINE, "SolverDispatcher: unable to write " + path, e);
+    }
+  }
+
+}
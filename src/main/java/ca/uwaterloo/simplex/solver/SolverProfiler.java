@@ -1,6 +1,7 @@
 package ca.uwaterloo.simplex.solver;
 
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 /**
  * This class provides a wrapper around an <code>AbstractSolver</code> for the purpose of profiling
@@ -11,6 +12,7 @@ import java.util.List;
 public final class SolverProfiler implements Solver {
 
   private final AbstractSolver solver;
+  private final boolean printTableau;
 
   public long steps = 0;
   public double timeCheckBounds = 0.0;
@@ -23,7 +25,17 @@ public final class SolverProfiler implements Solver {
    * Instantiates the profiler with a solver instance.
    */
   public SolverProfiler(final AbstractSolver solver) {
+    this(solver, true);
+  }
+
+  /**
+   * Instantiates the profiler with a solver instance.
+   *
+   * @param printTableau Whether to print the initial tableau at the start of each solve.
+   */
+  public SolverProfiler(final AbstractSolver solver, final boolean printTableau) {
     this.solver = solver;
+    this.printTableau = printTableau;
   }
 
   /**
@@ -42,15 +54,35 @@ public final class SolverProfiler implements Solver {
     System.out.printf("solve()                : %.3f ms\n", timeSolve);
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @throws CancellationException If the wrapped solver is cancelled while solving.
+   */
   @Override
   public boolean solve() {
+    final long prevSteps = steps;
+    final double prevCheckBounds = timeCheckBounds;
+    final double prevFindSuitable = timeFindSuitable;
+    final double prevPivot = timePivot;
+    final double prevUpdateAssignment = timeUpdateAssignment;
     timeSolve = -System.nanoTime();
     boolean val = solveProcedure();
     timeSolve += System.nanoTime();
+    final SolverStatistics stats = SolverStatistics.get();
+    stats.recordSolve(solver.getClass(), solver.numRows, solver.numColumns, val,
+        steps - prevSteps, (long) timeSolve);
+    stats.recordPrimitives(millisToNanos(timeCheckBounds - prevCheckBounds),
+        millisToNanos(timeFindSuitable - prevFindSuitable), millisToNanos(timePivot - prevPivot),
+        millisToNanos(timeUpdateAssignment - prevUpdateAssignment));
     timeSolve *= 1.0e-6;
     return val;
   }
 
+  private static long millisToNanos(final double millis) {
+    return (long) (millis * 1.0e6);
+  }
+
   /**
    * An implementation of the solving procedure.
    * 
@@ -59,10 +91,13 @@ public final class SolverProfiler implements Solver {
    */
   private boolean solveProcedure() {
     solver.preSolve();
-    printTableau();
+    if (printTableau)
+      printTableau();
     int brokenIdx = 0;
     int suitableIdx = 0;
     while ((brokenIdx = checkBounds()) >= 0) {
+      if (solver.isCancelled())
+        throw new CancellationException();
       if ((suitableIdx = findSuitable(brokenIdx)) < 0)
         return false;
       pivot(brokenIdx, suitableIdx);
@@ -86,6 +121,11 @@ public final class SolverProfiler implements Solver {
     return solver.solution();
   }
 
+  @Override
+  public float[] solutionInto(final float[] dest) {
+    return solver.solutionInto(dest);
+  }
+
   protected int checkBounds() {
     double time = -System.nanoTime();
     final int val = solver.checkBounds();
@@ -0,0 +1,322 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.CancellationException;
+import java.util.function.BiFunction;
+import java.util.function.ToLongBiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Admits concurrent solves under a memory budget, so that many large problems arriving together
+ * wait in a queue instead of exhausting the heap. A solver allocates its tableau up front, so the
+ * memory of a solve is known from the dimensions of its problem before the solver is created. The
+ * factory of the solvers comes with an estimate of their footprint, such as
+ * {@link #footprint(int, int)} for <code>CpuSolver</code>s.
+ *
+ * <p>
+ * Submitted problems are queued by priority and, among problems of the same priority, by their
+ * estimated cost (see {@link #cost(int, int)}), cheapest first. Whenever a thread is free, the
+ * first queued problems whose footprint fits in the memory that is left are started; a problem
+ * that does not fit may be bypassed by smaller ones behind it, but only
+ * {@value #MAX_BYPASSES} times, after which nothing behind it starts until it has started, so that
+ * a large problem cannot starve. Each problem is solved by a solver of its own (a
+ * <code>CpuSolver</code> unless another factory is given), which is reset before the problem is
+ * loaded, so that a factory may return pooled solvers. A pooled solver must not be returned again
+ * before the solve it was returned for has ended.
+ * </p>
+ *
+ * <p>
+ * When a solve ends, its footprint is returned to the budget and the scheduler drops its
+ * reference to the solver, which frees nothing by itself: the heap of the solver is reclaimed by
+ * the garbage collector once nothing else refers to it, and the device memory of a device solver
+ * is not freed before the end of the process. The budget therefore bounds the heap of the solvers
+ * being solved, not the memory of the process, and a factory of device solvers should reuse them
+ * rather than create one per problem.
+ * </p>
+ */
+public final class SolverScheduler implements AutoCloseable {
+
+  private final static Logger logger = Logger.getLogger("Solver");
+
+  /** The number of times a queued problem may be bypassed by problems queued behind it. */
+  public final static int MAX_BYPASSES = 16;
+
+  /**
+   * The bytes per tableau entry: the dense tableau, and the sparse rows that a
+   * <code>CpuSolver</code> may keep next to it, which hold up to one column index and one value
+   * per entry.
+   */
+  private final static long BYTES_PER_ENTRY = 12;
+
+  /** The bytes per variable: its bounds and assignment, and its position in the maps and sets. */
+  private final static long BYTES_PER_VAR = 32;
+
+  private final int numThreads;
+  private final long memoryBudget;
+  private final BiFunction<Integer, Integer, AbstractSolver> factory;
+  private final ToLongBiFunction<Integer, Integer> footprint;
+  private final ExecutorService executor;
+
+  /** The problems waiting to be started, in the order in which they are admitted. */
+  private final TreeSet<Job> queue =
+      new TreeSet<>(Comparator.comparingInt((final Job job) -> -job.priority)
+          .thenComparingLong(job -> job.cost).thenComparingLong(job -> job.index));
+
+  // Guarded by this
+  private long nextIndex = 0;
+  private long memoryInUse = 0;
+  private int running = 0;
+  private boolean closed = false;
+
+  /**
+   * @param numThreads The maximum number of problems solved at the same time.
+   * @param memoryBudget The memory, in bytes, that the problems being solved may use together.
+   */
+  public SolverScheduler(final int numThreads, final long memoryBudget) {
+    this(numThreads, memoryBudget, CpuSolver::new, SolverScheduler::footprint);
+  }
+
+  /**
+   * @param numThreads The maximum number of problems solved at the same time.
+   * @param memoryBudget The memory, in bytes, that the problems being solved may use together.
+   * @param factory Creates a solver from the number of constraints and variables of a problem,
+   *        or returns one that is not in use, which the scheduler resets.
+   * @param footprint Estimates the memory, in bytes, of a solver of the factory (and of the
+   *        solution of its result) from the number of constraints and variables of a problem.
+   */
+  public SolverScheduler(final int numThreads, final long memoryBudget,
+      final BiFunction<Integer, Integer, AbstractSolver> factory,
+      final ToLongBiFunction<Integer, Integer> footprint) {
+    if (numThreads < 1 || memoryBudget < 1)
+      throw new RuntimeException("Invalid scheduler size.");
+    this.numThreads = numThreads;
+    this.memoryBudget = memoryBudget;
+    this.factory = factory;
+    this.footprint = footprint;
+    executor = Executors.newFixedThreadPool(numThreads, r -> {
+      final Thread t = new Thread(r, "SolverScheduler");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Returns a scheduler with one thread per available core, whose budget is half of the maximum
+   * heap.
+   */
+  public static SolverScheduler create() {
+    return new SolverScheduler(Runtime.getRuntime().availableProcessors(),
+        Runtime.getRuntime().maxMemory() / 2);
+  }
+
+  /**
+   * Returns an estimate of the memory, in bytes, of a <code>CpuSolver</code> for
+   * <code>numRows</code> constraints over <code>numColumns</code> variables, including the
+   * solution of its result.
+   */
+  public static long footprint(final int numRows, final int numColumns) {
+    return BYTES_PER_ENTRY * numRows * numColumns + BYTES_PER_VAR * (numRows + numColumns)
+        + Float.BYTES * numColumns;
+  }
+
+  /**
+   * Returns an estimate of the work of solving <code>numRows</code> constraints over
+   * <code>numColumns</code> variables: the work of a pivot, times a number of pivots that grows
+   * with the number of constraints. The estimate only ranks problems; it is not a time.
+   */
+  public static long cost(final int numRows, final int numColumns) {
+    return (long) numRows * numRows * numColumns;
+  }
+
+  /**
+   * Queues a problem with priority zero. See {@link #submit(Problem, int)}.
+   */
+  public Future<Result> submit(final Problem problem) {
+    return submit(problem, 0);
+  }
+
+  /**
+   * Queues a problem, which is started as soon as a thread is free and its footprint fits in the
+   * budget. The index of its result is the number of problems submitted before it. Cancelling the
+   * future removes a queued problem, and cancels the solver of a problem that is being solved.
+   *
+   * @param priority Problems of higher priority are started first.
+   * @throws RuntimeException If the footprint of the problem exceeds the whole budget, or if the
+   *         scheduler is closed.
+   */
+  public Future<Result> submit(final Problem problem, final int priority) {
+    final long footprint = this.footprint.applyAsLong(problem.numRows(), problem.numColumns());
+    if (footprint > memoryBudget)
+      throw new RuntimeException("The problem does not fit in the memory budget.");
+    synchronized (this) {
+      if (closed)
+        throw new RuntimeException("The scheduler is closed.");
+      final Job job = new Job(problem, priority, footprint, nextIndex++);
+      queue.add(job);
+      dispatch();
+      return job;
+    }
+  }
+
+  /** Returns the memory, in bytes, reserved by the problems being solved. */
+  public synchronized long memoryInUse() {
+    return memoryInUse;
+  }
+
+  /** Returns the number of problems waiting to be started. */
+  public synchronized int numQueued() {
+    return queue.size();
+  }
+
+  /** Returns the number of problems being solved. */
+  public synchronized int numRunning() {
+    return running;
+  }
+
+  /**
+   * Starts the queued problems, in order, that fit in the threads and the memory that are left.
+   * Each problem that is started past one that does not fit counts as a bypass of the latter.
+   */
+  private synchronized void dispatch() {
+    final List<Job> blocked = new ArrayList<>();
+    final Iterator<Job> it = queue.iterator();
+    while (running < numThreads && it.hasNext()) {
+      final Job job = it.next();
+      if (memoryInUse + job.footprint > memoryBudget) {
+        if (logger.isLoggable(Level.FINE))
+          logger.log(Level.FINE, "SolverScheduler: problem " + job.index + " waits for "
+              + (memoryInUse + job.footprint - memoryBudget) + " bytes");
+        blocked.add(job);
+        if (job.bypasses >= MAX_BYPASSES)
+          break;
+        continue;
+      }
+      it.remove();
+      for (final Job b : blocked)
+        b.bypasses++;
+      memoryInUse += job.footprint;
+      running++;
+      executor.execute(() -> {
+        try {
+          job.run();
+        } finally {
+          finished(job);
+        }
+      });
+      if (blocked.stream().anyMatch(b -> b.bypasses >= MAX_BYPASSES))
+        break;
+    }
+  }
+
+  /** Releases the memory and the thread of a problem, and starts the problems that now fit. */
+  private synchronized void finished(final Job job) {
+    memoryInUse -= job.footprint;
+    running--;
+    if (!closed)
+      dispatch();
+  }
+
+  /**
+   * Cancels the queued problems and stops the threads. Problems that are being solved are
+   * completed first.
+   */
+  @Override
+  public void close() {
+    final List<Job> cancelled;
+    synchronized (this) {
+      closed = true;
+      cancelled = new ArrayList<>(queue);
+      queue.clear();
+    }
+    for (final Job job : cancelled)
+      job.cancel(false);
+    executor.shutdown();
+  }
+
+  /** A queued problem, and the future of its result. */
+  private final class Job extends FutureTask<Result> {
+    private final Solve solve;
+    private final int priority;
+    private final long footprint;
+    private final long cost;
+    private final long index;
+    private int bypasses = 0;
+
+    Job(final Problem problem, final int priority, final long footprint, final long index) {
+      this(new Solve(problem, index, factory), priority, footprint);
+    }
+
+    private Job(final Solve solve, final int priority, final long footprint) {
+      super(solve);
+      this.solve = solve;
+      this.priority = priority;
+      this.footprint = footprint;
+      this.cost = cost(solve.problem.numRows(), solve.problem.numColumns());
+      this.index = solve.index;
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+      if (!super.cancel(mayInterruptIfRunning))
+        return false;
+      // Either the solve sees the flag once its solver exists, or the solver is seen here
+      solve.cancelled = true;
+      final AbstractSolver solver = solve.solver;
+      if (solver != null)
+        solver.cancel();
+      synchronized (SolverScheduler.this) {
+        queue.remove(this);
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Solves a problem on a solver of its own, which is reset before the problem is loaded. The
+   * reference to the solver is dropped once the result is known.
+   */
+  private static final class Solve implements Callable<Result> {
+    private final Problem problem;
+    private final long index;
+    private final BiFunction<Integer, Integer, AbstractSolver> factory;
+    private volatile AbstractSolver solver = null;
+    private volatile boolean cancelled = false;
+
+    Solve(final Problem problem, final long index,
+        final BiFunction<Integer, Integer, AbstractSolver> factory) {
+      this.problem = problem;
+      this.index = index;
+      this.factory = factory;
+    }
+
+    @Override
+    public Result call() {
+      final AbstractSolver created = factory.apply(problem.numRows(), problem.numColumns());
+      // Reset before the solver is published, so that a concurrent cancel() is not cleared
+      created.reset();
+      solver = created;
+      try {
+        if (cancelled)
+          throw new CancellationException();
+        problem.loadInto(solver);
+        solver.preSolve();
+        if (!solver.solve())
+          return new Result(index, false, null);
+        return new Result(index, true, solver.solutionInto(new float[problem.numColumns()]));
+      } finally {
+        solver = null;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,207 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide statistics of every solve, exposed over JMX. Every call to
+ * <code>AbstractSolver.solve()</code> records its verdict, number of pivots, duration, backend and
+ * tableau dimensions, and every <code>SolverProfiler</code> also records the time spent in each
+ * primitive.
+ *
+ * <p>
+ * The counters are <code>LongAdder</code>s and <code>LongAccumulator</code>s, which keep a separate
+ * cell per contending thread, so that concurrent solves do not contend on a shared counter.
+ * Recording does not allocate once a backend has been seen.
+ * </p>
+ */
+public final class SolverStatistics implements SolverStatisticsMXBean {
+
+  /** The name under which the statistics are registered. */
+  public final static String OBJECT_NAME = "ca.uwaterloo.simplex:type=SolverStatistics";
+
+  private final static Logger logger = Logger.getLogger("Solver");
+  private final static SolverStatistics instance = new SolverStatistics();
+
+  static {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(instance,
+          new ObjectName(OBJECT_NAME));
+    } catch (final InstanceAlreadyExistsException e) {
+      // Loaded by another class loader, which keeps its own statistics
+    } catch (final JMException | SecurityException e) {
+      logger.log(Level.WARNING, "SolverStatistics: unable to register " + OBJECT_NAME, e);
+    }
+  }
+
+  private final LongAdder solves = new LongAdder();
+  private final LongAdder sat = new LongAdder();
+  private final LongAdder pivots = new LongAdder();
+  private final LongAdder solveNanos = new LongAdder();
+  private final LongAdder profiledSolves = new LongAdder();
+  private final LongAdder checkBoundsNanos = new LongAdder();
+  private final LongAdder findSuitableNanos = new LongAdder();
+  private final LongAdder pivotNanos = new LongAdder();
+  private final LongAdder updateAssignmentNanos = new LongAdder();
+  private final LongAccumulator maxRows = new LongAccumulator(Math::max, 0);
+  private final LongAccumulator maxColumns = new LongAccumulator(Math::max, 0);
+  private final ConcurrentHashMap<Class<?>, LongAdder> backends = new ConcurrentHashMap<>();
+  private volatile long startNanos = System.nanoTime();
+
+  private SolverStatistics() {}
+
+  /** Returns the statistics of this process. */
+  public static SolverStatistics get() {
+    return instance;
+  }
+
+  /**
+   * Records a completed solve.
+   *
+   * @param backend The solver class.
+   * @param numRows The number of rows of the tableau.
+   * @param numColumns The number of columns of the tableau.
+   * @param result The verdict.
+   * @param numPivots The number of pivots performed.
+   * @param nanos The duration of the solve.
+   */
+  void recordSolve(final Class<?> backend, final int numRows, final int numColumns,
+      final boolean result, final long numPivots, final long nanos) {
+    solves.increment();
+    if (result)
+      sat.increment();
+    pivots.add(numPivots);
+    solveNanos.add(nanos);
+    maxRows.accumulate(numRows);
+    maxColumns.accumulate(numColumns);
+    LongAdder count = backends.get(backend);
+    if (count == null)
+      count = backends.computeIfAbsent(backend, b -> new LongAdder());
+    count.increment();
+  }
+
+  /** Records the time spent in each primitive by a profiled solve. */
+  void recordPrimitives(final long checkBounds, final long findSuitable, final long pivot,
+      final long updateAssignment) {
+    profiledSolves.increment();
+    checkBoundsNanos.add(checkBounds);
+    findSuitableNanos.add(findSuitable);
+    pivotNanos.add(pivot);
+    updateAssignmentNanos.add(updateAssignment);
+  }
+
+  @Override
+  public long getSolves() {
+    return solves.sum();
+  }
+
+  @Override
+  public long getSatisfiable() {
+    return sat.sum();
+  }
+
+  @Override
+  public long getUnsatisfiable() {
+    return Math.max(0, solves.sum() - sat.sum());
+  }
+
+  @Override
+  public double getSatRatio() {
+    final long n = solves.sum();
+    return n == 0 ? 0.0 : (double) sat.sum() / n;
+  }
+
+  @Override
+  public double getSolvesPerSecond() {
+    final double seconds = (System.nanoTime() - startNanos) * 1.0e-9;
+    return seconds <= 0.0 ? 0.0 : solves.sum() / seconds;
+  }
+
+  @Override
+  public long getPivots() {
+    return pivots.sum();
+  }
+
+  @Override
+  public double getPivotsPerSolve() {
+    final long n = solves.sum();
+    return n == 0 ? 0.0 : (double) pivots.sum() / n;
+  }
+
+  @Override
+  public double getAverageSolveMillis() {
+    final long n = solves.sum();
+    return n == 0 ? 0.0 : solveNanos.sum() * 1.0e-6 / n;
+  }
+
+  @Override
+  public long getProfiledSolves() {
+    return profiledSolves.sum();
+  }
+
+  @Override
+  public double getCheckBoundsMillis() {
+    return checkBoundsNanos.sum() * 1.0e-6;
+  }
+
+  @Override
+  public double getFindSuitableMillis() {
+    return findSuitableNanos.sum() * 1.0e-6;
+  }
+
+  @Override
+  public double getPivotMillis() {
+    return pivotNanos.sum() * 1.0e-6;
+  }
+
+  @Override
+  public double getUpdateAssignmentMillis() {
+    return updateAssignmentNanos.sum() * 1.0e-6;
+  }
+
+  @Override
+  public Map<String, Long> getSolvesByBackend() {
+    final Map<String, Long> result = new TreeMap<>();
+    for (final Map.Entry<Class<?>, LongAdder> e : backends.entrySet())
+      result.merge(e.getKey().getSimpleName(), e.getValue().sum(), Long::sum);
+    return result;
+  }
+
+  @Override
+  public long getMaxRows() {
+    return maxRows.get();
+  }
+
+  @Override
+  public long getMaxColumns() {
+    return maxColumns.get();
+  }
+
+  @Override
+  public void reset() {
+    solves.reset();
+    sat.reset();
+    pivots.reset();
+    solveNanos.reset();
+    profiledSolves.reset();
+    checkBoundsNanos.reset();
+    findSuitableNanos.reset();
+    pivotNanos.reset();
+    updateAssignmentNanos.reset();
+    maxRows.reset();
+    maxColumns.reset();
+    backends.clear();
+    startNanos = System.nanoTime();
+  }
+
+}
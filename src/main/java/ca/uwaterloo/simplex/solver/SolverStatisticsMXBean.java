@@ -0,0 +1,62 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link SolverStatistics}, registered under the name
+ * <code>ca.uwaterloo.simplex:type=SolverStatistics</code>.
+ */
+public interface SolverStatisticsMXBean {
+
+  /** Returns the number of completed calls to <code>solve()</code>. */
+  long getSolves();
+
+  /** Returns the number of solves that found a solution. */
+  long getSatisfiable();
+
+  /** Returns the number of solves that proved the problem unsatisfiable. */
+  long getUnsatisfiable();
+
+  /** Returns the fraction of solves that found a solution. */
+  double getSatRatio();
+
+  /** Returns the average number of solves per second since the statistics were last reset. */
+  double getSolvesPerSecond();
+
+  /** Returns the total number of pivots performed by <code>solve()</code>. */
+  long getPivots();
+
+  /** Returns the average number of pivots per solve. */
+  double getPivotsPerSolve();
+
+  /** Returns the average wall-clock time of a solve, in milliseconds. */
+  double getAverageSolveMillis();
+
+  /** Returns the number of solves run through a <code>SolverProfiler</code>. */
+  long getProfiledSolves();
+
+  /** Returns the total time spent in checkBounds() by profiled solves, in milliseconds. */
+  double getCheckBoundsMillis();
+
+  /** Returns the total time spent in findSuitable() by profiled solves, in milliseconds. */
+  double getFindSuitableMillis();
+
+  /** Returns the total time spent in pivot() by profiled solves, in milliseconds. */
+  double getPivotMillis();
+
+  /** Returns the total time spent in updateAssignment() by profiled solves, in milliseconds. */
+  double getUpdateAssignmentMillis();
+
+  /** Returns the number of solves by each backend, keyed by the name of the solver class. */
+  Map<String, Long> getSolvesByBackend();
+
+  /** Returns the largest number of rows of a solved tableau. */
+  long getMaxRows();
+
+  /** Returns the largest number of columns of a solved tableau. */
+  long getMaxColumns();
+
+  /** Sets every statistic back to zero. */
+  void reset();
+
+}
@@ -0,0 +1,576 @@
+package ca.uwaterloo.simplex.solver;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.logging.Level;
+
+import ca.uwaterloo.shediac.KernelMgr;
+import ca.uwaterloo.shediac.KernelMgr.DeviceType;
+import ca.uwaterloo.shediac.memory.Memory;
+import ca.uwaterloo.simplex.bounds.DeviceBounds;
+
+/**
+ * A device solver that stores the tableau in the ELLPACK format instead of as a dense array, so
+ * that the device memory and the work of each step grow with the number of nonzeros rather than
+ * with <code>rows * columns</code>. Every row of the device tableau has room for the same number
+ * of entries (the <i>width</i>), with ascending column indices, and the <code>sparse_*</code>
+ * kernels work on one row (or one entry) per work-item: the suitable variable is searched among
+ * the nonzeros of the broken row only, and a pivot merges the pivot row into the rows that have a
+ * nonzero in the pivot column, as the sparse rows of {@link CpuSolver} do.
+ *
+ * <p>
+ * A pivot may fill in rows beyond the width. Before each pivot, the <code>sparse_pivot_count</code>
+ * kernel computes the longest row the pivot will produce, and if it does not fit, the width is
+ * doubled (up to the number of columns) before the pivot is enqueued. Since the entries of a row
+ * are strided by the number of rows, growing the width does not move any entry. The initial width
+ * is twice the longest row of the tableau given to {@link #preSolve()}.
+ * </p>
+ *
+ * <p>
+ * Device memory cannot be freed before the end of the process, so the width at least doubles
+ * whenever it grows, which keeps the buffers left behind by all the earlier widths smaller than
+ * the current ones, and a solver keeps its buffers when it is reset.
+ * </p>
+ *
+ * <p>
+ * The solver has no dense host tableau. Added constraints are stored in the host arrays of the
+ * device tableau, which {@link #preSolve()} copies to the device. Afterwards, the device holds the
+ * current tableau, and the host reads it back (in one transfer per array) only when an entry is
+ * requested. Only a refactorization (see {@link #setResidualCheck(int, float)}) builds a dense
+ * tableau, which is released once it has been stored.
+ * </p>
+ */
+public class SparseDeviceSolver extends AbstractSolver {
+
+  /** The smallest width of the device tableau. */
+  private final static int MIN_WIDTH = 4;
+
+  /** The largest workgroup used by the kernels. */
+  private final static int MAX_WORKGROUP_SIZE = 64;
+
+  private final static float[] NO_TABLEAU = new float[0];
+
+  private final DeviceType type;
+  private final KernelMgr mgr;
+
+  private final DeviceBounds devBounds;
+  private final int groupId;
+  private final Memory memOutput;
+  private final Memory memAlpha;
+  private final Memory memColToVar;
+  private final Memory memRowToVar;
+  private final Memory memVarToTableau;
+  private final int[] output = new int[1];
+  private final byte[] flags;
+
+  /*
+   * The device tableau in the ELLPACK format (see the sparse kernels): entry k of row i is at
+   * k * maxNumRows + i in cols and vals, and row i has nnz[i] entries. The host arrays back the
+   * device memory, and vals holds the bits of each value. They match the device only when
+   * hostCurrent is true. The device memory has room for deviceWidth entries per row, which is
+   * less than width only until the next upload.
+   */
+  private int width = 0;
+  private int deviceWidth = 0;
+  private int[] cols;
+  private int[] vals;
+  private final int[] nnz;
+  private Memory memCols;
+  private Memory memVals;
+  private final Memory memNnz;
+  private boolean hostCurrent = true;
+
+  private boolean argumentsAdded = false;
+  private boolean prepared = false;
+
+  /** The host array read back by {@link #solutionView()}, and a view of it. */
+  private final float[] hostSolution;
+  private final FloatBuffer hostSolutionView;
+
+  private final String cuFilename = "kernels/generalSimplex.cu";
+  private final String clFilename = "kernels/generalSimplex.cl";
+
+  private final String[] kernelNames = new String[] {"sparse_check_bounds",
+      "sparse_find_suitable", "sparse_find_suitable_complete", "sparse_pivot_count",
+      "sparse_pivot_load_alpha", "sparse_pivot_update_inner", "sparse_pivot_update_row",
+      "sparse_pivot_update_column", "sparse_pivot_complete", "sparse_update_assignment"};
+
+  /** Positions of the kernels in {@link #kernelNames} and {@link #kernels}. */
+  private final static int CHECK_BOUNDS = 0;
+  private final static int FIND_SUITABLE = 1;
+  private final static int FIND_SUITABLE_COMPLETE = 2;
+  private final static int PIVOT_COUNT = 3;
+  private final static int PIVOT_LOAD_ALPHA = 4;
+  private final static int PIVOT_UPDATE_INNER = 5;
+  private final static int PIVOT_UPDATE_ROW = 6;
+  private final static int PIVOT_UPDATE_COLUMN = 7;
+  private final static int PIVOT_COMPLETE = 8;
+  private final static int UPDATE_ASSIGNMENT = 9;
+
+  /** The kernels whose first argument is the number of rows. */
+  private final static int[] ROW_KERNELS = {CHECK_BOUNDS, PIVOT_COUNT, PIVOT_UPDATE_INNER,
+      PIVOT_UPDATE_COLUMN, UPDATE_ASSIGNMENT};
+
+  /** The kernel ids, indexed by the constants above. */
+  private final int[] kernels = new int[kernelNames.length];
+
+  /*
+   * The positions of the cols and vals arguments of each kernel, or -1 if the kernel does not take
+   * them. These arguments are replaced when the width grows.
+   */
+  private final int[] colsArgument = new int[kernelNames.length];
+  private final int[] valsArgument = new int[kernelNames.length];
+
+  /** Launch dimensions, created once so that the solving steps do not allocate. */
+  private final int workgroupSize;
+  private final long[] single = new long[] {1, 1, 1};
+  private final long[] localGroup;
+  private final long[] globalRows = new long[] {0, 1, 1};
+  private final long[] globalWidth = new long[] {0, 1, 1};
+
+  /**
+   * @param maxNumBasic The largest number of constraints.
+   * @param numNonbasic The number of (original) variables.
+   * @param type The type of device.
+   * @param platformId The platform of the device.
+   * @param deviceId The device.
+   * @param enableExceptions Whether errors on the device throw exceptions.
+   */
+  SparseDeviceSolver(final int maxNumBasic, final int numNonbasic, final DeviceType type,
+      final int platformId, final int deviceId, final boolean enableExceptions) {
+    super(maxNumBasic, numNonbasic, BoundsType.Device, NO_TABLEAU);
+    // An interval check reads every entry of the tableau, zero or not
+    setIntervalCheck(0);
+
+    this.type = type;
+    this.devBounds = ((DeviceBounds) bounds);
+    final String filename = type == DeviceType.CUDA ? cuFilename : clFilename;
+
+    // Set flags indicating which vars are "basic"
+    flags = new byte[numVars];
+    for (int i = numNonbasic; i < numVars; i++)
+      flags[i] = 1;
+
+    mgr = new KernelMgr();
+    groupId = mgr.createKernelGroup(type, platformId, deviceId, enableExceptions);
+    for (int i = 0; i < kernelNames.length; i++)
+      kernels[i] = mgr.addKernel(groupId, filename, kernelNames[i]);
+
+    int size = 1;
+    final long maxWorkgroupSize = mgr.getDevice(groupId).maxWorkGroupSize();
+    while (size * 2 <= Math.min(MAX_WORKGROUP_SIZE, maxWorkgroupSize))
+      size *= 2;
+    workgroupSize = size;
+    localGroup = new long[] {workgroupSize, 1, 1};
+
+    // Allocate device memory; the tableau itself is allocated by preSolve()
+    nnz = new int[maxNumRows];
+    memNnz = mgr.allocateDeviceFromHost(groupId, nnz);
+    memOutput = mgr.allocateDeviceFromHost(groupId, output);
+    memAlpha = mgr.allocateDevice(groupId, Float.BYTES);
+    memColToVar = mgr.allocateDeviceFromHost(groupId, colToVar);
+    memRowToVar = mgr.allocateDeviceFromHost(groupId, rowToVar);
+    memVarToTableau = mgr.allocateDeviceFromHost(groupId, varToTableau);
+
+    final int bytes = Float.BYTES * numVars;
+    devBounds.memAssigns = mgr.allocateDeviceFromHost(groupId, devBounds.hostAssigns());
+    devBounds.memLower = mgr.allocateDevice(groupId, bytes);
+    devBounds.memUpper = mgr.allocateDevice(groupId, bytes);
+    devBounds.memFlags = mgr.allocateDeviceFromHost(groupId, flags);
+
+    hostSolution = new float[numColumns];
+    hostSolutionView = FloatBuffer.wrap(hostSolution).asReadOnlyBuffer();
+
+    // Set default upper bounds and assignments
+    for (int i = 0; i < numVars; i++) {
+      bounds.setUpperBound(i, NO_BOUND);
+      bounds.setAssignment(i, 0.0f);
+    }
+  }
+
+  /**
+   * Copies the tableau from the host to the device and adds the kernel arguments. Since the device
+   * then holds the current tableau, later calls have no effect until the solver is reset.
+   */
+  @Override
+  public void preSolve() {
+    if (prepared)
+      return;
+    prepared = true;
+    memColToVar.copyHtoD();
+    memRowToVar.copyHtoD();
+    memVarToTableau.copyHtoD();
+    upload();
+  }
+
+  /** Returns the number of entries each row of the device tableau has room for. */
+  public int width() {
+    return width;
+  }
+
+  /**
+   * Copies the host arrays into the device tableau, making it wider first if the longest row
+   * leaves less room than itself for fill-in.
+   */
+  private void upload() {
+    Arrays.fill(nnz, numRows, maxNumRows, 0);
+    int longest = 0;
+    for (int i = 0; i < numRows; i++)
+      longest = Math.max(longest, nnz[i]);
+    ensureWidth(Math.max(1, 2 * longest));
+    allocateDevice();
+    memNnz.copyHtoD();
+    hostCurrent = true;
+    rowsChanged();
+  }
+
+  /**
+   * Copies <code>values</code>, starting at <code>offset</code>, into row <code>i</code> of the
+   * host arrays of the device tableau.
+   */
+  private void gatherRow(final int i, final float[] values, final int offset) {
+    int count = 0;
+    for (int j = 0; j < numColumns; j++)
+      if (values[offset + j] != 0.0f)
+        count++;
+    ensureWidth(count);
+    int k = 0;
+    for (int j = 0; j < numColumns; j++) {
+      final float val = values[offset + j];
+      if (val != 0.0f) {
+        cols[k * maxNumRows + i] = j;
+        vals[k * maxNumRows + i] = Float.floatToRawIntBits(val);
+        k++;
+      }
+    }
+    nnz[i] = k;
+  }
+
+  /**
+   * Makes the tableau at least <code>required</code> entries wide, and at least twice as wide as
+   * it was. Once the device holds the tableau, its entries are kept.
+   */
+  private void ensureWidth(final int required) {
+    if (required <= width)
+      return;
+    final int newWidth = Math.min(numColumns, Math.max(MIN_WIDTH, Math.max(required, 2 * width)));
+    download();
+    final int size = maxNumRows * newWidth;
+    cols = cols == null ? new int[size] : Arrays.copyOf(cols, size);
+    vals = vals == null ? new int[size] : Arrays.copyOf(vals, size);
+    if (logger.isLoggable(Level.FINE))
+      logger.log(Level.FINE, "SparseDeviceSolver: width " + width + " -> " + newWidth);
+    width = newWidth;
+    if (prepared)
+      allocateDevice();
+  }
+
+  /**
+   * Copies the host arrays into the device tableau, which is allocated first unless it already
+   * has room for the width.
+   */
+  private void allocateDevice() {
+    if (deviceWidth < width) {
+      memCols = mgr.allocateDeviceFromHost(groupId, cols);
+      memVals = mgr.allocateDeviceFromHost(groupId, vals);
+      deviceWidth = width;
+      if (!argumentsAdded) {
+        addArguments();
+      } else {
+        for (int k = 0; k < kernels.length; k++) {
+          if (colsArgument[k] >= 0)
+            mgr.setArgument(groupId, kernels[k], colsArgument[k], memCols.getDeviceBuffer());
+          if (valsArgument[k] >= 0)
+            mgr.setArgument(groupId, kernels[k], valsArgument[k], memVals.getDeviceBuffer());
+        }
+      }
+    }
+    globalWidth[0] = launchSize(width);
+    memCols.copyHtoD();
+    memVals.copyHtoD();
+  }
+
+  /** Reads the device tableau back into the host arrays, unless they are current. */
+  private void download() {
+    if (hostCurrent)
+      return;
+    memNnz.copyDtoH();
+    memCols.copyDtoH();
+    memVals.copyDtoH();
+    hostCurrent = true;
+  }
+
+  /** Adds the arguments of every kernel, with the scalars first. */
+  private void addArguments() {
+    argumentsAdded = true;
+    addArgs(CHECK_BOUNDS, new Integer[] {numRows}, devBounds.memLower, devBounds.memUpper,
+        devBounds.memAssigns, memRowToVar, memOutput);
+    addArgs(FIND_SUITABLE, new Integer[] {0, maxNumRows, 0}, memCols, memVals, memNnz,
+        devBounds.memLower, devBounds.memUpper, devBounds.memAssigns, memColToVar, memOutput);
+    addArgs(FIND_SUITABLE_COMPLETE, new Integer[] {0, maxNumRows, 0, 0}, memCols, memVals,
+        memNnz, devBounds.memLower, devBounds.memUpper, devBounds.memAssigns, memVarToTableau);
+    addArgs(PIVOT_COUNT, new Integer[] {numRows, maxNumRows, 0, 0}, memCols, memVals, memNnz,
+        memOutput);
+    addArgs(PIVOT_LOAD_ALPHA, new Integer[] {maxNumRows, 0, 0}, memCols, memVals, memNnz,
+        memAlpha);
+    addArgs(PIVOT_UPDATE_INNER, new Integer[] {numRows, maxNumRows, 0, 0}, memCols, memVals,
+        memNnz, memAlpha);
+    addArgs(PIVOT_UPDATE_ROW, new Integer[] {maxNumRows, 0}, memVals, memNnz, memAlpha);
+    addArgs(PIVOT_UPDATE_COLUMN, new Integer[] {numRows, maxNumRows, 0, 0}, memCols, memVals,
+        memNnz, memAlpha);
+    addArgs(PIVOT_COMPLETE, new Integer[] {maxNumRows, 0, 0, 0, 0}, memCols, memVals, memNnz,
+        memAlpha, memColToVar, memRowToVar, memVarToTableau, devBounds.memFlags);
+    addArgs(UPDATE_ASSIGNMENT, new Integer[] {numRows, maxNumRows}, memCols, memVals, memNnz,
+        devBounds.memAssigns, memColToVar, memRowToVar);
+  }
+
+  /**
+   * Adds the scalar and then the memory arguments of a kernel, and records the positions of its
+   * tableau arguments.
+   */
+  private void addArgs(final int kernel, final Integer[] scalars, final Memory... buffers) {
+    final int kernelId = kernels[kernel];
+    for (final Integer val : scalars)
+      mgr.addArgumentScalar(groupId, kernelId, val);
+    colsArgument[kernel] = -1;
+    valsArgument[kernel] = -1;
+    for (int i = 0; i < buffers.length; i++) {
+      if (buffers[i] == memCols)
+        colsArgument[kernel] = scalars.length + i;
+      else if (buffers[i] == memVals)
+        valsArgument[kernel] = scalars.length + i;
+      mgr.addArgument(groupId, kernelId, buffers[i]);
+    }
+  }
+
+  /** Updates the kernels that depend on the number of rows. */
+  private void rowsChanged() {
+    for (final int kernel : ROW_KERNELS)
+      mgr.setArgumentScalar(groupId, kernels[kernel], 0, numRows);
+    globalRows[0] = launchSize(numRows);
+  }
+
+  /** Returns the smallest multiple of the workgroup size that is at least <code>n</code>. */
+  private long launchSize(final int n) {
+    return Math.max(1, (n + workgroupSize - 1) / workgroupSize) * (long) workgroupSize;
+  }
+
+  @Override
+  protected int checkBounds() {
+    output[0] = numVars;
+    memOutput.copyHtoD();
+    mgr.runKernel(groupId, kernels[CHECK_BOUNDS], globalRows, localGroup);
+    memOutput.copyDtoH();
+    final int result = output[0] != numVars ? output[0] : NONE_FOUND;
+    if (logger.isLoggable(Level.FINE))
+      logger.log(Level.FINE, "checkBounds: " + var2str(result) + " is broken");
+    return result;
+  }
+
+  @Override
+  protected int findSuitable(final int brokenIdx) {
+    final int row = varToTableau[brokenIdx];
+    int kernelId = kernels[FIND_SUITABLE];
+    output[0] = numVars;
+    memOutput.copyHtoD();
+    mgr.setArgumentScalar(groupId, kernelId, 0, row);
+    mgr.setArgumentScalar(groupId, kernelId, 2, brokenIdx);
+    mgr.runKernel(groupId, kernelId, globalWidth, localGroup);
+    memOutput.copyDtoH();
+    final int suitableIdx = output[0] != numVars ? output[0] : NONE_FOUND;
+
+    if (suitableIdx >= 0) {
+      kernelId = kernels[FIND_SUITABLE_COMPLETE];
+      mgr.setArgumentScalar(groupId, kernelId, 0, row);
+      mgr.setArgumentScalar(groupId, kernelId, 2, brokenIdx);
+      mgr.setArgumentScalar(groupId, kernelId, 3, suitableIdx);
+      mgr.runKernel(groupId, kernelId, single, single);
+    }
+    if (logger.isLoggable(Level.FINE))
+      logger.log(Level.FINE, "findSuitable: " + var2str(suitableIdx));
+    return suitableIdx;
+  }
+
+  /**
+   * Makes the device tableau wide enough for the pivot and enqueues the pivot kernels. The device
+   * updates its own mappings and flags, and the host updates its copy of the mappings while the
+   * kernels run.
+   */
+  @Override
+  protected void pivot(final int basicIdx, final int nonbasicIdx) {
+    if (logger.isLoggable(Level.FINE))
+      logger.log(Level.FINE,
+          "pivot: brokenIdx=" + var2str(basicIdx) + " suitableIdx=" + var2str(nonbasicIdx));
+    final int pivotRow = varToTableau[basicIdx];
+    final int pivotCol = varToTableau[nonbasicIdx];
+
+    // Grow the tableau if a row would overflow
+    int kernelId = kernels[PIVOT_COUNT];
+    output[0] = 0;
+    memOutput.copyHtoD();
+    mgr.setArgumentScalar(groupId, kernelId, 2, pivotRow);
+    mgr.setArgumentScalar(groupId, kernelId, 3, pivotCol);
+    mgr.runKernel(groupId, kernelId, globalRows, localGroup);
+    memOutput.copyDtoH();
+    ensureWidth(output[0]);
+
+    kernelId = kernels[PIVOT_LOAD_ALPHA];
+    mgr.setArgumentScalar(groupId, kernelId, 1, pivotRow);
+    mgr.setArgumentScalar(groupId, kernelId, 2, pivotCol);
+    mgr.runKernel(groupId, kernelId, single, single);
+
+    kernelId = kernels[PIVOT_UPDATE_INNER];
+    mgr.setArgumentScalar(groupId, kernelId, 2, pivotRow);
+    mgr.setArgumentScalar(groupId, kernelId, 3, pivotCol);
+    mgr.runKernel(groupId, kernelId, globalRows, localGroup);
+
+    kernelId = kernels[PIVOT_UPDATE_ROW];
+    mgr.setArgumentScalar(groupId, kernelId, 1, pivotRow);
+    mgr.runKernel(groupId, kernelId, globalWidth, localGroup);
+
+    kernelId = kernels[PIVOT_UPDATE_COLUMN];
+    mgr.setArgumentScalar(groupId, kernelId, 2, pivotRow);
+    mgr.setArgumentScalar(groupId, kernelId, 3, pivotCol);
+    mgr.runKernel(groupId, kernelId, globalRows, localGroup);
+
+    kernelId = kernels[PIVOT_COMPLETE];
+    mgr.setArgumentScalar(groupId, kernelId, 1, pivotRow);
+    mgr.setArgumentScalar(groupId, kernelId, 2, pivotCol);
+    mgr.setArgumentScalar(groupId, kernelId, 3, basicIdx);
+    mgr.setArgumentScalar(groupId, kernelId, 4, nonbasicIdx);
+    mgr.runKernel(groupId, kernelId, single, single);
+    hostCurrent = false;
+
+    // Swap the basic and nonbasic variables
+    colToVar[pivotCol] = basicIdx;
+    rowToVar[pivotRow] = nonbasicIdx;
+    varToTableau[basicIdx] = pivotCol;
+    varToTableau[nonbasicIdx] = pivotRow;
+  }
+
+  /** The sparse matrix-vector product of the tableau and the nonbasic assignments. */
+  @Override
+  protected void updateAssignment() {
+    mgr.runKernel(groupId, kernels[UPDATE_ASSIGNMENT], globalRows, localGroup);
+  }
+
+  /** {@inheritDoc} The row is stored in the host arrays of the device tableau. */
+  @Override
+  protected void setRow(final int row, final float[] values, final int offset) {
+    download();
+    gatherRow(row, values, offset);
+  }
+
+  /** {@inheritDoc} The device tableau is read back in one transfer per array. */
+  @Override
+  protected void getRow(final int row, final float[] dest, final int offset) {
+    download();
+    Arrays.fill(dest, offset, offset + numColumns, 0.0f);
+    for (int k = 0; k < nnz[row]; k++)
+      dest[offset + cols[k * maxNumRows + row]] = Float.intBitsToFloat(vals[k * maxNumRows + row]);
+  }
+
+  /**
+   * Once the device holds the tableau, a row added by <code>addConstraint</code> is copied to the
+   * device along with the rest of the tableau.
+   */
+  @Override
+  protected void rowAdded(final int row) {
+    if (!prepared)
+      return;
+    memNnz.copyHtoD();
+    memCols.copyHtoD();
+    memVals.copyHtoD();
+    rowsChanged();
+  }
+
+  /**
+   * {@inheritDoc} A refactorization writes a dense tableau, which {@link #basisChanged()} stores
+   * in the host arrays of the device tableau and then releases.
+   */
+  @Override
+  protected float[] hostTableau() {
+    if (tableau.length == 0)
+      tableau = new float[maxNumRows * numColumns];
+    return tableau;
+  }
+
+  /**
+   * {@inheritDoc} The host arrays are authoritative after a reset, a restore or a
+   * refactorization, so they are copied to the device along with the maps.
+   */
+  @Override
+  protected void basisChanged() {
+    if (tableau.length > 0) {
+      hostCurrent = true;
+      for (int i = 0; i < numRows; i++)
+        gatherRow(i, tableau, i * numColumns);
+      tableau = NO_TABLEAU;
+    }
+    memColToVar.copyHtoD();
+    memRowToVar.copyHtoD();
+    memVarToTableau.copyHtoD();
+    if (prepared)
+      upload();
+  }
+
+  /**
+   * {@inheritDoc} The device tableau is kept for the next problem, which {@link #preSolve()}
+   * copies to the device once it has been added.
+   */
+  @Override
+  public void reset() {
+    prepared = false;
+    hostCurrent = true;
+    super.reset();
+  }
+
+  /**
+   * {@inheritDoc} The device holds the assignments, so they are read back into a host array in one
+   * transfer, and the view holds them as of this call.
+   */
+  @Override
+  public FloatBuffer solutionView() {
+    solutionInto(hostSolution);
+    hostSolutionView.clear();
+    return hostSolutionView;
+  }
+
+  @Override
+  public String toString() {
+    return "SparseDeviceSolver [type=" + type + ", groupId=" + groupId + ", width=" + width
+        + "]";
+  }
+
+  /**
+   * Returns an entry of the current tableau. Once the device holds the tableau, the first call
+   * after a pivot reads it back into the host arrays.
+   */
+  @Override
+  protected float getTableauEntry(final int row, final int col) {
+    download();
+    int lo = 0;
+    int hi = nnz[row] - 1;
+    while (lo <= hi) {
+      final int mid = (lo + hi) >>> 1;
+      final int c = cols[mid * maxNumRows + row];
+      if (c < col)
+        lo = mid + 1;
+      else if (c > col)
+        hi = mid - 1;
+      else
+        return Float.intBitsToFloat(vals[mid * maxNumRows + row]);
+    }
+    return 0.0f;
+  }
+
+  private String var2str(final int varIdx) {
+    if (varIdx < 0)
+      return "none";
+    else if (varIdx >= numColumns)
+      return "s" + (varIdx - numColumns);
+    else
+      return "x" + varIdx;
+  }
+
+}
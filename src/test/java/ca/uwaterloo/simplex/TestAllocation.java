@@ -0,0 +1,84 @@
+package ca.uwaterloo.simplex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.uwaterloo.shediac.KernelMgr.DeviceType;
+import ca.uwaterloo.simplex.solver.AbstractSolver;
+import ca.uwaterloo.simplex.solver.DeviceSolver;
+import ca.uwaterloo.simplex.solver.Solver;
+
+/**
+ * Checks that the solving procedure does not allocate once the solver has been prepared, since
+ * per-pivot garbage dominates the GC load of long-running services.
+ */
+public class TestAllocation {
+
+  private static final int ROWS = 24;
+  private static final int COLS = 16;
+
+  private static void load(final Solver solver, final long seed) {
+    final Random rnd = new Random(seed);
+    for (int i = 0; i < ROWS; i++) {
+      final List<Float> cs = new ArrayList<>();
+      for (int j = 0; j < COLS; j++)
+        cs.add((float) rnd.nextInt(9) - 4.0f);
+      solver.addConstraint(cs);
+    }
+    for (int i = 0; i < ROWS; i++)
+      solver.setBounds(COLS + i, rnd.nextInt(4), Solver.NO_BOUND);
+  }
+
+  private static long allocatedBytes() {
+    final com.sun.management.ThreadMXBean bean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assertTrue(bean.isThreadAllocatedMemorySupported());
+    return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /** Only the device solver needs its kernels prepared before solving. */
+  private static void prepare(final AbstractSolver solver) {
+    if (solver instanceof DeviceSolver)
+      ((DeviceSolver) solver).preSolve();
+  }
+
+  private void test1(final AbstractSolver warmup, final AbstractSolver solver) {
+    load(warmup, 1);
+    prepare(warmup);
+    warmup.solve();
+    load(solver, 1);
+    prepare(solver);
+
+    // Calibrate the cost of measuring itself, keeping the smallest of a few runs
+    long overhead = Long.MAX_VALUE;
+    for (int i = 0; i < 3; i++) {
+      long o = -allocatedBytes();
+      o += allocatedBytes();
+      overhead = Math.min(overhead, o);
+    }
+
+    long allocated = -allocatedBytes();
+    solver.solve();
+    allocated += allocatedBytes();
+    assertEquals(0, allocated - overhead);
+  }
+
+  @Test
+  public void test1_cpu() {
+    test1(Solver.create(ROWS, COLS), Solver.create(ROWS, COLS));
+  }
+
+  @Test
+  public void test1_cuda() {
+    test1(Solver.create(ROWS, COLS, DeviceType.CUDA, 0, 0, true),
+        Solver.create(ROWS, COLS, DeviceType.CUDA, 0, 0, true));
+  }
+
+}
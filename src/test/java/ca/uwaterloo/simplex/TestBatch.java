@@ -0,0 +1,421 @@
+package ca.uwaterloo.simplex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+
+import org.junit.Test;
+
+import ca.uwaterloo.shediac.KernelMgr.DeviceType;
+import ca.uwaterloo.simplex.daemon.SolverClient;
+import ca.uwaterloo.simplex.daemon.SolverDaemon;
+import ca.uwaterloo.simplex.solver.AbstractSolver;
+import ca.uwaterloo.simplex.solver.BatchSolver;
+import ca.uwaterloo.simplex.solver.BatchedDeviceSolver;
+import ca.uwaterloo.simplex.solver.ParametricSolver;
+import ca.uwaterloo.simplex.solver.Problem;
+import ca.uwaterloo.simplex.solver.Result;
+import ca.uwaterloo.simplex.solver.Solver;
+import ca.uwaterloo.simplex.solver.SolverScheduler;
+
+public class TestBatch {
+
+  private static final int PROBLEMS = 200;
+
+  /** Creates random problems of a few different shapes. */
+  private static List<Problem> makeProblems() {
+    final Random rnd = new Random(34);
+    final List<Problem> problems = new ArrayList<>();
+    for (int k = 0; k < PROBLEMS; k++) {
+      final int rows = 2 + k % 3;
+      final int cols = 2 + k % 2;
+      final Problem problem = new Problem(rows, cols);
+      for (int i = 0; i < rows; i++) {
+        for (int j = 0; j < cols; j++)
+          problem.setCoefficient(i, j, rnd.nextInt(5) - 2.0f);
+        problem.setBounds(cols + i, rnd.nextInt(3), Solver.NO_BOUND);
+      }
+      problems.add(problem);
+    }
+    return problems;
+  }
+
+  private static void check(final Problem problem, final Result result) {
+    final AbstractSolver solver = Solver.create(problem.numRows(), problem.numColumns());
+    problem.load(solver);
+    if (solver.solve()) {
+      final float[] expected = new float[problem.numColumns()];
+      for (int j = 0; j < expected.length; j++)
+        expected[j] = solver.solution().get(j);
+      assertArrayEquals(expected, result.solution(), 0.0f);
+    } else {
+      assertNull(result.solution());
+    }
+  }
+
+  @Test
+  public void testOrdered() {
+    final List<Problem> problems = makeProblems();
+    final List<Result> results = new ArrayList<>();
+    try (BatchSolver batch = new BatchSolver(4, 8)) {
+      batch.solve(problems.stream(), results::add, true);
+    }
+    assertEquals(PROBLEMS, results.size());
+    for (int k = 0; k < PROBLEMS; k++) {
+      assertEquals(k, results.get(k).index());
+      check(problems.get(k), results.get(k));
+    }
+  }
+
+  @Test
+  public void testUnordered() {
+    final List<Problem> problems = makeProblems();
+    final Result[] results = new Result[PROBLEMS];
+    try (BatchSolver batch = new BatchSolver(4, 8)) {
+      batch.solve(problems.iterator(), r -> results[(int) r.index()] = r, false);
+    }
+    for (int k = 0; k < PROBLEMS; k++)
+      check(problems.get(k), results[k]);
+  }
+
+  /** Serves the connections of a daemon on a thread of its own. */
+  private static void serve(final SolverDaemon daemon) {
+    final Thread server = new Thread(() -> {
+      try {
+        daemon.serve();
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    server.setDaemon(true);
+    server.start();
+  }
+
+  /** Solves the problems through a client, both pipelined and one at a time. */
+  private static void checkClient(final SolverClient client, final List<Problem> problems)
+      throws IOException {
+    final List<Result> results = client.solveAll(problems);
+    assertEquals(PROBLEMS, results.size());
+    for (int k = 0; k < PROBLEMS; k++) {
+      assertEquals(k, results.get(k).index());
+      check(problems.get(k), results.get(k));
+    }
+    check(problems.get(0), client.solve(problems.get(0)));
+  }
+
+  @Test
+  public void testDaemon() throws IOException {
+    final List<Problem> problems = makeProblems();
+    try (BatchSolver batch = new BatchSolver(4, 8);
+        SolverDaemon daemon = SolverDaemon.open(null, 0, batch)) {
+      serve(daemon);
+      try (SolverClient client =
+          SolverClient.connect(((InetSocketAddress) daemon.address()).getPort())) {
+        checkClient(client, problems);
+      }
+    }
+  }
+
+  @Test
+  public void testDaemonUnix() throws IOException {
+    boolean unix = true;
+    try {
+      Class.forName("java.net.UnixDomainSocketAddress");
+    } catch (final ClassNotFoundException e) {
+      unix = false;
+    }
+    assumeTrue(unix);
+    final List<Problem> problems = makeProblems();
+    final Path dir = Files.createTempDirectory("simplex");
+    final Path socket = dir.resolve("solver.sock");
+    try (BatchSolver batch = new BatchSolver(4, 8);
+        SolverDaemon daemon = SolverDaemon.open(socket, 0, batch)) {
+      serve(daemon);
+      assertTrue(Files.exists(socket));
+      try (SolverClient client = SolverClient.connect(socket)) {
+        checkClient(client, problems);
+      }
+      // A second daemon does not take over the socket of a running one
+      boolean thrown = false;
+      try {
+        SolverDaemon.open(socket, 0, batch).close();
+      } catch (final RuntimeException e) {
+        thrown = true;
+      }
+      assertTrue(thrown);
+    }
+    assertTrue(!Files.exists(socket));
+    Files.delete(dir);
+  }
+
+  @Test
+  public void testLimits() throws IOException {
+    final List<Problem> problems = makeProblems();
+    final List<Result> results = new ArrayList<>();
+    try (BatchSolver batch = new BatchSolver(4, 8, (m, n) -> {
+      final AbstractSolver solver = Solver.create(m, n);
+      solver.setLimits(1, 0);
+      return solver;
+    })) {
+      batch.solve(problems.stream(), results::add, true);
+    }
+    int unknown = 0;
+    for (int k = 0; k < PROBLEMS; k++) {
+      final Result result = results.get(k);
+      assertEquals(k, result.index());
+      if (result.isUnknown()) {
+        unknown++;
+        assertTrue(!result.isSat());
+        assertNull(result.solution());
+      } else {
+        check(problems.get(k), result);
+      }
+    }
+    assertTrue(unknown > 0);
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Result.unknown(7).write(new DataOutputStream(bytes));
+    final Result read =
+        Result.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(7, read.index());
+    assertTrue(read.isUnknown());
+  }
+
+  @Test
+  public void testParametric() {
+    final Problem matrix = makeProblems().get(4);
+    final ParametricSolver parametric = new ParametricSolver(matrix);
+    final Random rnd = new Random(35);
+    final int sets = 50;
+    final float[][] lowers = new float[sets][matrix.numVars()];
+    final float[][] uppers = new float[sets][matrix.numVars()];
+    for (int k = 0; k < sets; k++) {
+      for (int i = 0; i < matrix.numVars(); i++) {
+        lowers[k][i] = i < matrix.numColumns() ? 0 : rnd.nextInt(4) - 1.0f;
+        uppers[k][i] = rnd.nextBoolean() ? Solver.NO_BOUND : lowers[k][i] + rnd.nextInt(3);
+      }
+    }
+    final Result[] results = parametric.solveAll(lowers, uppers);
+    for (int k = 0; k < sets; k++) {
+      final Problem problem = new Problem(matrix.numRows(), matrix.numColumns());
+      for (int i = 0; i < matrix.numRows(); i++)
+        for (int j = 0; j < matrix.numColumns(); j++)
+          problem.setCoefficient(i, j, matrix.getCoefficient(i, j));
+      for (int i = 0; i < matrix.numVars(); i++)
+        problem.setBounds(i, lowers[k][i], uppers[k][i]);
+      assertEquals(k, results[k].index());
+      check(problem, results[k]);
+    }
+
+    final ParametricSolver.View view = parametric.view();
+    assertTrue(view.solve());
+    assertTrue(view.numCopiedRows() <= matrix.numRows());
+  }
+
+  @Test
+  public void testScheduler() throws Exception {
+    final List<Problem> problems = makeProblems();
+    final List<Future<Result>> results = new ArrayList<>();
+    // Room for three of the largest problems at a time
+    try (SolverScheduler scheduler =
+        new SolverScheduler(4, 3 * SolverScheduler.footprint(4, 3))) {
+      for (int k = 0; k < PROBLEMS; k++)
+        results.add(scheduler.submit(problems.get(k), k % 3));
+      for (int k = 0; k < PROBLEMS; k++) {
+        assertEquals(k, results.get(k).get().index());
+        check(problems.get(k), results.get(k).get());
+      }
+    }
+  }
+
+  /**
+   * Returns a factory that records the number of constraints of each solver it creates, and holds
+   * the first one until <code>release</code> is counted down.
+   */
+  private static BiFunction<Integer, Integer, AbstractSolver> holdFirst(
+      final CountDownLatch release, final List<Integer> started) {
+    return (m, n) -> {
+      started.add(m);
+      try {
+        if (started.size() == 1)
+          release.await();
+      } catch (final InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      return Solver.create(m, n);
+    };
+  }
+
+  @Test
+  public void testSchedulerAdmission() throws Exception {
+    final int large = 20;
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<Integer> started = Collections.synchronizedList(new ArrayList<>());
+    final BiFunction<Integer, Integer, AbstractSolver> factory = holdFirst(release, started);
+    // The first large problem holds its thread until it is released
+    try (SolverScheduler scheduler = new SolverScheduler(2,
+        SolverScheduler.footprint(large, large) + SolverScheduler.footprint(2, 2), factory,
+        SolverScheduler::footprint)) {
+      final Future<Result> first = scheduler.submit(new Problem(large, large));
+      // Make sure the first problem is the one that is held
+      while (started.isEmpty())
+        Thread.yield();
+      final Future<Result> second = scheduler.submit(new Problem(large, large));
+      final Future<Result> small = scheduler.submit(new Problem(2, 2));
+      // The small problem bypasses the second large one, which does not fit
+      assertTrue(small.get().isSat());
+      assertTrue(!second.isDone());
+      assertEquals(1, scheduler.numQueued());
+      assertTrue(scheduler.memoryInUse() <= SolverScheduler.footprint(large, large)
+          + SolverScheduler.footprint(2, 2));
+      release.countDown();
+      assertTrue(first.get().isSat());
+      assertTrue(second.get().isSat());
+    }
+    assertEquals(Arrays.asList(large, 2, large), started);
+  }
+
+  @Test
+  public void testSchedulerPriority() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<Integer> started = Collections.synchronizedList(new ArrayList<>());
+    final BiFunction<Integer, Integer, AbstractSolver> factory = holdFirst(release, started);
+    try (SolverScheduler scheduler =
+        new SolverScheduler(1, Long.MAX_VALUE, factory, SolverScheduler::footprint)) {
+      final Future<Result> first = scheduler.submit(new Problem(1, 2));
+      final Future<Result> low = scheduler.submit(new Problem(2, 2), 0);
+      final Future<Result> cheap = scheduler.submit(new Problem(3, 2), 1);
+      final Future<Result> high = scheduler.submit(new Problem(4, 2), 1);
+      release.countDown();
+      assertEquals(0, first.get().index());
+      assertEquals(1, low.get().index());
+      assertEquals(2, cheap.get().index());
+      assertEquals(3, high.get().index());
+    }
+    // Higher priorities first, and the cheapest first among equal priorities
+    assertEquals(Arrays.asList(1, 3, 4, 2), started);
+  }
+
+  @Test
+  public void testSchedulerFootprint() throws Exception {
+    // Room for one row of the given footprint
+    try (SolverScheduler scheduler = new SolverScheduler(1, 1500, Solver::create,
+        (m, n) -> 1000L * m)) {
+      assertTrue(scheduler.submit(new Problem(1, 2)).get().isSat());
+      boolean thrown = false;
+      try {
+        scheduler.submit(new Problem(2, 2));
+      } catch (final RuntimeException e) {
+        thrown = true;
+      }
+      assertTrue(thrown);
+    }
+  }
+
+  @Test
+  public void testSchedulerPooled() throws Exception {
+    // The factory returns the same solver for every problem
+    final AbstractSolver pooled = Solver.create(1, 2);
+    final BiFunction<Integer, Integer, AbstractSolver> factory = (m, n) -> pooled;
+    // x0 + x1 >= 2, which x0, x1 <= 0 makes unsatisfiable
+    final Problem sat = new Problem(1, 2);
+    sat.setCoefficient(0, 0, 1.0f);
+    sat.setCoefficient(0, 1, 1.0f);
+    sat.setBounds(2, 2.0f, Solver.NO_BOUND);
+    final Problem unsat = new Problem(1, 2);
+    unsat.setCoefficient(0, 0, 1.0f);
+    unsat.setCoefficient(0, 1, 1.0f);
+    unsat.setBounds(0, 0.0f, 0.0f);
+    unsat.setBounds(1, 0.0f, 0.0f);
+    unsat.setBounds(2, 2.0f, Solver.NO_BOUND);
+    try (SolverScheduler scheduler =
+        new SolverScheduler(1, Long.MAX_VALUE, factory, SolverScheduler::footprint)) {
+      assertTrue(scheduler.submit(sat).get().isSat());
+      assertFalse(scheduler.submit(unsat).get().isSat());
+      assertTrue(scheduler.submit(sat).get().isSat());
+    }
+  }
+
+  @Test
+  public void testSchedulerCancel() throws Exception {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<AbstractSolver> created = Collections.synchronizedList(new ArrayList<>());
+    final BiFunction<Integer, Integer, AbstractSolver> factory = (m, n) -> {
+      entered.countDown();
+      try {
+        release.await();
+      } catch (final InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      final AbstractSolver solver = Solver.create(m, n);
+      created.add(solver);
+      return solver;
+    };
+    try (SolverScheduler scheduler =
+        new SolverScheduler(1, Long.MAX_VALUE, factory, SolverScheduler::footprint)) {
+      // x0 >= 1 needs a pivot
+      final Problem problem = new Problem(1, 1);
+      problem.setCoefficient(0, 0, 1.0f);
+      problem.setBounds(1, 1.0f, Solver.NO_BOUND);
+      final Future<Result> future = scheduler.submit(problem);
+      // Cancelled while its solver is being created
+      entered.await();
+      assertTrue(future.cancel(false));
+      release.countDown();
+      while (scheduler.numRunning() > 0)
+        Thread.sleep(1);
+      assertEquals(1, created.size());
+      assertEquals(0, created.get(0).numPivots());
+    }
+  }
+
+  @Test
+  public void testBatched_cuda() {
+    testBatched(DeviceType.CUDA);
+  }
+
+  @Test
+  public void testBatched_opencl() {
+    testBatched(DeviceType.OpenCL);
+  }
+
+  private static void testBatched(final DeviceType type) {
+    final List<Problem> problems = makeProblems();
+    final BatchedDeviceSolver batch = new BatchedDeviceSolver(PROBLEMS, 4, 3, type, 0, 0, true);
+    for (final Problem problem : problems)
+      batch.add(problem);
+    assertEquals(0, batch.solve(1000));
+    for (int k = 0; k < PROBLEMS; k++) {
+      final Problem problem = problems.get(k);
+      final AbstractSolver solver = Solver.create(problem.numRows(), problem.numColumns());
+      problem.load(solver);
+      assertEquals(solver.solve(), batch.result(k).isSat());
+      // The pivots are the same, but the device may round differently
+      if (batch.result(k).isSat())
+        for (int j = 0; j < problem.numColumns(); j++)
+          assertEquals(solver.solution().get(j), batch.result(k).solution()[j], 1e-4f);
+    }
+  }
+
+}
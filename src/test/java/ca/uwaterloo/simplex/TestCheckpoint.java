@@ -0,0 +1,145 @@
+package ca.uwaterloo.simplex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uwaterloo.shediac.KernelMgr.DeviceType;
+import ca.uwaterloo.simplex.solver.AbstractSolver;
+import ca.uwaterloo.simplex.solver.PivotTrace;
+import ca.uwaterloo.simplex.solver.Solver;
+import ca.uwaterloo.simplex.solver.SolverCheckpoint;
+
+public class TestCheckpoint {
+
+  private static List<Float> makeConstraint(final Float... floats) {
+    final List<Float> list = new ArrayList<>();
+    for (final Float val : floats)
+      list.add(val);
+    return list;
+  }
+
+  private static void load(final Solver solver) {
+    solver.addConstraint(makeConstraint(4.0f, 3.0f, 2.0f));
+    solver.addConstraint(makeConstraint(4.0f, 7.0f, 2.0f));
+    solver.addConstraint(makeConstraint(9.0f, 6.0f, 2.0f));
+    solver.setBounds(3, 7, Solver.NO_BOUND);
+    solver.setBounds(4, 3, Solver.NO_BOUND);
+    solver.setBounds(5, 10, Solver.NO_BOUND);
+  }
+
+  @Test
+  public void testBeforeSolve() throws IOException {
+    final Path path = Files.createTempFile("checkpoint", ".bin");
+    try {
+      final AbstractSolver solver = Solver.create(3, 3);
+      load(solver);
+      SolverCheckpoint.write(solver, path);
+      final AbstractSolver restored = SolverCheckpoint.restore(path);
+      assertTrue(solver.solve());
+      assertTrue(restored.solve());
+      assertEquals(solver.solution(), restored.solution());
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  public void testAfterSolve() throws IOException {
+    final Path path = Files.createTempFile("checkpoint", ".bin");
+    try {
+      final AbstractSolver solver = Solver.create(3, 3);
+      load(solver);
+      assertTrue(solver.solve());
+      SolverCheckpoint.write(solver, path);
+      final AbstractSolver restored = Solver.create(3, 3);
+      SolverCheckpoint.restore(path, restored);
+      assertEquals(solver.solution(), restored.solution());
+      assertTrue(restored.solve());
+      assertEquals(solver.solution(), restored.solution());
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  public void testInvalidBasis() throws IOException {
+    final Path path = Files.createTempFile("checkpoint", ".bin");
+    try {
+      final AbstractSolver solver = Solver.create(3, 3);
+      load(solver);
+      SolverCheckpoint.write(solver, path);
+      final byte[] bytes = Files.readAllBytes(path);
+      // rowToVar[0] follows the header, the tableau and colToVar
+      final int rowToVar = 5 * Integer.BYTES + 9 * Float.BYTES + 3 * Integer.BYTES;
+      for (final int var : new int[] {0, -1, 99}) {
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(rowToVar, var);
+        Files.write(path, bytes);
+        final AbstractSolver restored = Solver.create(3, 3);
+        load(restored);
+        boolean rejected = false;
+        try {
+          SolverCheckpoint.restore(path, restored);
+        } catch (final RuntimeException e) {
+          rejected = true;
+        }
+        assertTrue(rejected);
+        assertTrue(restored.solve());
+      }
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  /**
+   * Records the pivots of a solve and replays them twice on <code>replayed</code>, which holds the
+   * tableau of another solve beforehand.
+   */
+  private static void testTraceReplay(final AbstractSolver replayed) throws IOException {
+    final Path path = Files.createTempFile("trace", ".bin");
+    try {
+      final AbstractSolver solver = Solver.create(3, 3);
+      load(solver);
+      solver.recordTrace(path);
+      assertTrue(solver.solve());
+      final PivotTrace trace = PivotTrace.read(path);
+      assertEquals(3, trace.maxNumRows());
+      assertEquals(3, trace.numColumns());
+      assertTrue(trace.numPivots() > 0);
+      load(replayed);
+      replayed.preSolve();
+      assertTrue(replayed.solve());
+      for (int k = 0; k < 2; k++) {
+        trace.replay(replayed);
+        assertEquals(solver.solution(), replayed.solution());
+      }
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  public void testTraceReplay() throws IOException {
+    testTraceReplay(Solver.create(3, 3));
+  }
+
+  @Test
+  public void testTraceReplay_cuda() throws IOException {
+    testTraceReplay(Solver.create(3, 3, DeviceType.CUDA, 0, 0, true));
+  }
+
+  @Test
+  public void testTraceReplay_opencl() throws IOException {
+    testTraceReplay(Solver.create(3, 3, DeviceType.OpenCL, 0, 0, true));
+  }
+
+}
@@ -0,0 +1,53 @@
+package ca.uwaterloo.simplex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ca.uwaterloo.simplex.solver.AbstractSolver;
+import ca.uwaterloo.simplex.solver.CpuSolver;
+import ca.uwaterloo.simplex.solver.SolverDispatcher;
+import ca.uwaterloo.simplex.solver.SolverDispatcher.Backend;
+import ca.uwaterloo.simplex.solver.SolverDispatcher.CostModel;
+
+public class TestDispatcher {
+
+  /** A dispatcher whose fork/join overhead outweighs the per-entry savings on small problems. */
+  private static SolverDispatcher cpuOnly() {
+    final Map<Backend, CostModel> models = new EnumMap<>(Backend.class);
+    models.put(Backend.CPU, new CostModel(100.0, 1.0));
+    models.put(Backend.PARALLEL_CPU, new CostModel(10000.0, 0.25));
+    return SolverDispatcher.withCostModels(models, null, 0, 0);
+  }
+
+  @Test
+  public void testSmallOnCpu() {
+    final SolverDispatcher dispatcher = cpuOnly();
+    for (final float density : new float[] {0.1f, 0.5f, 1.0f}) {
+      assertEquals(Backend.CPU, dispatcher.select(3, 2, density));
+      final AbstractSolver solver = dispatcher.create(3, 2, density);
+      assertEquals(CpuSolver.class, solver.getClass());
+    }
+  }
+
+  @Test
+  public void testLargeOnParallelCpu() {
+    assertEquals(Backend.PARALLEL_CPU, cpuOnly().select(1000, 1000, 1.0f));
+  }
+
+  @Test
+  public void testNoDevice() {
+    boolean thrown = false;
+    try {
+      cpuOnly().create(Backend.DEVICE, 3, 2);
+    } catch (final RuntimeException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+  }
+
+}
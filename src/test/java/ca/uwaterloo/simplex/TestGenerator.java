@@ -0,0 +1,142 @@
+package ca.uwaterloo.simplex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ca.uwaterloo.simplex.benchmark.ProblemGenerator;
+import ca.uwaterloo.simplex.benchmark.ProblemGenerator.BoundStructure;
+import ca.uwaterloo.simplex.solver.AbstractSolver;
+import ca.uwaterloo.simplex.solver.Problem;
+import ca.uwaterloo.simplex.solver.Solver;
+
+public class TestGenerator {
+
+  private static void assertSameProblem(final Problem expected, final Problem actual) {
+    assertEquals(expected.numRows(), actual.numRows());
+    assertEquals(expected.numColumns(), actual.numColumns());
+    for (int i = 0; i < expected.numRows(); i++)
+      for (int j = 0; j < expected.numColumns(); j++)
+        assertEquals(expected.getCoefficient(i, j), actual.getCoefficient(i, j), 0.0f);
+    for (int i = 0; i < expected.numVars(); i++) {
+      assertEquals(expected.getLowerBound(i), actual.getLowerBound(i), 0.0f);
+      assertEquals(expected.getUpperBound(i), actual.getUpperBound(i), 0.0f);
+    }
+  }
+
+  @Test
+  public void testDeterministic() {
+    final ProblemGenerator generator = new ProblemGenerator(6, 4, 0.5f, BoundStructure.MIXED);
+    for (long seed = 0; seed < 20; seed++) {
+      assertSameProblem(generator.generate(seed, true), generator.generate(seed, true));
+      assertSameProblem(generator.generate(seed, false), generator.generate(seed, false));
+    }
+  }
+
+  @Test
+  public void testShapeAndDensity() {
+    final int rows = 40;
+    final int cols = 50;
+    for (final float density : new float[] {0.1f, 0.5f, 1.0f}) {
+      final ProblemGenerator generator =
+          new ProblemGenerator(rows, cols, density, BoundStructure.BOX);
+      long nonzeros = 0;
+      final int count = 20;
+      for (long seed = 0; seed < count; seed++) {
+        final Problem problem = generator.generate(seed, true);
+        assertEquals(rows, problem.numRows());
+        assertEquals(cols, problem.numColumns());
+        for (int i = 0; i < rows; i++) {
+          int rowNonzeros = 0;
+          for (int j = 0; j < cols; j++)
+            if (problem.getCoefficient(i, j) != 0.0f)
+              rowNonzeros++;
+          assertTrue(rowNonzeros > 0);
+          nonzeros += rowNonzeros;
+          // Box bounds around the hidden solution
+          assertTrue(problem.getLowerBound(cols + i) <= problem.getUpperBound(cols + i));
+        }
+      }
+      // Each row also has one forced nonzero, which adds at most 1/cols to the density
+      final double measured = (double) nonzeros / ((long) count * rows * cols);
+      assertTrue(measured >= density - 0.02);
+      assertTrue(measured <= density + 1.0 / cols + 0.02);
+    }
+  }
+
+  @Test
+  public void testVerdicts() {
+    // The seeds that SolverDaemon warms up with, which the solving procedure is known to finish
+    final ProblemGenerator generator = new ProblemGenerator(5, 5, 0.5f, BoundStructure.BOX);
+    for (long seed = 0; seed < 64; seed++) {
+      for (final boolean sat : new boolean[] {true, false}) {
+        final Problem problem = generator.generate(seed, sat);
+        final AbstractSolver solver = Solver.create(problem.numRows(), problem.numColumns());
+        problem.load(solver);
+        assertEquals(sat, solver.solve());
+      }
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    final ProblemGenerator generator = new ProblemGenerator(7, 3, 0.6f, BoundStructure.MIXED);
+    for (long seed = 0; seed < 10; seed++) {
+      final Problem problem = generator.generate(seed, seed % 2 == 0);
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      problem.write(new DataOutputStream(bytes));
+      final Problem read = Problem.read(
+          new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+      assertSameProblem(problem, read);
+    }
+  }
+
+  /** Returns <code>true</code> if reading the bytes fails with a RuntimeException. */
+  private static boolean unreadable(final byte[] bytes, final int maxCoefficients)
+      throws IOException {
+    try {
+      Problem.read(new DataInputStream(new ByteArrayInputStream(bytes)), maxCoefficients);
+    } catch (final RuntimeException e) {
+      return true;
+    }
+    return false;
+  }
+
+  @Test
+  public void testReadLimits() throws IOException {
+    final Problem problem =
+        new ProblemGenerator(7, 3, 0.6f, BoundStructure.MIXED).generate(0, true);
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    problem.write(new DataOutputStream(bytes));
+    final byte[] full = bytes.toByteArray();
+
+    // An empty input ends a sequence of problems, a truncated one is an error
+    boolean eof = false;
+    try {
+      Problem.read(new DataInputStream(new ByteArrayInputStream(new byte[0])));
+    } catch (final EOFException e) {
+      eof = true;
+    }
+    assertTrue(eof);
+    assertTrue(unreadable(Arrays.copyOf(full, full.length - 1), Problem.MAX_COEFFICIENTS));
+    assertTrue(unreadable(Arrays.copyOf(full, 12), Problem.MAX_COEFFICIENTS));
+
+    // Too many coefficients, including sizes whose product overflows an int
+    assertTrue(unreadable(full, 20));
+    assertTrue(!unreadable(full, 21));
+    final ByteBuffer header = ByteBuffer.wrap(Arrays.copyOf(full, 16));
+    header.putInt(8, 1 << 16).putInt(12, 1 << 16);
+    assertTrue(unreadable(header.array(), Integer.MAX_VALUE));
+  }
+
+}
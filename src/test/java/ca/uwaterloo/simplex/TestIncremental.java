@@ -0,0 +1,179 @@
+package ca.uwaterloo.simplex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uwaterloo.simplex.benchmark.ProblemGenerator;
+import ca.uwaterloo.simplex.solver.AbstractSolver;
+import ca.uwaterloo.simplex.solver.BasisCache;
+import ca.uwaterloo.simplex.solver.Problem;
+import ca.uwaterloo.simplex.solver.Solver;
+
+public class TestIncremental {
+
+  private static List<Float> makeConstraint(final Float... floats) {
+    final List<Float> list = new ArrayList<>();
+    for (final Float val : floats)
+      list.add(val);
+    return list;
+  }
+
+  private static AbstractSolver create() {
+    final AbstractSolver solver = Solver.create(3, 2);
+    solver.addConstraint(makeConstraint(1.0f, 0.0f));
+    solver.addConstraint(makeConstraint(0.0f, 1.0f));
+    solver.addConstraint(makeConstraint(1.0f, 1.0f));
+    solver.setBounds(4, 0, 11);
+    return solver;
+  }
+
+  @Test
+  public void testPushPop() {
+    final AbstractSolver solver = create();
+    assertTrue(solver.solve());
+
+    solver.push();
+    assertTrue(solver.assertBound(2, 6, Solver.NO_BOUND));
+    assertTrue(solver.solve());
+    solver.push();
+    assertTrue(solver.assertBound(3, 6, Solver.NO_BOUND));
+    assertFalse(solver.solve());
+    solver.pop();
+    assertTrue(solver.solve());
+    assertTrue(solver.solution().get(0) >= 6.0f - Solver.EPSILON);
+    solver.pop();
+
+    assertTrue(solver.solve());
+  }
+
+  @Test
+  public void testEmptyBounds() {
+    final AbstractSolver solver = create();
+    solver.push();
+    assertTrue(solver.assertBound(0, 3, Solver.NO_BOUND));
+    assertFalse(solver.assertBound(0, Solver.NO_BOUND, 2));
+    solver.pop();
+    assertTrue(solver.solve());
+  }
+
+  @Test
+  public void testEmptyBoundsThenSolve() {
+    final AbstractSolver solver = create();
+    assertTrue(solver.solve());
+    solver.push();
+    // x0 is nonbasic, so it is moved to 3 and then left outside of its empty bounds
+    assertTrue(solver.assertBound(0, 3, Solver.NO_BOUND));
+    assertFalse(solver.assertBound(0, Solver.NO_BOUND, 2));
+    assertFalse(solver.solve());
+    assertFalse(solver.resolve());
+    solver.pop();
+    assertTrue(solver.solve());
+  }
+
+  @Test
+  public void testAddConstraintAfterSolve() {
+    final AbstractSolver solver = Solver.create(3, 2);
+    solver.addConstraint(makeConstraint(1.0f, 1.0f));
+    solver.addConstraint(makeConstraint(2.0f, -1.0f));
+    solver.setBounds(2, 2, Solver.NO_BOUND);
+    solver.setBounds(3, 0, Solver.NO_BOUND);
+    assertTrue(solver.solve());
+
+    solver.addConstraint(makeConstraint(-1.0f, 2.0f));
+    solver.setBounds(4, 1, Solver.NO_BOUND);
+    assertTrue(solver.solve());
+    final List<Float> x = solver.solution();
+    assertTrue(x.get(0) + x.get(1) >= 2.0f - 1e-4f);
+    assertTrue(2.0f * x.get(0) - x.get(1) >= -1e-4f);
+    assertTrue(-x.get(0) + 2.0f * x.get(1) >= 1.0f - 1e-4f);
+  }
+
+  private static AbstractSolver createSolved() {
+    final AbstractSolver solver = Solver.create(3, 3);
+    solver.addConstraint(makeConstraint(4.0f, 3.0f, 2.0f));
+    solver.addConstraint(makeConstraint(4.0f, 7.0f, 2.0f));
+    solver.addConstraint(makeConstraint(9.0f, 6.0f, 2.0f));
+    solver.setBounds(3, 7, Solver.NO_BOUND);
+    solver.setBounds(4, 3, Solver.NO_BOUND);
+    solver.setBounds(5, 10, Solver.NO_BOUND);
+    assertTrue(solver.solve());
+    return solver;
+  }
+
+  @Test
+  public void testResolve() {
+    final AbstractSolver solver = createSolved();
+    solver.setBounds(3, 20, Solver.NO_BOUND);
+    solver.setBounds(4, 25, Solver.NO_BOUND);
+    solver.setBounds(5, 30, Solver.NO_BOUND);
+    assertTrue(solver.resolve());
+    // A single repair pivot, counted, and no fallback to solve()
+    assertEquals(1, solver.numPivots());
+    final List<Float> x = solver.solution();
+    assertTrue(4.0f * x.get(0) + 3.0f * x.get(1) + 2.0f * x.get(2) >= 20.0f - 1e-3f);
+    assertTrue(4.0f * x.get(0) + 7.0f * x.get(1) + 2.0f * x.get(2) >= 25.0f - 1e-3f);
+    assertTrue(9.0f * x.get(0) + 6.0f * x.get(1) + 2.0f * x.get(2) >= 30.0f - 1e-3f);
+  }
+
+  @Test
+  public void testResolveUNSAT() {
+    final AbstractSolver solver = createSolved();
+    solver.setBounds(0, 0, 1);
+    solver.setBounds(1, 0, 1);
+    solver.setBounds(2, 0, 1);
+    solver.setBounds(5, 100, Solver.NO_BOUND);
+    assertFalse(solver.resolve());
+  }
+
+  @Test
+  public void testWarmStart() {
+    final BasisCache cache = new BasisCache(4);
+    final Problem problem =
+        new ProblemGenerator(12, 8, 1.0f, ProblemGenerator.BoundStructure.MIXED).generate(31, true);
+    final AbstractSolver cold = Solver.create(12, 8);
+    cold.setBasisCache(cache);
+    problem.load(cold);
+    assertTrue(cold.solve());
+
+    // The same matrix with tighter bounds starts from the cached basis
+    for (int i = 0; i < problem.numRows(); i++) {
+      final int var = problem.numColumns() + i;
+      final float lower = problem.getLowerBound(var);
+      final float upper = problem.getUpperBound(var);
+      problem.setBounds(var, lower == Solver.NO_BOUND ? lower : lower + 0.5f,
+          upper == Solver.NO_BOUND ? upper : upper - 0.5f);
+    }
+    final AbstractSolver warm = Solver.create(12, 8);
+    warm.setBasisCache(cache);
+    problem.load(warm);
+    assertTrue(warm.solve());
+    assertTrue(warm.numPivots() < cold.numPivots());
+    assertEquals(1, cache.hits());
+    assertEquals(1, cache.misses());
+  }
+
+  @Test
+  public void testRefactor() {
+    final AbstractSolver solver = Solver.create(3, 3);
+    solver.setResidualCheck(1, 0.0f);
+    solver.addConstraint(makeConstraint(0.4f, 0.3f, 0.7f));
+    solver.addConstraint(makeConstraint(0.1f, -0.7f, 0.3f));
+    solver.addConstraint(makeConstraint(0.9f, 0.6f, -0.2f));
+    solver.setBounds(3, 7, Solver.NO_BOUND);
+    solver.setBounds(4, Solver.NO_BOUND, 0.3f);
+    solver.setBounds(5, 10, Solver.NO_BOUND);
+    assertTrue(solver.solve());
+    assertTrue(solver.numRefactorizations() > 0);
+    final List<Float> x = solver.solution();
+    assertTrue(0.4f * x.get(0) + 0.3f * x.get(1) + 0.7f * x.get(2) >= 7.0f - 1e-3f);
+    assertTrue(0.1f * x.get(0) - 0.7f * x.get(1) + 0.3f * x.get(2) <= 0.3f + 1e-3f);
+    assertTrue(0.9f * x.get(0) + 0.6f * x.get(1) - 0.2f * x.get(2) >= 10.0f - 1e-3f);
+  }
+
+}
@@ -1,15 +1,34 @@
 package ca.uwaterloo.simplex;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+import javax.management.ObjectName;
 
 import org.junit.Test;
 
 import ca.uwaterloo.shediac.KernelMgr.DeviceType;
+import ca.uwaterloo.simplex.solver.AbstractSolver;
+import ca.uwaterloo.simplex.solver.CachingSolver;
+import ca.uwaterloo.simplex.solver.DecomposingSolver;
+import ca.uwaterloo.simplex.solver.HalfCpuSolver;
+import ca.uwaterloo.simplex.solver.PortfolioSolver;
+import ca.uwaterloo.simplex.solver.Problem;
+import ca.uwaterloo.simplex.solver.ResultCache;
 import ca.uwaterloo.simplex.solver.Solver;
+import ca.uwaterloo.simplex.solver.SolverDispatcher;
+import ca.uwaterloo.simplex.solver.SolverDispatcher.Backend;
+import ca.uwaterloo.simplex.solver.SolverDispatcher.CostModel;
 import ca.uwaterloo.simplex.solver.SolverProfiler;
+import ca.uwaterloo.simplex.solver.SolverStatistics;
 
 public class TestSAT {
 
@@ -20,6 +39,25 @@ public class TestSAT {
     return list;
   }
 
+  /** Creates a <code>ParallelCpuSolver</code> through a dispatcher that needs no calibration. */
+  private static AbstractSolver parallel(final int rows, final int cols) {
+    return SolverDispatcher.withCostModels(
+        Collections.singletonMap(Backend.PARALLEL_CPU, new CostModel(0.0, 1.0)), null, 0, 0)
+        .create(Backend.PARALLEL_CPU, rows, cols);
+  }
+
+  /**
+   * Runs a test on a <code>CpuSolver</code> and a <code>ParallelCpuSolver</code>, which must find
+   * the same solution.
+   */
+  private static void testParallel(final int rows, final int cols, final Consumer<Solver> test) {
+    final AbstractSolver cpu = Solver.create(rows, cols);
+    final AbstractSolver parallel = parallel(rows, cols);
+    test.accept(cpu);
+    test.accept(parallel);
+    assertEquals(cpu.solution(), parallel.solution());
+  }
+
   private void test1(final Solver solver) {
     solver.addConstraint(makeConstraint(1.0f, 1.0f));
     solver.addConstraint(makeConstraint(2.0f, -1.0f));
@@ -37,11 +75,158 @@ public class TestSAT {
     test1(new SolverProfiler(Solver.create(3, 2)));
   }
 
+  @Test
+  public void test1_parallel() {
+    testParallel(3, 2, this::test1);
+  }
+
   @Test
   public void test1_cuda() {
     test1(new SolverProfiler(Solver.create(3, 2, DeviceType.CUDA, 0, 0, true)));
   }
 
+  @Test
+  public void test1_sparse_opencl() {
+    test1(new SolverProfiler(Solver.createSparse(3, 2, DeviceType.OpenCL, 0, 0, true)));
+  }
+
+  @Test
+  public void test1_fp16() {
+    test1(new SolverProfiler(HalfCpuSolver.create(3, 2, HalfCpuSolver.Format.FP16)));
+  }
+
+  @Test
+  public void testHalfOverflow() {
+    // Entering x0 divides by 0.01, which takes the row past the range of fp16
+    final Problem problem = new Problem(2, 2);
+    problem.setCoefficient(0, 0, 0.01f);
+    problem.setCoefficient(0, 1, 1000.1f);
+    problem.setCoefficient(1, 0, 1.0f);
+    problem.setCoefficient(1, 1, -1.0f);
+    problem.setBounds(2, 1, Solver.NO_BOUND);
+    problem.setBounds(3, -5, Solver.NO_BOUND);
+    final HalfCpuSolver solver = HalfCpuSolver.create(2, 2, HalfCpuSolver.Format.FP16);
+    problem.load(solver);
+    assertTrue(solver.solve());
+    assertTrue(solver.isPromoted());
+    // The rebuilt tableau has the exact coefficients, not their fp16 values
+    final List<Float> x = solver.solution();
+    assertEquals(1.0f, 0.01f * x.get(0) + 1000.1f * x.get(1), 1e-5f);
+    assertTrue(x.get(0) - x.get(1) >= -5.0f - Solver.EPSILON);
+  }
+
+  @Test
+  public void testHalfDrift() {
+    // 1.003 is 1 in bfloat16, so the pivoted row fails the residual check before the verdict
+    final Problem problem = new Problem(1, 1);
+    problem.setCoefficient(0, 0, 1.003f);
+    problem.setBounds(1, 1, 1);
+    final HalfCpuSolver solver = HalfCpuSolver.create(1, 1, HalfCpuSolver.Format.BFLOAT16);
+    problem.load(solver);
+    assertTrue(solver.solve());
+    assertTrue(solver.isPromoted());
+    assertEquals(1, solver.numRefactorizations());
+    assertEquals(1.0f, 1.003f * solver.solution().get(0), 1e-5f);
+  }
+
+  @Test
+  public void test1_solutionView() {
+    final AbstractSolver solver = Solver.create(3, 2);
+    test1(solver);
+    final float[] solution = solver.solutionInto(new float[2]);
+    final FloatBuffer view = solver.solutionView();
+    assertTrue(view.isReadOnly());
+    assertEquals(2, view.remaining());
+    for (int j = 0; j < 2; j++) {
+      assertEquals(solver.solution().get(j), solution[j], 0.0f);
+      assertEquals(solution[j], view.get(j), 0.0f);
+    }
+  }
+
+  @Test
+  public void test1_decomposed() {
+    // Two copies of test1 over disjoint variables, which form two blocks
+    final DecomposingSolver solver = DecomposingSolver.create(6, 4);
+    solver.addConstraint(makeConstraint(1.0f, 0.0f, 1.0f, 0.0f));
+    solver.addConstraint(makeConstraint(0.0f, 1.0f, 0.0f, 1.0f));
+    solver.addConstraint(makeConstraint(2.0f, 0.0f, -1.0f, 0.0f));
+    solver.addConstraint(makeConstraint(0.0f, 2.0f, 0.0f, -1.0f));
+    solver.addConstraint(makeConstraint(-1.0f, 0.0f, 2.0f, 0.0f));
+    solver.addConstraint(makeConstraint(0.0f, -1.0f, 0.0f, 2.0f));
+    for (int k = 0; k < 2; k++) {
+      solver.setBounds(4 + k, 2, Solver.NO_BOUND);
+      solver.setBounds(6 + k, 0, Solver.NO_BOUND);
+      solver.setBounds(8 + k, 1, Solver.NO_BOUND);
+    }
+    assertTrue(solver.solve());
+    assertEquals(2, solver.numBlocks());
+    final List<Float> x = solver.solution();
+    for (int k = 0; k < 2; k++) {
+      assertTrue(x.get(k) + x.get(2 + k) >= 2.0f - Solver.EPSILON);
+      assertTrue(2.0f * x.get(k) - x.get(2 + k) >= -Solver.EPSILON);
+      assertTrue(-x.get(k) + 2.0f * x.get(2 + k) >= 1.0f - Solver.EPSILON);
+    }
+  }
+
+  @Test
+  public void test1_decomposedLimits() {
+    // Each block of test1 needs two pivots, so a limit of one stops both
+    final DecomposingSolver solver = new DecomposingSolver(6, 4, (m, n) -> {
+      final AbstractSolver s = Solver.create(m, n);
+      s.setLimits(1, 0);
+      return s;
+    });
+    solver.addConstraint(makeConstraint(1.0f, 0.0f, 1.0f, 0.0f));
+    solver.addConstraint(makeConstraint(0.0f, 1.0f, 0.0f, 1.0f));
+    solver.addConstraint(makeConstraint(2.0f, 0.0f, -1.0f, 0.0f));
+    solver.addConstraint(makeConstraint(0.0f, 2.0f, 0.0f, -1.0f));
+    solver.addConstraint(makeConstraint(-1.0f, 0.0f, 2.0f, 0.0f));
+    solver.addConstraint(makeConstraint(0.0f, -1.0f, 0.0f, 2.0f));
+    for (int k = 0; k < 2; k++) {
+      solver.setBounds(4 + k, 2, Solver.NO_BOUND);
+      solver.setBounds(6 + k, 0, Solver.NO_BOUND);
+      solver.setBounds(8 + k, 1, Solver.NO_BOUND);
+    }
+    boolean stopped = false;
+    try {
+      solver.solve();
+    } catch (final CancellationException e) {
+      stopped = true;
+    }
+    assertTrue(stopped);
+    assertTrue(solver.solution().isEmpty());
+  }
+
+  @Test
+  public void test1_portfolio() {
+    test1(PortfolioSolver.create(3, 2));
+  }
+
+  @Test
+  public void test1_statistics() throws Exception {
+    final ObjectName name = new ObjectName(SolverStatistics.OBJECT_NAME);
+    final long solves = SolverStatistics.get().getSolves();
+    final long profiled = SolverStatistics.get().getProfiledSolves();
+    test1(new SolverProfiler(Solver.create(3, 2)));
+    assertTrue((Long) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Solves")
+        > solves);
+    assertTrue(SolverStatistics.get().getProfiledSolves() > profiled);
+    assertTrue(SolverStatistics.get().getMaxRows() >= 3);
+  }
+
+  @Test
+  public void test1_cached() {
+    final ResultCache cache = new ResultCache(16);
+    final CachingSolver first = new CachingSolver(Solver.create(3, 2), cache);
+    test1(first);
+    final CachingSolver second = new CachingSolver(Solver.create(3, 2), cache);
+    test1(second);
+    assertTrue(second.wasCached());
+    assertEquals(first.solution(), second.solution());
+    assertEquals(1, cache.hits());
+    assertEquals(1, cache.misses());
+  }
+
   private void test2(final Solver solver) {
     solver.addConstraint(makeConstraint(1.0f, 0.5f, 0.5f));
     solver.addConstraint(makeConstraint(1.5f, 2.0f, 1.0f));
@@ -57,11 +242,21 @@ public class TestSAT {
     test2(new SolverProfiler(Solver.create(2, 3)));
   }
 
+  @Test
+  public void test2_parallel() {
+    testParallel(2, 3, this::test2);
+  }
+
   @Test
   public void test2_cuda() {
     test2(new SolverProfiler(Solver.create(2, 3, DeviceType.CUDA, 0, 0, true)));
   }
 
+  @Test
+  public void test2_portfolio() {
+    test2(PortfolioSolver.create(2, 3));
+  }
+
   private void test3(final Solver solver) {
     solver.addConstraint(makeConstraint(4.0f, 3.0f, 2.0f));
     solver.addConstraint(makeConstraint(4.0f, 7.0f, 2.0f));
@@ -79,8 +274,28 @@ public class TestSAT {
     test3(new SolverProfiler(Solver.create(3, 3)));
   }
 
+  @Test
+  public void test3_parallel() {
+    testParallel(3, 3, this::test3);
+  }
+
   @Test
   public void test3_cuda() {
     test3(new SolverProfiler(Solver.create(3, 3, DeviceType.CUDA, 0, 0, true)));
   }
+
+  @Test
+  public void test3_sparse_opencl() {
+    test3(new SolverProfiler(Solver.createSparse(3, 3, DeviceType.OpenCL, 0, 0, true)));
+  }
+
+  @Test
+  public void test3_bfloat16() {
+    test3(new SolverProfiler(HalfCpuSolver.create(3, 3, HalfCpuSolver.Format.BFLOAT16)));
+  }
+
+  @Test
+  public void test3_portfolio() {
+    test3(PortfolioSolver.create(3, 3));
+  }
 }
@@ -0,0 +1,84 @@
+package ca.uwaterloo.simplex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.uwaterloo.shediac.KernelMgr.DeviceType;
+import ca.uwaterloo.simplex.solver.CpuSolver;
+import ca.uwaterloo.simplex.solver.Solver;
+import ca.uwaterloo.simplex.solver.SparseDeviceSolver;
+
+/**
+ * Checks that the dense and sparse representations of the tableau, and switching between them,
+ * give identical results, on the CPU and on the device.
+ */
+public class TestSparse {
+
+  private static final int ROWS = 30;
+  private static final int COLS = 20;
+
+  private static CpuSolver create(final long seed, final float threshold) {
+    final CpuSolver solver = (CpuSolver) Solver.create(ROWS, COLS);
+    solver.setSparseThreshold(threshold);
+    fill(solver, seed);
+    return solver;
+  }
+
+  private static void fill(final Solver solver, final long seed) {
+    final Random rnd = new Random(seed);
+    for (int i = 0; i < ROWS; i++) {
+      final List<Float> cs = new ArrayList<>();
+      for (int j = 0; j < COLS; j++)
+        cs.add(rnd.nextInt(10) == 0 ? rnd.nextInt(9) - 4.0f : 0.0f);
+      solver.addConstraint(cs);
+    }
+    for (int i = 0; i < ROWS; i++)
+      solver.setBounds(COLS + i, rnd.nextInt(4), Solver.NO_BOUND);
+  }
+
+  private static float[] solution(final Solver solver) {
+    final List<Float> s = solver.solution();
+    final float[] x = new float[s.size()];
+    for (int j = 0; j < x.length; j++)
+      x[j] = s.get(j);
+    return x;
+  }
+
+  @Test
+  public void testIdentical() {
+    for (long seed = 0; seed < 10; seed++) {
+      final CpuSolver dense = create(seed, 0.0f);
+      final CpuSolver sparse = create(seed, Float.MAX_VALUE);
+      final CpuSolver switching = create(seed, 0.15f);
+      final boolean result = dense.solve();
+      assertEquals(result, sparse.solve());
+      assertEquals(result, switching.solve());
+      assertArrayEquals(solution(dense), solution(sparse), 0.0f);
+      assertArrayEquals(solution(dense), solution(switching), 0.0f);
+    }
+  }
+
+  @Test
+  public void testDevice_opencl() {
+    for (long seed = 0; seed < 10; seed++) {
+      // The device solver performs the same pivots, without interval checks
+      final CpuSolver sparse = create(seed, Float.MAX_VALUE);
+      sparse.setIntervalCheck(0);
+      final SparseDeviceSolver device = (SparseDeviceSolver) Solver.createSparse(ROWS, COLS,
+          DeviceType.OpenCL, 0, 0, true);
+      fill(device, seed);
+      device.preSolve();
+      assertEquals(sparse.solve(), device.solve());
+      assertArrayEquals(solution(sparse), solution(device), 1e-4f);
+      assertTrue(device.width() <= COLS);
+    }
+  }
+
+}
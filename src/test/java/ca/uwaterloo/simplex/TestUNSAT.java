@@ -1,15 +1,23 @@
 package ca.uwaterloo.simplex;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Test;
 
 import ca.uwaterloo.shediac.KernelMgr.DeviceType;
+import ca.uwaterloo.simplex.solver.AbstractSolver;
 import ca.uwaterloo.simplex.solver.CpuSolver;
+import ca.uwaterloo.simplex.solver.PortfolioSolver;
 import ca.uwaterloo.simplex.solver.Solver;
+import ca.uwaterloo.simplex.solver.SolverDispatcher;
+import ca.uwaterloo.simplex.solver.SolverDispatcher.Backend;
+import ca.uwaterloo.simplex.solver.SolverDispatcher.CostModel;
 import ca.uwaterloo.simplex.solver.SolverProfiler;
 
 public class TestUNSAT {
@@ -21,6 +29,13 @@ public class TestUNSAT {
     return list;
   }
 
+  /** Creates a <code>ParallelCpuSolver</code> through a dispatcher that needs no calibration. */
+  private static AbstractSolver parallel(final int rows, final int cols) {
+    return SolverDispatcher.withCostModels(
+        Collections.singletonMap(Backend.PARALLEL_CPU, new CostModel(0.0, 1.0)), null, 0, 0)
+        .create(Backend.PARALLEL_CPU, rows, cols);
+  }
+
   private void test1(final Solver solver) {
     solver.addConstraint(makeConstraint(1.0f, 0.0f));
     solver.addConstraint(makeConstraint(0.0f, 1.0f));
@@ -36,9 +51,84 @@ public class TestUNSAT {
     test1(new SolverProfiler(Solver.create(3, 2)));
   }
   
+  @Test
+  public void test1_parallel() {
+    test1(parallel(3, 2));
+  }
+
   @Test
   public void test1_cuda() {
     test1(new SolverProfiler(Solver.create(3, 2, DeviceType.CUDA, 0, 0, true)));
   }
 
+  @Test
+  public void test1_sparse_opencl() {
+    test1(new SolverProfiler(Solver.createSparse(3, 2, DeviceType.OpenCL, 0, 0, true)));
+  }
+
+  @Test
+  public void test1_portfolio() {
+    test1(PortfolioSolver.create(3, 2));
+  }
+
+  @Test
+  public void testIntervals() {
+    // x0 + x1 cannot reach 6 within the bounds of x0 and x1, which the first check detects
+    for (final int interval : new int[] {0, 1, AbstractSolver.DEFAULT_INTERVAL_CHECK}) {
+      final AbstractSolver solver = Solver.create(2, 2);
+      solver.setIntervalCheck(interval);
+      solver.addConstraint(makeConstraint(1.0f, -1.0f));
+      solver.addConstraint(makeConstraint(1.0f, 1.0f));
+      solver.setBounds(0, 0, 2);
+      solver.setBounds(1, 0, 3);
+      solver.setBounds(2, -2, 2);
+      solver.setBounds(3, 6, CpuSolver.NO_BOUND);
+      assertFalse(solver.solve());
+      if (interval == 0)
+        assertTrue(solver.numPivots() > 0);
+      else
+        assertEquals(0, solver.numPivots());
+    }
+  }
+
+  @Test
+  public void testIntervalsByDefault() {
+    // The same problem, on a solver created with the default settings
+    final AbstractSolver solver = Solver.create(2, 2);
+    solver.addConstraint(makeConstraint(1.0f, -1.0f));
+    solver.addConstraint(makeConstraint(1.0f, 1.0f));
+    solver.setBounds(0, 0, 2);
+    solver.setBounds(1, 0, 3);
+    solver.setBounds(2, -2, 2);
+    solver.setBounds(3, 6, CpuSolver.NO_BOUND);
+    assertFalse(solver.solve());
+    assertEquals(0, solver.numPivots());
+  }
+
+  @Test
+  public void testIntervalsSparse() {
+    // Every row of the first basis can reach its bounds; after the first pivot, which switches
+    // the tableau to sparse rows, one of them cannot
+    final long[] pivots = new long[2];
+    for (int interval = 0; interval < 2; interval++) {
+      final CpuSolver solver = (CpuSolver) Solver.create(3, 3);
+      solver.setSparseThreshold(Float.MAX_VALUE);
+      solver.setIntervalCheck(interval);
+      solver.addConstraint(makeConstraint(-1.0f, 0.0f, 1.0f));
+      solver.addConstraint(makeConstraint(0.0f, 1.0f, 1.0f));
+      solver.addConstraint(makeConstraint(1.0f, -2.0f, -1.0f));
+      solver.setBounds(0, 0, 2);
+      solver.setBounds(1, 0, 1);
+      solver.setBounds(2, 0, 3);
+      solver.setBounds(3, 0, 1);
+      solver.setBounds(4, 4, CpuSolver.NO_BOUND);
+      solver.setBounds(5, 2, 4);
+      assertFalse(solver.solve());
+      assertTrue(solver.isSparse());
+      pivots[interval] = solver.numPivots();
+    }
+    assertEquals(1, pivots[1]);
+    assertTrue(pivots[0] > 1);
+  }
+
 }